@@ -0,0 +1,167 @@
+import bench.DaoFixture;
+import org.h2.tools.SimpleResultSet;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Общая часть подготовки таблицы для замеров: пул соединений с встроенной БД, DAO, исходные записи
+ * и копия результата запроса SELECT * в памяти для замера создания объектов.
+ * @param <T> Отображаемый класс.
+ */
+public abstract class AbstractDaoFixture<T> implements DaoFixture {
+    /**
+     * Отображаемый класс
+     */
+    private final Class<T> tableClass;
+    /**
+     * Пул соединений с встроенной БД
+     */
+    private ConnectionPool pool;
+    /**
+     * Замеряемый DAO
+     */
+    private DaoRealisation<T> dao;
+    /**
+     * Исходные записи таблицы
+     */
+    private List<T> initial;
+    /**
+     * Номер следующей вставляемой записи
+     */
+    private int next;
+    /**
+     * Результат запроса SELECT * в памяти
+     */
+    private SimpleResultSet snapshot;
+
+    protected AbstractDaoFixture(Class<T> tableClass) {
+        this.tableClass = tableClass;
+    }
+
+    /**
+     * @param number номер записи, определяет значения ключевых полей
+     * @return новый объект
+     */
+    protected abstract T create(int number);
+
+    /**
+     * Меняет значения неключевых полей объекта
+     * @param object изменяемый объект
+     */
+    protected abstract void modify(T object);
+
+    @Override
+    public void setUp(String url, int rows) throws Exception {
+        pool = new ConnectionPool("org.h2.Driver", url, "sa", "");
+        dao = new DaoRealisation<T>(pool, tableClass);
+        SchemaRegistry.ensureTable(pool, dao.metadata);
+        initial = new ArrayList<T>(rows);
+        for(int i = 0; i < rows; i++){
+            initial.add(create(i));
+        }
+        reset();
+        snapshot = copyTable();
+    }
+
+    @Override
+    public void reset() throws Exception {
+        Connection connection = pool.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.executeUpdate("DELETE FROM "+dao.tableName);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+        BatchResult<T> result = dao.insertAll(initial);
+        if(result.hasFailures()){
+            throw new IllegalStateException("Unable to fill table "+dao.tableName+": "+result);
+        }
+        next = initial.size();
+    }
+
+    @Override
+    public void insert() {
+        dao.insert(create(next++));
+    }
+
+    @Override
+    public void update() {
+        T object = randomRow();
+        modify(object);
+        dao.update(object);
+    }
+
+    @Override
+    public Object selectByKey() {
+        return dao.selectByKey(randomRow());
+    }
+
+    @Override
+    public Object selectAll() {
+        return dao.selectAll();
+    }
+
+    @Override
+    public Object mapRows() throws Exception {
+        snapshot.beforeFirst();
+        return dao.CreateObjects(snapshot);
+    }
+
+    @Override
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * @return случайная из исходных записей
+     */
+    private T randomRow(){
+        return initial.get(ThreadLocalRandom.current().nextInt(initial.size()));
+    }
+
+    /**
+     * Копирует результат запроса SELECT * в память, чтобы создание объектов замерялось без обращения к БД
+     * @return результат запроса, который можно перечитывать через beforeFirst
+     * @throws Exception не удалось выполнить запрос
+     */
+    private SimpleResultSet copyTable() throws Exception {
+        SimpleResultSet copy = new SimpleResultSet();
+        copy.setAutoClose(false);
+        Connection connection = pool.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet set = statement.executeQuery("SELECT * FROM "+dao.tableName);
+                ResultSetMetaData metaData = set.getMetaData();
+                int count = metaData.getColumnCount();
+                for(int i = 1; i <= count; i++){
+                    copy.addColumn(metaData.getColumnLabel(i), metaData.getColumnType(i),
+                            metaData.getPrecision(i), metaData.getScale(i));
+                }
+                while(set.next()){
+                    Object[] row = new Object[count];
+                    for(int i = 0; i < count; i++){
+                        row[i] = set.getObject(i+1);
+                    }
+                    copy.addRow(row);
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+        return copy;
+    }
+}
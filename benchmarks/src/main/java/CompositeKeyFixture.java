@@ -0,0 +1,19 @@
+/**
+ * Таблица CompositeKeyClass: составной ключ из строки и числа
+ */
+public class CompositeKeyFixture extends AbstractDaoFixture<CompositeKeyClass> {
+    public CompositeKeyFixture() {
+        super(CompositeKeyClass.class);
+    }
+
+    @Override
+    protected CompositeKeyClass create(int number) {
+        return new CompositeKeyClass("Name"+number, number, number % 2 == 0, 150.0+number % 50);
+    }
+
+    @Override
+    protected void modify(CompositeKeyClass object) {
+        object.SetIsMale(!object.GetIsMale());
+        object.SetHeight(object.GetHeight()+0.5);
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Таблица SampleClass: целочисленный ключ и два строковых поля
+ */
+public class SampleFixture extends AbstractDaoFixture<SampleClass> {
+    public SampleFixture() {
+        super(SampleClass.class);
+    }
+
+    @Override
+    protected SampleClass create(int number) {
+        return new SampleClass("Name"+number, "LastName"+number, number);
+    }
+
+    @Override
+    protected void modify(SampleClass object) {
+        object.SetLastName(object.GetLastName().length() > 16 ? "LastName" : object.GetLastName()+"x");
+    }
+}
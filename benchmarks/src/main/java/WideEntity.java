@@ -0,0 +1,258 @@
+/**
+ * Синтетический класс с большим числом столбцов всех поддерживаемых типов для замеров DAO
+ */
+@DbProjectable(tableName = "wide")
+public class WideEntity {
+    @KeyField
+    private int id;
+    private String text1;
+    private String text2;
+    private String text3;
+    private String text4;
+    private String text5;
+    private String text6;
+    private int counter1;
+    private int counter2;
+    private int counter3;
+    private int counter4;
+    private long total1;
+    private long total2;
+    private long total3;
+    private long total4;
+    private double amount1;
+    private double amount2;
+    private double amount3;
+    private float ratio1;
+    private float ratio2;
+    private boolean flag1;
+    private boolean flag2;
+    private byte level1;
+    private byte level2;
+
+    public WideEntity(){
+        text1 = text2 = text3 = text4 = text5 = text6 = "";
+    }
+
+    /**
+     * Создаёт объект, значения полей которого определяются номером записи
+     * @param i номер записи, значение ключа
+     */
+    public WideEntity(int i){
+        this.id = i;
+        this.text1 = "text"+i+"_2";
+        this.text2 = "text"+i+"_3";
+        this.text3 = "text"+i+"_4";
+        this.text4 = "text"+i+"_5";
+        this.text5 = "text"+i+"_6";
+        this.text6 = "text"+i+"_7";
+        this.counter1 = i+8;
+        this.counter2 = i+9;
+        this.counter3 = i+10;
+        this.counter4 = i+11;
+        this.total1 = (long) i*12;
+        this.total2 = (long) i*13;
+        this.total3 = (long) i*14;
+        this.total4 = (long) i*15;
+        this.amount1 = i*16.5;
+        this.amount2 = i*17.5;
+        this.amount3 = i*18.5;
+        this.ratio1 = i/19.0f;
+        this.ratio2 = i/20.0f;
+        this.flag1 = i % 21 == 0;
+        this.flag2 = i % 22 == 0;
+        this.level1 = (byte) (i % 23);
+        this.level2 = (byte) (i % 24);
+    }
+
+    public int GetId(){
+        return id;
+    }
+
+    public void SetId(int id){
+        this.id = id;
+    }
+
+    public String GetText1(){
+        return text1;
+    }
+
+    public void SetText1(String text1){
+        this.text1 = text1;
+    }
+
+    public String GetText2(){
+        return text2;
+    }
+
+    public void SetText2(String text2){
+        this.text2 = text2;
+    }
+
+    public String GetText3(){
+        return text3;
+    }
+
+    public void SetText3(String text3){
+        this.text3 = text3;
+    }
+
+    public String GetText4(){
+        return text4;
+    }
+
+    public void SetText4(String text4){
+        this.text4 = text4;
+    }
+
+    public String GetText5(){
+        return text5;
+    }
+
+    public void SetText5(String text5){
+        this.text5 = text5;
+    }
+
+    public String GetText6(){
+        return text6;
+    }
+
+    public void SetText6(String text6){
+        this.text6 = text6;
+    }
+
+    public int GetCounter1(){
+        return counter1;
+    }
+
+    public void SetCounter1(int counter1){
+        this.counter1 = counter1;
+    }
+
+    public int GetCounter2(){
+        return counter2;
+    }
+
+    public void SetCounter2(int counter2){
+        this.counter2 = counter2;
+    }
+
+    public int GetCounter3(){
+        return counter3;
+    }
+
+    public void SetCounter3(int counter3){
+        this.counter3 = counter3;
+    }
+
+    public int GetCounter4(){
+        return counter4;
+    }
+
+    public void SetCounter4(int counter4){
+        this.counter4 = counter4;
+    }
+
+    public long GetTotal1(){
+        return total1;
+    }
+
+    public void SetTotal1(long total1){
+        this.total1 = total1;
+    }
+
+    public long GetTotal2(){
+        return total2;
+    }
+
+    public void SetTotal2(long total2){
+        this.total2 = total2;
+    }
+
+    public long GetTotal3(){
+        return total3;
+    }
+
+    public void SetTotal3(long total3){
+        this.total3 = total3;
+    }
+
+    public long GetTotal4(){
+        return total4;
+    }
+
+    public void SetTotal4(long total4){
+        this.total4 = total4;
+    }
+
+    public double GetAmount1(){
+        return amount1;
+    }
+
+    public void SetAmount1(double amount1){
+        this.amount1 = amount1;
+    }
+
+    public double GetAmount2(){
+        return amount2;
+    }
+
+    public void SetAmount2(double amount2){
+        this.amount2 = amount2;
+    }
+
+    public double GetAmount3(){
+        return amount3;
+    }
+
+    public void SetAmount3(double amount3){
+        this.amount3 = amount3;
+    }
+
+    public float GetRatio1(){
+        return ratio1;
+    }
+
+    public void SetRatio1(float ratio1){
+        this.ratio1 = ratio1;
+    }
+
+    public float GetRatio2(){
+        return ratio2;
+    }
+
+    public void SetRatio2(float ratio2){
+        this.ratio2 = ratio2;
+    }
+
+    public boolean GetFlag1(){
+        return flag1;
+    }
+
+    public void SetFlag1(boolean flag1){
+        this.flag1 = flag1;
+    }
+
+    public boolean GetFlag2(){
+        return flag2;
+    }
+
+    public void SetFlag2(boolean flag2){
+        this.flag2 = flag2;
+    }
+
+    public byte GetLevel1(){
+        return level1;
+    }
+
+    public void SetLevel1(byte level1){
+        this.level1 = level1;
+    }
+
+    public byte GetLevel2(){
+        return level2;
+    }
+
+    public void SetLevel2(byte level2){
+        this.level2 = level2;
+    }
+}
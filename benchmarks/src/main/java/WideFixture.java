@@ -0,0 +1,20 @@
+/**
+ * Таблица WideEntity: 24 столбца всех поддерживаемых типов
+ */
+public class WideFixture extends AbstractDaoFixture<WideEntity> {
+    public WideFixture() {
+        super(WideEntity.class);
+    }
+
+    @Override
+    protected WideEntity create(int number) {
+        return new WideEntity(number);
+    }
+
+    @Override
+    protected void modify(WideEntity object) {
+        object.SetCounter1(object.GetCounter1()+1);
+        object.SetAmount1(object.GetAmount1()+0.25);
+        object.SetText1(object.GetText1().length() > 16 ? "text" : object.GetText1()+"x");
+    }
+}
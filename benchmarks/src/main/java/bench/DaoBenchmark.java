@@ -0,0 +1,85 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеры основных операций DAO на встроенной базе H2 в режиме совместимости с MySQL.
+ * Режим Throughput даёт число операций в единицу времени, SampleTime - распределение задержек с перцентилями;
+ * распределение памяти замеряется профилировщиком -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+    /**
+     * Класс подготовки таблицы в пакете по умолчанию
+     */
+    @Param({"SampleFixture", "CompositeKeyFixture", "WideFixture"})
+    public String fixture;
+
+    /**
+     * Число записей в таблице
+     */
+    @Param({"1000"})
+    public int rows;
+
+    private DaoFixture target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        target = (DaoFixture) Class.forName(fixture).getDeclaredConstructor().newInstance();
+        target.setUp("jdbc:h2:mem:bench_" + fixture + ";MODE=MySQL;DB_CLOSE_DELAY=-1", rows);
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() throws Exception {
+        target.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        target.tearDown();
+    }
+
+    @Benchmark
+    public void insert() {
+        target.insert();
+    }
+
+    @Benchmark
+    public void update() {
+        target.update();
+    }
+
+    @Benchmark
+    public Object selectByKey() {
+        return target.selectByKey();
+    }
+
+    @Benchmark
+    public Object selectAll() {
+        return target.selectAll();
+    }
+
+    @Benchmark
+    public Object mapRows() throws Exception {
+        return target.mapRows();
+    }
+}
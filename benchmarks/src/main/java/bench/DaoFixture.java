@@ -0,0 +1,54 @@
+package bench;
+
+/**
+ * Подготовленная для замеров таблица и DAO одного отображаемого класса.
+ * Классы DAO и сущностей объявлены в пакете по умолчанию, из именованного пакета бенчмарков они недоступны,
+ * поэтому реализации этого интерфейса лежат в пакете по умолчанию и загружаются по имени класса.
+ */
+public interface DaoFixture {
+    /**
+     * Создаёт пул соединений, DAO и таблицу, заполняет таблицу записями
+     * @param url URL встроенной базы данных
+     * @param rows число записей в таблице
+     * @throws Exception не удалось подготовить таблицу
+     */
+    void setUp(String url, int rows) throws Exception;
+
+    /**
+     * Возвращает таблицу к исходным rows записям, удаляя записи, вставленные замером insert
+     * @throws Exception не удалось очистить таблицу
+     */
+    void reset() throws Exception;
+
+    /**
+     * Вставляет новую запись
+     */
+    void insert();
+
+    /**
+     * Обновляет случайную из исходных записей
+     */
+    void update();
+
+    /**
+     * @return случайная из исходных записей, выбранная по ключу
+     */
+    Object selectByKey();
+
+    /**
+     * @return все записи таблицы
+     */
+    Object selectAll();
+
+    /**
+     * Создаёт объекты по заранее загруженному в память результату запроса SELECT *, без обращения к БД
+     * @return созданные объекты
+     * @throws Exception не удалось прочитать результат запроса
+     */
+    Object mapRows() throws Exception;
+
+    /**
+     * Закрывает пул соединений
+     */
+    void tearDown();
+}
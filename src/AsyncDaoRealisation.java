@@ -0,0 +1,293 @@
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Асинхронная обёртка над DaoRealisation.
+ * Операции выполняются в заданном пуле потоков; одновременно выполняется не больше операций,
+ * чем соединений в пуле DAO, остальные ждут своей очереди, не занимая соединений.
+ * Каждый запрос регистрируется в QueryContext, через который его можно отменить из другого потока.
+ * Ошибка СУБД завершает операцию исключением: Future.get() выбрасывает ExecutionException с SQLException в причине.
+ * @param <T> Отображаемый класс.
+ */
+public class AsyncDaoRealisation<T> implements AsyncReflectionJdbcDao<T>, Closeable {
+    /**
+     * Поток, отменяющий операции по истечении таймаута. Общий для всех DAO
+     */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            daemonThreads("AsyncDaoRealisation-watchdog"));
+
+    /**
+     * DAO, выполняющий запросы
+     */
+    private final DaoRealisation<T> dao;
+    /**
+     * Пул потоков, в котором выполняются операции
+     */
+    private final ExecutorService executor;
+    /**
+     * Создан ли пул потоков этим DAO (и должен ли он останавливаться при закрытии)
+     */
+    private final boolean ownsExecutor;
+    /**
+     * Разрешения на выполнение операций, по одному на соединение пула
+     */
+    private final Semaphore permits;
+
+    /**
+     * Создаёт асинхронный DAO со своим пулом потоков, размер которого равен максимальному размеру пула соединений
+     * @param dao DAO, выполняющий запросы
+     */
+    public AsyncDaoRealisation(DaoRealisation<T> dao){
+        this(dao, Executors.newFixedThreadPool(dao.pool.getMaxSize(), daemonThreads("AsyncDaoRealisation-"+dao.tableName)), true);
+    }
+
+    /**
+     * Создаёт асинхронный DAO, выполняющий операции в заданном пуле потоков.
+     * Пул не останавливается при закрытии DAO
+     * @param dao DAO, выполняющий запросы
+     * @param executor пул потоков
+     */
+    public AsyncDaoRealisation(DaoRealisation<T> dao, ExecutorService executor){
+        this(dao, executor, false);
+    }
+
+    private AsyncDaoRealisation(DaoRealisation<T> dao, ExecutorService executor, boolean ownsExecutor){
+        this.dao = dao;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(dao.pool.getMaxSize(), true);
+    }
+
+    @Override
+    public Future<Void> insert(T object) {
+        return insert(object, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<Void> insert(final T object, long timeout, TimeUnit unit) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                dao.insertChecked(object);
+                return null;
+            }
+        }, timeout, unit);
+    }
+
+    @Override
+    public Future<Void> update(T object) {
+        return update(object, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<Void> update(final T object, long timeout, TimeUnit unit) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                dao.updateChecked(object);
+                return null;
+            }
+        }, timeout, unit);
+    }
+
+    @Override
+    public Future<Void> deleteByKey(T key) {
+        return deleteByKey(key, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<Void> deleteByKey(final T key, long timeout, TimeUnit unit) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                dao.deleteByKeyChecked(key);
+                return null;
+            }
+        }, timeout, unit);
+    }
+
+    @Override
+    public Future<T> selectByKey(T key) {
+        return selectByKey(key, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<T> selectByKey(final T key, long timeout, TimeUnit unit) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return dao.selectByKeyChecked(key);
+            }
+        }, timeout, unit);
+    }
+
+    @Override
+    public Future<List<T>> selectAll() {
+        return selectAll(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<List<T>> selectAll(long timeout, TimeUnit unit) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                return dao.selectAllChecked();
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * @return число операций, которые можно начать без ожидания свободного соединения
+     */
+    public int getAvailablePermits(){
+        return permits.availablePermits();
+    }
+
+    /**
+     * Останавливает собственный пул потоков DAO; уже принятые операции выполняются до конца.
+     * Пул, переданный в конструкторе, не останавливается
+     */
+    @Override
+    public void close() {
+        if(ownsExecutor){
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Ставит операцию в очередь пула потоков
+     * @param work операция
+     * @param timeout таймаут; 0 - таймаут запроса задаётся настройкой DAO
+     * @param unit единица измерения таймаута
+     * @param <V> тип результата
+     * @return результат операции
+     */
+    private <V> Future<V> submit(final Callable<V> work, long timeout, TimeUnit unit){
+        if(timeout < 0){
+            throw new IllegalArgumentException("Illegal timeout: "+timeout);
+        }
+        final QueryContext context = new QueryContext(timeout == 0 ? dao.getQueryTimeout() : toSeconds(timeout, unit));
+        QueryTask<V> task = new QueryTask<V>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return callWithPermit(work, context);
+            }
+        }, context);
+        if(timeout > 0){
+            task.watchdog = WATCHDOG.schedule(task.timeOut(), timeout, unit);
+        }
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Выполняет операцию, заняв разрешение на соединение, с заданным QueryContext потока.
+     * Разрешение возвращается до того, как результат станет виден через Future
+     * @param work операция
+     * @param context контекст выполняемых запросов
+     * @param <V> тип результата
+     * @return результат операции
+     * @throws Exception ошибка операции или прерывание ожидания разрешения
+     */
+    private <V> V callWithPermit(Callable<V> work, QueryContext context) throws Exception {
+        permits.acquire();
+        QueryContext.set(context);
+        try {
+            return work.call();
+        } finally {
+            QueryContext.set(null);
+            permits.release();
+        }
+    }
+
+    /**
+     * Переводит таймаут в секунды для Statement.setQueryTimeout, округляя вверх
+     * @param timeout таймаут
+     * @param unit единица измерения таймаута
+     * @return таймаут, с
+     */
+    private static int toSeconds(long timeout, TimeUnit unit){
+        long millis = unit.toMillis(timeout);
+        return (int) Math.min(Integer.MAX_VALUE, (millis + 999) / 1000);
+    }
+
+    /**
+     * @param name имя потоков
+     * @return фабрика фоновых потоков с заданным именем
+     */
+    private static ThreadFactory daemonThreads(final String name){
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Операция DAO, отменяемая через свой QueryContext
+     * @param <V> тип результата
+     */
+    private class QueryTask<V> extends FutureTask<V> {
+        /**
+         * Контекст выполняемых запросов
+         */
+        private final QueryContext context;
+        /**
+         * Отложенная отмена по таймауту
+         */
+        private volatile ScheduledFuture<?> watchdog;
+
+        QueryTask(Callable<V> work, QueryContext context) {
+            super(work);
+            this.context = context;
+        }
+
+        /**
+         * Отменяет операцию. Выполняемый запрос отменяется через Statement.cancel(), поток не прерывается
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(false);
+            if(cancelled){
+                context.cancel();
+            }
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            ScheduledFuture<?> scheduled = watchdog;
+            if(scheduled != null){
+                scheduled.cancel(false);
+            }
+        }
+
+        /**
+         * @return действие, завершающее операцию с TimeoutException и отменяющее выполняемый запрос
+         */
+        Runnable timeOut(){
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if(isDone()) return;
+                    setException(new TimeoutException("Operation on "+dao.tableName+" timed out"));
+                    context.cancel();
+                }
+            };
+        }
+    }
+}
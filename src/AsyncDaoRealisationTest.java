@@ -0,0 +1,63 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncDaoRealisationTest {
+    ConnectionPool pool;
+    DaoRealisation<SampleClass> dao;
+    AsyncDaoRealisation<SampleClass> testSubject;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("async");
+        dao = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        testSubject = new AsyncDaoRealisation<SampleClass>(dao);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testSubject.close();
+        pool.close();
+    }
+
+    @Test
+    public void testInsertAndSelect() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1)).get();
+        Future<SampleClass> result = testSubject.selectByKey(new SampleClass("","",1), 5, TimeUnit.SECONDS);
+        Assert.assertTrue(result.get().GetLastName().equals("Dow"));
+        Assert.assertTrue(testSubject.selectAll().get().size() == 1);
+    }
+
+    @Test
+    public void testPermitsReleased() throws Exception {
+        List<Future<Void>> inserts = new ArrayList<Future<Void>>();
+        for(int i = 0; i < 20; i++){
+            inserts.add(testSubject.insert(new SampleClass("John","Dow",i)));
+        }
+        for(Future<Void> insert: inserts){
+            insert.get();
+        }
+        Assert.assertTrue(testSubject.selectAll().get().size() == 20);
+        Assert.assertTrue(testSubject.getAvailablePermits() == dao.pool.getMaxSize());
+    }
+
+    @Test
+    public void testDatabaseErrorFailsFuture() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1)).get();
+        try {
+            testSubject.insert(new SampleClass("John","Dow",1)).get();
+            Assert.fail("Duplicate key should fail the future");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+        }
+        Assert.assertTrue(testSubject.getAvailablePermits() == dao.pool.getMaxSize());
+    }
+}
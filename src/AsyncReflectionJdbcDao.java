@@ -0,0 +1,91 @@
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронный DAO: операции выполняются в отдельном потоке, вызывающий поток получает Future.
+ * Отмена Future прерывает выполняемый запрос (Statement.cancel()). Если задан таймаут, по его истечении
+ * запрос отменяется, а Future завершается с TimeoutException. Ошибка СУБД завершает Future с ExecutionException,
+ * причина которого - SQLException.
+ * @param <T> Отображаемый класс.
+ */
+public interface AsyncReflectionJdbcDao<T> {
+
+    /**
+     * Вставка объекта в соответствующую таблицу БД
+     * @param object объект, поля которого вставляются в запись в таблице
+     * @return результат операции
+     */
+    public Future<Void> insert(T object);
+
+    /**
+     * Вставка объекта в соответствующую таблицу БД с ограничением времени выполнения
+     * @param object объект, поля которого вставляются в запись в таблице
+     * @param timeout максимальное время выполнения, включая ожидание свободного соединения
+     * @param unit единица измерения таймаута
+     * @return результат операции
+     */
+    public Future<Void> insert(T object, long timeout, TimeUnit unit);
+
+    /**
+     * Обновление соответствующей записи в таблице БД
+     * @param object объект, поля которого обновляются в записи в таблице
+     * @return результат операции
+     */
+    public Future<Void> update(T object);
+
+    /**
+     * Обновление соответствующей записи в таблице БД с ограничением времени выполнения
+     * @param object объект, поля которого обновляются в записи в таблице
+     * @param timeout максимальное время выполнения, включая ожидание свободного соединения
+     * @param unit единица измерения таймаута
+     * @return результат операции
+     */
+    public Future<Void> update(T object, long timeout, TimeUnit unit);
+
+    /**
+     * Удаление соответствующей записи из таблицы БД
+     * @param key объект с заполненными ключевыми полями
+     * @return результат операции
+     */
+    public Future<Void> deleteByKey(T key);
+
+    /**
+     * Удаление соответствующей записи из таблицы БД с ограничением времени выполнения
+     * @param key объект с заполненными ключевыми полями
+     * @param timeout максимальное время выполнения, включая ожидание свободного соединения
+     * @param unit единица измерения таймаута
+     * @return результат операции
+     */
+    public Future<Void> deleteByKey(T key, long timeout, TimeUnit unit);
+
+    /**
+     * Выборка записи по ключу
+     * @param key объект с заполненными ключевыми полями
+     * @return объект, созданный по найденной записи, или null
+     */
+    public Future<T> selectByKey(T key);
+
+    /**
+     * Выборка записи по ключу с ограничением времени выполнения
+     * @param key объект с заполненными ключевыми полями
+     * @param timeout максимальное время выполнения, включая ожидание свободного соединения
+     * @param unit единица измерения таймаута
+     * @return объект, созданный по найденной записи, или null
+     */
+    public Future<T> selectByKey(T key, long timeout, TimeUnit unit);
+
+    /**
+     * Выборка всех записей таблицы
+     * @return список объектов
+     */
+    public Future<List<T>> selectAll();
+
+    /**
+     * Выборка всех записей таблицы с ограничением времени выполнения
+     * @param timeout максимальное время выполнения, включая ожидание свободного соединения
+     * @param unit единица измерения таймаута
+     * @return список объектов
+     */
+    public Future<List<T>> selectAll(long timeout, TimeUnit unit);
+}
@@ -0,0 +1,110 @@
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат пакетной операции над набором объектов.
+ * Содержит число успешно обработанных объектов и ошибки по каждому объекту, который обработать не удалось.
+ * @param <T> Отображаемый класс.
+ */
+public class BatchResult<T> {
+    /**
+     * Число успешно обработанных объектов
+     */
+    private int succeeded = 0;
+    /**
+     * Ошибки по отдельным объектам
+     */
+    private final List<Failure<T>> failures = new ArrayList<Failure<T>>();
+
+    /**
+     * @return число успешно обработанных объектов
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return ошибки по отдельным объектам в порядке их следования во входном наборе
+     */
+    public List<Failure<T>> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * @return true, если хотя бы один объект обработать не удалось
+     */
+    public boolean hasFailures(){
+        return !failures.isEmpty();
+    }
+
+    /**
+     * Увеличивает число успешно обработанных объектов
+     * @param count число объектов
+     */
+    void addSucceeded(int count){
+        succeeded += count;
+    }
+
+    /**
+     * Добавляет ошибку по объекту
+     * @param index номер объекта во входном наборе, начиная с 0
+     * @param object объект
+     * @param cause ошибка СУБД
+     */
+    void addFailure(int index, T object, SQLException cause){
+        failures.add(new Failure<T>(index, object, cause));
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{succeeded=" + succeeded + ", failed=" + failures.size() + "}";
+    }
+
+    /**
+     * Ошибка обработки отдельного объекта
+     * @param <T> Отображаемый класс.
+     */
+    public static class Failure<T> {
+        /**
+         * Номер объекта во входном наборе, начиная с 0
+         */
+        private final int index;
+        /**
+         * Объект, который не удалось обработать
+         */
+        private final T object;
+        /**
+         * Ошибка СУБД
+         */
+        private final SQLException cause;
+
+        Failure(int index, T object, SQLException cause) {
+            this.index = index;
+            this.object = object;
+            this.cause = cause;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public T getObject() {
+            return object;
+        }
+
+        public SQLException getCause() {
+            return cause;
+        }
+
+        /**
+         * @return true, если запись с таким же ключом уже существует
+         */
+        public boolean isDuplicateKey(){
+            return cause instanceof SQLIntegrityConstraintViolationException
+                    || (cause.getSQLState() != null && cause.getSQLState().startsWith("23"));
+        }
+    }
+}
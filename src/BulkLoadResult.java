@@ -0,0 +1,79 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Результат массовой загрузки объектов: число загруженных строк, время загрузки и способ загрузки.
+ */
+public class BulkLoadResult {
+    /**
+     * Число объектов, переданных в БД
+     */
+    private final long submitted;
+    /**
+     * Число строк, добавленных в таблицу
+     */
+    private final long loaded;
+    /**
+     * Время загрузки, нс
+     */
+    private final long elapsedNanos;
+    /**
+     * Загружены ли объекты потоком LOAD DATA, а не многострочными INSERT
+     */
+    private final boolean streamed;
+
+    /**
+     * @param submitted число объектов, переданных в БД
+     * @param loaded число строк, добавленных в таблицу
+     * @param elapsedNanos время загрузки, нс
+     * @param streamed загружены ли объекты потоком LOAD DATA
+     */
+    public BulkLoadResult(long submitted, long loaded, long elapsedNanos, boolean streamed) {
+        this.submitted = submitted;
+        this.loaded = loaded;
+        this.elapsedNanos = elapsedNanos;
+        this.streamed = streamed;
+    }
+
+    /**
+     * @return число объектов, переданных в БД
+     */
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Возвращает число добавленных строк. При загрузке потоком строки с существующим ключом пропускаются,
+     * поэтому оно может быть меньше числа переданных объектов
+     * @return число строк, добавленных в таблицу
+     */
+    public long getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return время загрузки, мс
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * @return скорость загрузки, строк в секунду
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : loaded * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return true, если объекты загружены потоком LOAD DATA, false - многострочными INSERT
+     */
+    public boolean isStreamed() {
+        return streamed;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkLoadResult{loaded=" + loaded + " of " + submitted + ", " + getElapsedMillis() + " ms, "
+                + Math.round(getRowsPerSecond()) + " rows/s, " + (streamed ? "LOAD DATA" : "INSERT") + "}";
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class BulkLoadTest {
+    ConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("bulk");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void testInsertFallback() throws Exception {
+        DaoRealisation<SampleClass> testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        testSubject.setBatchSize(7);
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 50; i++){
+            objects.add(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        BulkLoadResult result = testSubject.bulkLoad(objects);
+        Assert.assertTrue(!result.isStreamed());
+        Assert.assertTrue(result.getSubmitted() == 50 && result.getLoaded() == 50);
+        Assert.assertTrue(result.getRowsPerSecond() > 0);
+        Assert.assertTrue(testSubject.selectAll().size() == 50);
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",49)).GetName().equals("Name49"));
+    }
+
+    @Test
+    public void testDeferIndexes() throws Exception {
+        DaoRealisation<IndexedClass> testSubject = new DaoRealisation<IndexedClass>(pool, IndexedClass.class);
+        List<IndexedClass> objects = new ArrayList<IndexedClass>();
+        for(int i = 0; i < 20; i++){
+            objects.add(new IndexedClass(i, "mail"+i+"@example.com", i % 2 == 0 ? "Moscow" : "Kazan", i % 3));
+        }
+        BulkLoadResult result = testSubject.bulkLoad(objects.iterator(), true);
+        Assert.assertTrue(result.getLoaded() == 20);
+        Assert.assertTrue(indexNames().containsAll(Arrays.asList("IDX_INDEXED_CITY_STATUS")));
+        Assert.assertTrue(testSubject.selectBy("city", "Kazan").size() == 10);
+    }
+
+    @Test
+    public void testDelimitedFormat() throws Exception {
+        List<CompositeKeyClass> objects = new ArrayList<CompositeKeyClass>();
+        objects.add(new CompositeKeyClass("Tab\there\\", 30, true, 1.5));
+        objects.add(new CompositeKeyClass(null, 40, false, 2.0));
+        objects.add(new CompositeKeyClass("Строка\n", 50, false, 0.25));
+        EntityMetadata<CompositeKeyClass> metadata = SchemaRegistry.metadata(CompositeKeyClass.class);
+        InputStream stream = new DelimitedEntityStream(objects.iterator(), metadata.codecs);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int read;
+        while((read = stream.read(buffer, 0, buffer.length)) > 0){
+            bytes.write(buffer, 0, read);
+        }
+        String[] lines = new String(bytes.toByteArray(), "UTF-8").split("\n");
+        Assert.assertTrue(lines.length == 3);
+        Assert.assertTrue(Arrays.asList(lines[0].split("\t")).containsAll(Arrays.asList("Tab\\there\\\\", "30", "1", "1.5")));
+        Assert.assertTrue(Arrays.asList(lines[1].split("\t")).contains("\\N"));
+        Assert.assertTrue(Arrays.asList(lines[2].split("\t")).contains("Строка\\n"));
+    }
+
+    private Set<String> indexNames() throws Exception {
+        Set<String> names = new HashSet<String>();
+        Connection connection = pool.getConnection();
+        try {
+            ResultSet set = connection.getMetaData().getIndexInfo(null, null, "INDEXED", false, false);
+            while(set.next()){
+                names.add(set.getString("INDEX_NAME"));
+            }
+            set.close();
+        } finally {
+            connection.close();
+        }
+        return names;
+    }
+}
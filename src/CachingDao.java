@@ -0,0 +1,486 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DAO с кэшем объектов, выбираемых по ключу.
+ * Выборка по ключу сначала ищет объект в кэше и обращается к БД только при промахе.
+ * Кэш ограничен по числу объектов и вытесняет давно не использованные (LRU);
+ * дополнительно можно задать время жизни записи.
+ * Кэш разбит на сегменты по хэшу ключа со своими блокировками, поэтому обращения к разным ключам не ждут друг друга;
+ * порядок вытеснения соблюдается в пределах сегмента. Копии объектов создаются вне блокировок.
+ * Операции записи удаляют из кэша затронутые ключи.
+ * Кэш хранит копии объектов и выдаёт копии, поэтому изменение полученного объекта не портит кэш.
+ * Внутри TransactionContext выборки идут мимо кэша и не заполняют его, так как могут видеть незафиксированные изменения;
+ * ключи, записанные в транзакции, удаляются из кэша ещё раз после её фиксации.
+ * @param <T> Отображаемый класс.
+ */
+public class CachingDao<T> implements ReflectionJdbcDao<T> {
+    /**
+     * DAO, к которому обращается кэш при промахе
+     */
+    private final DaoRealisation<T> dao;
+    /**
+     * Максимальное число объектов в кэше
+     */
+    private final int maxSize;
+    /**
+     * Время жизни записи кэша, мс; 0 - без ограничения
+     */
+    private final long timeToLive;
+    /**
+     * Максимальное число сегментов кэша
+     */
+    private static final int MAX_SEGMENTS = 64;
+    /**
+     * Минимальное число объектов в сегменте, при котором кэш делится на сегменты
+     */
+    private static final int MIN_SEGMENT_SIZE = 16;
+    /**
+     * Сегменты кэша, число сегментов - степень двойки
+     */
+    private final List<Segment> segments;
+
+    /**
+     * Число попаданий в кэш
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * Число промахов кэша
+     */
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * Число вытесненных и устаревших записей
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Создаёт кэш без ограничения времени жизни записей
+     * @param dao DAO, к которому обращается кэш
+     * @param maxSize максимальное число объектов в кэше
+     */
+    public CachingDao(DaoRealisation<T> dao, int maxSize){
+        this(dao, maxSize, 0);
+    }
+
+    /**
+     * Создаёт кэш
+     * @param dao DAO, к которому обращается кэш
+     * @param maxSize максимальное число объектов в кэше
+     * @param timeToLive время жизни записи кэша, мс; 0 - без ограничения
+     */
+    public CachingDao(DaoRealisation<T> dao, final int maxSize, long timeToLive){
+        if(maxSize < 1){
+            throw new IllegalArgumentException("Cache size should be positive");
+        }
+        this.dao = dao;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        int count = 1;
+        while(count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_SIZE <= maxSize){
+            count *= 2;
+        }
+        this.segments = new ArrayList<Segment>(count);
+        for(int i = 0; i < count; i++){
+            segments.add(new Segment(maxSize / count + (i < maxSize % count ? 1 : 0)));
+        }
+    }
+
+    @Override
+    public void insert(T object) {
+        invalidate(object);
+        dao.insert(object);
+    }
+
+    @Override
+    public void update(T object) {
+        dao.update(object);
+        invalidate(object);
+    }
+
+    @Override
+    public void deleteByKey(T key) {
+        dao.deleteByKey(key);
+        invalidate(key);
+    }
+
+    @Override
+    public T selectByKey(T key) {
+        if(TransactionContext.current() != null){
+            return dao.selectByKey(key);
+        }
+        EntityKey entityKey = keyOf(key);
+        Segment segment = segmentFor(entityKey);
+        T cached;
+        long version;
+        synchronized (segment){
+            cached = segment.lookup(entityKey);
+            version = segment.version;
+        }
+        if(cached != null){
+            hits.incrementAndGet();
+            return copy(cached);
+        }
+        misses.incrementAndGet();
+        T object = dao.selectByKey(key);
+        if(object != null){
+            store(entityKey, copy(object), version);
+        }
+        return object;
+    }
+
+    @Override
+    public List<T> selectAll() {
+        return dao.selectAll();
+    }
+
+    @Override
+    public BatchResult<T> insertAll(Collection<T> objects) {
+        invalidateAll(objects.iterator());
+        return dao.insertAll(objects);
+    }
+
+    @Override
+    public BatchResult<T> insertAll(Iterator<T> objects) {
+        final Iterator<T> source = objects;
+        return dao.insertAll(new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public T next() {
+                T object = source.next();
+                invalidate(object);
+                return object;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    @Override
+    public int updateAll(Collection<T> objects) {
+        int updated = dao.updateAll(objects);
+        invalidateAll(objects.iterator());
+        return updated;
+    }
+
+    @Override
+    public void upsert(T object) {
+        dao.upsert(object);
+        invalidate(object);
+    }
+
+    @Override
+    public int upsertAll(Collection<T> objects) {
+        int written = dao.upsertAll(objects);
+        invalidateAll(objects.iterator());
+        return written;
+    }
+
+    @Override
+    public int deleteByKeys(Collection<T> keys) {
+        int deleted = dao.deleteByKeys(keys);
+        invalidateAll(keys.iterator());
+        return deleted;
+    }
+
+    @Override
+    public Map<EntityKey, T> selectByKeys(Collection<T> keys) {
+        if(TransactionContext.current() != null){
+            return dao.selectByKeys(keys);
+        }
+        Map<EntityKey, T> results = new LinkedHashMap<EntityKey, T>();
+        List<T> missing = new ArrayList<T>();
+        Map<EntityKey, Long> versions = new HashMap<EntityKey, Long>();
+        for(T key: keys){
+            EntityKey entityKey = keyOf(key);
+            Segment segment = segmentFor(entityKey);
+            T cached;
+            synchronized (segment){
+                cached = segment.lookup(entityKey);
+                if(cached == null) versions.put(entityKey, segment.version);
+            }
+            if(cached != null){
+                results.put(entityKey, copy(cached));
+            } else {
+                missing.add(key);
+            }
+        }
+        hits.addAndGet(results.size());
+        misses.addAndGet(missing.size());
+        if(!missing.isEmpty()){
+            for(Map.Entry<EntityKey, T> loaded: dao.selectByKeys(missing).entrySet()){
+                store(loaded.getKey(), copy(loaded.getValue()), versions.get(loaded.getKey()));
+                results.put(loaded.getKey(), loaded.getValue());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Удаляет из кэша объект с ключом переданного объекта
+     * @param key объект с заполненными ключевыми полями
+     */
+    public void invalidate(T key){
+        final EntityKey entityKey = keyOf(key);
+        invalidate(entityKey);
+        TransactionContext transaction = TransactionContext.current();
+        if(transaction != null){
+            // до фиксации другие потоки могли прочитать и закэшировать прежнюю версию записи
+            transaction.afterCommit(new Runnable() {
+                @Override
+                public void run() {
+                    invalidate(entityKey);
+                }
+            });
+        }
+    }
+
+    /**
+     * Удаляет из кэша объект с заданным ключом
+     * @param key ключ объекта
+     */
+    private void invalidate(EntityKey key){
+        Segment segment = segmentFor(key);
+        synchronized (segment){
+            segment.entries.remove(key);
+            segment.version++;
+        }
+    }
+
+    /**
+     * Очищает кэш
+     */
+    public void invalidateAll(){
+        for(Segment segment: segments){
+            synchronized (segment){
+                segment.entries.clear();
+                segment.version++;
+            }
+        }
+    }
+
+    /**
+     * Заполняет кэш объектами из снимка таблицы, не обращаясь к БД.
+     * Если объектов в снимке больше maxSize, в кэше остаются последние из них.
+     * Объекты не помещаются в кэш, если за время чтения снимка ключи удалялись операциями записи
+     * @param snapshot файл снимка, записанный TableSnapshot.export
+     * @return число объектов, прочитанных из снимка
+     * @throws IOException снимок не удалось прочитать
+     * @throws IllegalStateException схема снимка не совпадает со схемой класса
+     */
+    public int warmUp(File snapshot) throws IOException {
+        long[] versions = new long[segments.size()];
+        for(int i = 0; i < versions.length; i++){
+            Segment segment = segments.get(i);
+            synchronized (segment){
+                versions[i] = segment.version;
+            }
+        }
+        List<T> objects = TableSnapshot.load(dao.tableClass, snapshot);
+        for(T object: objects){
+            EntityKey key = keyOf(object);
+            store(key, object, versions[segmentIndex(key)]);
+        }
+        return objects.size();
+    }
+
+    /**
+     * @return число объектов в кэше
+     */
+    public int size(){
+        int size = 0;
+        for(Segment segment: segments){
+            synchronized (segment){
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return максимальное число объектов в кэше
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return число попаданий в кэш
+     */
+    public long getHitCount(){
+        return hits.get();
+    }
+
+    /**
+     * @return число промахов кэша
+     */
+    public long getMissCount(){
+        return misses.get();
+    }
+
+    /**
+     * @return число вытесненных и устаревших записей
+     */
+    public long getEvictionCount(){
+        return evictions.get();
+    }
+
+    /**
+     * @return доля попаданий среди всех обращений к кэшу, от 0 до 1
+     */
+    public double getHitRate(){
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Помещает в кэш прочитанный из БД объект, если с начала чтения не удалялись ключи его сегмента
+     * @param key ключ объекта
+     * @param object копия объекта
+     * @param version версия сегмента ключа на момент начала чтения
+     */
+    private void store(EntityKey key, T object, long version){
+        long expires = timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE;
+        Segment segment = segmentFor(key);
+        synchronized (segment){
+            if(segment.version == version){
+                segment.entries.put(key, new CacheEntry<T>(object, expires));
+            }
+        }
+    }
+
+    /**
+     * Удаляет из кэша объекты с ключами переданных объектов
+     * @param keys объекты с заполненными ключевыми полями
+     */
+    private void invalidateAll(Iterator<T> keys){
+        while(keys.hasNext()){
+            invalidate(keys.next());
+        }
+    }
+
+    /**
+     * @param key ключ объекта
+     * @return номер сегмента ключа
+     */
+    private int segmentIndex(EntityKey key){
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (segments.size() - 1);
+    }
+
+    /**
+     * @param key ключ объекта
+     * @return сегмент ключа
+     */
+    private Segment segmentFor(EntityKey key){
+        return segments.get(segmentIndex(key));
+    }
+
+    /**
+     * @param object объект с заполненными ключевыми полями
+     * @return ключ объекта
+     */
+    private EntityKey keyOf(T object){
+        try {
+            return dao.keyOf(object);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to read key of "+object, e);
+        }
+    }
+
+    /**
+     * @param object копируемый объект
+     * @return копия объекта
+     */
+    private T copy(T object){
+        try {
+            return dao.copy(object);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to copy "+object, e);
+        }
+    }
+
+    /**
+     * Сегмент кэша со своим порядком вытеснения. Поля доступны только под блокировкой сегмента
+     */
+    private class Segment {
+        /**
+         * Записи сегмента в формате ключ->запись в порядке от давно использованных к недавно использованным
+         */
+        final LinkedHashMap<EntityKey, CacheEntry<T>> entries;
+        /**
+         * Число удалений ключей сегмента операциями записи.
+         * Объект, прочитанный из БД, не помещается в кэш, если за время чтения удалялись ключи его сегмента:
+         * иначе в кэш могла бы попасть версия, прочитанная до конкурентной записи
+         */
+        long version;
+
+        /**
+         * @param capacity максимальное число объектов в сегменте
+         */
+        Segment(final int capacity) {
+            this.entries = new LinkedHashMap<EntityKey, CacheEntry<T>>(16, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<EntityKey, CacheEntry<T>> eldest) {
+                    if(size() > capacity){
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Ищет неустаревшую запись в сегменте
+         * @param key ключ объекта
+         * @return объект из кэша или null
+         */
+        T lookup(EntityKey key){
+            CacheEntry<T> entry = entries.get(key);
+            if(entry == null) return null;
+            if(timeToLive > 0 && entry.expires < System.currentTimeMillis()){
+                entries.remove(key);
+                evictions.incrementAndGet();
+                return null;
+            }
+            return entry.object;
+        }
+    }
+
+    /**
+     * Запись кэша
+     * @param <T> Отображаемый класс.
+     */
+    private static class CacheEntry<T> {
+        /**
+         * Копия объекта
+         */
+        final T object;
+        /**
+         * Время, после которого запись устаревает, мс
+         */
+        final long expires;
+
+        CacheEntry(T object, long expires) {
+            this.object = object;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CachingDaoTest {
+    ConnectionPool pool;
+    DaoRealisation<SampleClass> dao;
+    CachingDao<SampleClass> testSubject;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("caching");
+        dao = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        testSubject = new CachingDao<SampleClass>(dao,2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        SampleClass first = testSubject.selectByKey(new SampleClass("","",1));
+        SampleClass second = testSubject.selectByKey(new SampleClass("","",1));
+        Assert.assertTrue(first.equals(second) && first != second);
+        Assert.assertTrue(testSubject.getMissCount() == 1 && testSubject.getHitCount() == 1);
+    }
+
+    @Test
+    public void testReturnedObjectsAreCopies() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.selectByKey(new SampleClass("","",1)).SetName("Mutated");
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)).GetName().equals("John"));
+    }
+
+    @Test
+    public void testUpdateInvalidates() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.selectByKey(new SampleClass("","",1));
+        testSubject.update(new SampleClass("John","Petrov",1));
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+        testSubject.deleteByKey(new SampleClass("","",1));
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)) == null);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        for(int i = 0; i < 3; i++){
+            testSubject.insert(new SampleClass("Name"+i,"LastName"+i,i));
+            testSubject.selectByKey(new SampleClass("","",i));
+        }
+        Assert.assertTrue(testSubject.size() == 2);
+        Assert.assertTrue(testSubject.getEvictionCount() == 1);
+    }
+
+    @Test
+    public void testSegmentedEviction() throws Exception {
+        CachingDao<SampleClass> large = new CachingDao<SampleClass>(dao,50);
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 200; i++){
+            objects.add(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        large.insertAll(objects);
+        for(int i = 0; i < 200; i++){
+            Assert.assertTrue(large.selectByKey(new SampleClass("","",i)).GetName().equals("Name"+i));
+        }
+        Assert.assertTrue("Cache should not exceed its size, has "+large.size(), large.size() <= 50 && large.size() > 0);
+        Assert.assertTrue(large.getEvictionCount() == 200 - large.size());
+        large.invalidateAll();
+        Assert.assertTrue(large.size() == 0);
+    }
+
+    @Test
+    public void testTransactionBypassesCache() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        try {
+            dao.inTransaction(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    testSubject.update(new SampleClass("John","Petrov",1));
+                    Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+                    transaction.setRollbackOnly();
+                    return null;
+                }
+            });
+        } catch (IllegalStateException e) {
+            // транзакция откачена
+        }
+        Assert.assertTrue("Uncommitted row should not be cached", testSubject.size() == 0);
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)).GetLastName().equals("Dow"));
+    }
+}
@@ -0,0 +1,16 @@
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Итератор по результату запроса, удерживающий ресурсы БД (соединение, запрос, набор данных).
+ * Ресурсы освобождаются вызовом close() или автоматически после получения последнего элемента.
+ * @param <T> Отображаемый класс.
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * Освобождает соединение, запрос и набор данных. Повторный вызов ничего не делает.
+     */
+    @Override
+    public void close();
+}
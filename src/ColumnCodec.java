@@ -0,0 +1,569 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Преобразователь между полем отображаемого класса и столбцом таблицы.
+ * Для каждого поддерживаемого типа поля есть своя реализация: значения примитивных типов читаются
+ * методами getInt/getLong/getDouble/getBoolean... по номеру столбца и передаются в аксессоры без упаковки.
+ * Аксессоры находятся один раз при создании DAO и вызываются через MethodHandle точного типа.
+ * Дескрипторы хранятся в полях экземпляра, а не в static final константах: один класс преобразователя
+ * обслуживает поля всех отображаемых классов, поэтому JIT-компилятор не может встроить сам аксессор
+ * и вызывает его через дескриптор. Встраивание потребовало бы генерировать класс доступа для каждого
+ * отображаемого класса во время выполнения, для чего в Java 7 нет средств без сторонних библиотек байт-кода.
+ */
+abstract class ColumnCodec {
+    /**
+     * Имя поля
+     */
+    final String name;
+    /**
+     * Имя столбца таблицы
+     */
+    final String column;
+    /**
+     * Тип поля
+     */
+    final Class<?> type;
+    /**
+     * Является ли тип поля примитивным
+     */
+    final boolean primitive;
+    /**
+     * Get-аксессор типа (Object)тип_поля
+     */
+    final MethodHandle getter;
+    /**
+     * Set-аксессор типа (Object,тип_поля)void
+     */
+    final MethodHandle setter;
+    /**
+     * Get-аксессор типа (Object)Object
+     */
+    private final MethodHandle boxedGetter;
+    /**
+     * Set-аксессор типа (Object,Object)void
+     */
+    private final MethodHandle boxedSetter;
+
+    /**
+     * Находит аксессоры поля
+     * @param field поле отображаемого класса
+     * @param column имя столбца таблицы
+     * @throws NoSuchMethodException аксессор не найден
+     * @throws IllegalAccessException аксессор недоступен
+     */
+    ColumnCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+        this.name = field.getName();
+        this.column = column;
+        this.type = field.getType();
+        this.primitive = type.isPrimitive();
+        Class<?> declaringClass = field.getDeclaringClass();
+        String suffix = Character.toUpperCase(name.charAt(0))+name.substring(1);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle get = lookup.unreflect(declaringClass.getMethod("Get"+suffix));
+        MethodHandle set = lookup.unreflect(declaringClass.getMethod("Set"+suffix, type));
+        this.getter = get.asType(MethodType.methodType(type, Object.class));
+        this.setter = set.asType(MethodType.methodType(void.class, Object.class, type));
+        this.boxedGetter = get.asType(MethodType.methodType(Object.class, Object.class));
+        this.boxedSetter = set.asType(MethodType.methodType(void.class, Object.class, Object.class));
+    }
+
+    /**
+     * Создаёт преобразователь, соответствующий типу поля
+     * @param field поле отображаемого класса
+     * @param column имя столбца таблицы
+     * @return преобразователь
+     * @throws NoSuchMethodException аксессор не найден
+     * @throws IllegalAccessException аксессор недоступен
+     * @throws IllegalArgumentException тип поля не поддерживается
+     */
+    static ColumnCodec forField(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+        Class<?> type = field.getType();
+        if(type == String.class) return new StringCodec(field, column);
+        if(type == int.class || type == Integer.class) return new IntCodec(field, column);
+        if(type == byte.class || type == Byte.class) return new ByteCodec(field, column);
+        if(type == long.class || type == Long.class) return new LongCodec(field, column);
+        if(type == float.class || type == Float.class) return new FloatCodec(field, column);
+        if(type == double.class || type == Double.class) return new DoubleCodec(field, column);
+        if(type == boolean.class || type == Boolean.class) return new BooleanCodec(field, column);
+        throw new IllegalArgumentException("Type is not supported");
+    }
+
+    /**
+     * @return тип столбца SQL для создания таблицы
+     */
+    abstract String getSqlType();
+
+    /**
+     * @return код типа из java.sql.Types
+     */
+    abstract int getJdbcType();
+
+    /**
+     * Читает значение столбца текущей строки и задаёт его полю объекта
+     * @param set набор данных, установленный на нужную строку
+     * @param index номер столбца в наборе данных
+     * @param target заполняемый объект
+     * @throws SQLException результат запроса оказался недоступен
+     * @throws InvocationTargetException Set-аксессор выбросил исключение
+     */
+    abstract void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException;
+
+    /**
+     * Читает значение столбца текущей строки, не создавая объект
+     * @param set набор данных, установленный на нужную строку
+     * @param index номер столбца в наборе данных
+     * @return значение столбца, для примитивных типов - в обёртке; null, если значение пустое
+     * @throws SQLException результат запроса оказался недоступен
+     */
+    abstract Object readValue(ResultSet set, int index) throws SQLException;
+
+    /**
+     * Передаёт значение поля объекта в параметр запроса
+     * @param statement подготовленный запрос
+     * @param index номер параметра
+     * @param source объект, значение поля которого передаётся
+     * @throws SQLException не удалось задать параметр
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    abstract void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException;
+
+    /**
+     * Читает значение поля
+     * @param object объект отображаемого класса
+     * @return значение поля; значения примитивных типов возвращаются в обёртках
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    Object get(Object object) throws InvocationTargetException {
+        try {
+            return (Object) boxedGetter.invokeExact(object);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Задаёт значение поля
+     * @param object объект отображаемого класса
+     * @param value значение поля; для примитивных типов передаётся в обёртке
+     * @throws InvocationTargetException Set-аксессор выбросил исключение или значение имеет неподходящий тип
+     */
+    void set(Object object, Object value) throws InvocationTargetException {
+        try {
+            boxedSetter.invokeExact(object, value);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Передаёт в параметр запроса значение поля ссылочного типа, в том числе null
+     * @param statement подготовленный запрос
+     * @param index номер параметра
+     * @param source объект, значение поля которого передаётся
+     * @throws SQLException не удалось задать параметр
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    void bindBoxed(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+        bindValue(statement, index, get(source));
+    }
+
+    /**
+     * Передаёт в параметр запроса значение, например значение поля для условия выборки
+     * @param statement подготовленный запрос
+     * @param index номер параметра
+     * @param value значение поля, для примитивных типов - в обёртке; может быть null
+     * @throws SQLException не удалось задать параметр
+     * @throws IllegalArgumentException тип значения не соответствует типу поля
+     */
+    void bindValue(PreparedStatement statement, int index, Object value) throws SQLException {
+        if(value == null){
+            statement.setNull(index, getJdbcType());
+            return;
+        }
+        if(!MethodType.methodType(type).wrap().returnType().isInstance(value)){
+            throw new IllegalArgumentException("Value "+value+" does not match type "+type.getName()+" of field "+name);
+        }
+        statement.setObject(index, value, getJdbcType());
+    }
+
+    /**
+     * Преобразователь полей типа String
+     */
+    private static final class StringCodec extends ColumnCodec {
+        StringCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+            super(field, column);
+        }
+
+        @Override
+        String getSqlType() {
+            return " VARCHAR(255) ";
+        }
+
+        @Override
+        int getJdbcType() {
+            return Types.VARCHAR;
+        }
+
+        @Override
+        void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException {
+            String value = set.getString(index);
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        Object readValue(ResultSet set, int index) throws SQLException {
+            return set.getString(index);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+            String value;
+            try {
+                value = (String) getter.invokeExact(source);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            if(value == null){
+                statement.setNull(index, Types.VARCHAR);
+            } else {
+                statement.setString(index, value);
+            }
+        }
+    }
+
+    /**
+     * Преобразователь полей типа int и Integer
+     */
+    private static final class IntCodec extends ColumnCodec {
+        IntCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+            super(field, column);
+        }
+
+        @Override
+        String getSqlType() {
+            return " INTEGER ";
+        }
+
+        @Override
+        int getJdbcType() {
+            return Types.INTEGER;
+        }
+
+        @Override
+        void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException {
+            int value = set.getInt(index);
+            if(!primitive){
+                set(target, set.wasNull() ? null : Integer.valueOf(value));
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        Object readValue(ResultSet set, int index) throws SQLException {
+            int value = set.getInt(index);
+            return set.wasNull() ? null : Integer.valueOf(value);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+            if(!primitive){
+                bindBoxed(statement, index, source);
+                return;
+            }
+            int value;
+            try {
+                value = (int) getter.invokeExact(source);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            statement.setInt(index, value);
+        }
+    }
+
+    /**
+     * Преобразователь полей типа byte и Byte
+     */
+    private static final class ByteCodec extends ColumnCodec {
+        ByteCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+            super(field, column);
+        }
+
+        @Override
+        String getSqlType() {
+            return " TINYINT ";
+        }
+
+        @Override
+        int getJdbcType() {
+            return Types.TINYINT;
+        }
+
+        @Override
+        void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException {
+            byte value = set.getByte(index);
+            if(!primitive){
+                set(target, set.wasNull() ? null : Byte.valueOf(value));
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        Object readValue(ResultSet set, int index) throws SQLException {
+            byte value = set.getByte(index);
+            return set.wasNull() ? null : Byte.valueOf(value);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+            if(!primitive){
+                bindBoxed(statement, index, source);
+                return;
+            }
+            byte value;
+            try {
+                value = (byte) getter.invokeExact(source);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            statement.setByte(index, value);
+        }
+    }
+
+    /**
+     * Преобразователь полей типа long и Long
+     */
+    private static final class LongCodec extends ColumnCodec {
+        LongCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+            super(field, column);
+        }
+
+        @Override
+        String getSqlType() {
+            return " BIGINT ";
+        }
+
+        @Override
+        int getJdbcType() {
+            return Types.BIGINT;
+        }
+
+        @Override
+        void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException {
+            long value = set.getLong(index);
+            if(!primitive){
+                set(target, set.wasNull() ? null : Long.valueOf(value));
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        Object readValue(ResultSet set, int index) throws SQLException {
+            long value = set.getLong(index);
+            return set.wasNull() ? null : Long.valueOf(value);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+            if(!primitive){
+                bindBoxed(statement, index, source);
+                return;
+            }
+            long value;
+            try {
+                value = (long) getter.invokeExact(source);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            statement.setLong(index, value);
+        }
+    }
+
+    /**
+     * Преобразователь полей типа float и Float
+     */
+    private static final class FloatCodec extends ColumnCodec {
+        FloatCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+            super(field, column);
+        }
+
+        @Override
+        String getSqlType() {
+            return " FLOAT ";
+        }
+
+        @Override
+        int getJdbcType() {
+            return Types.FLOAT;
+        }
+
+        @Override
+        void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException {
+            float value = set.getFloat(index);
+            if(!primitive){
+                set(target, set.wasNull() ? null : Float.valueOf(value));
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        Object readValue(ResultSet set, int index) throws SQLException {
+            float value = set.getFloat(index);
+            return set.wasNull() ? null : Float.valueOf(value);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+            if(!primitive){
+                bindBoxed(statement, index, source);
+                return;
+            }
+            float value;
+            try {
+                value = (float) getter.invokeExact(source);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            statement.setFloat(index, value);
+        }
+    }
+
+    /**
+     * Преобразователь полей типа double и Double
+     */
+    private static final class DoubleCodec extends ColumnCodec {
+        DoubleCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+            super(field, column);
+        }
+
+        @Override
+        String getSqlType() {
+            return " DOUBLE PRECISION ";
+        }
+
+        @Override
+        int getJdbcType() {
+            return Types.DOUBLE;
+        }
+
+        @Override
+        void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException {
+            double value = set.getDouble(index);
+            if(!primitive){
+                set(target, set.wasNull() ? null : Double.valueOf(value));
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        Object readValue(ResultSet set, int index) throws SQLException {
+            double value = set.getDouble(index);
+            return set.wasNull() ? null : Double.valueOf(value);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+            if(!primitive){
+                bindBoxed(statement, index, source);
+                return;
+            }
+            double value;
+            try {
+                value = (double) getter.invokeExact(source);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            statement.setDouble(index, value);
+        }
+    }
+
+    /**
+     * Преобразователь полей типа boolean и Boolean
+     */
+    private static final class BooleanCodec extends ColumnCodec {
+        BooleanCodec(Field field, String column) throws NoSuchMethodException, IllegalAccessException {
+            super(field, column);
+        }
+
+        @Override
+        String getSqlType() {
+            return " BIT ";
+        }
+
+        @Override
+        int getJdbcType() {
+            return Types.BIT;
+        }
+
+        @Override
+        void read(ResultSet set, int index, Object target) throws SQLException, InvocationTargetException {
+            boolean value = set.getBoolean(index);
+            if(!primitive){
+                set(target, set.wasNull() ? null : Boolean.valueOf(value));
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        Object readValue(ResultSet set, int index) throws SQLException {
+            boolean value = set.getBoolean(index);
+            return set.wasNull() ? null : Boolean.valueOf(value);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object source) throws SQLException, InvocationTargetException {
+            if(!primitive){
+                bindBoxed(statement, index, source);
+                return;
+            }
+            boolean value;
+            try {
+                value = (boolean) getter.invokeExact(source);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+            statement.setBoolean(index, value);
+        }
+    }
+}
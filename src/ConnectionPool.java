@@ -0,0 +1,677 @@
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограниченный потокобезопасный пул соединений с БД.
+ * Соединения выдаются в виде обёрток, метод close() которых возвращает соединение в пул.
+ * Пул поддерживает минимальный и максимальный размер, таймаут ожидания свободного соединения,
+ * вытеснение простаивающих соединений и проверку соединения при выдаче.
+ * Пулы с одинаковыми URL и учётными данными могут разделяться несколькими DAO (см. getShared).
+ */
+public class ConnectionPool {
+    /**
+     * Пулы, разделяемые между DAO, в формате ключ(драйвер|URL|пользователь|пароль)->пул
+     */
+    private static final ConcurrentMap<String, ConnectionPool> SHARED_POOLS = new ConcurrentHashMap<String, ConnectionPool>();
+    /**
+     * Поток, периодически вытесняющий простаивающие соединения всех пулов
+     */
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ConnectionPool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Полное имя класса драйвера СУБД
+     */
+    private final String driverName;
+    /**
+     * URL базы данных
+     */
+    private final String url;
+    /**
+     * Параметры соединения (пользователь, пароль, настройки драйвера)
+     */
+    private final Properties properties;
+    /**
+     * Диалект СУБД
+     */
+    private final SqlDialect dialect;
+    /**
+     * Минимальное число соединений, удерживаемых пулом
+     */
+    private volatile int minSize = 1;
+    /**
+     * Максимальное число одновременно выданных соединений
+     */
+    private volatile int maxSize = 10;
+    /**
+     * Время ожидания свободного соединения, мс
+     */
+    private volatile long acquireTimeout = 30000;
+    /**
+     * Время простоя, после которого соединение закрывается, мс
+     */
+    private volatile long idleTimeout = 600000;
+    /**
+     * Проверять ли соединение перед выдачей
+     */
+    private volatile boolean validateOnBorrow = true;
+    /**
+     * Таймаут проверки соединения, с
+     */
+    private volatile int validationTimeout = 5;
+    /**
+     * Число подготовленных запросов, кэшируемых для каждого соединения
+     */
+    private volatile int statementCacheSize = 64;
+
+    /**
+     * Свободные соединения; последнее возвращённое выдаётся первым
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+    /**
+     * Разрешения на выдачу соединений, их число равно maxSize
+     */
+    private final Semaphore permits;
+    /**
+     * Загружен ли драйвер СУБД
+     */
+    private volatile boolean driverLoaded = false;
+    /**
+     * Закрыт ли пул
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Создаёт пул с настройками по умолчанию
+     * @param driverName имя класса драйвера СУБД
+     * @param url URL базы данных
+     * @param login имя пользователя БД
+     * @param password пароль БД
+     */
+    public ConnectionPool(String driverName, String url, String login, String password){
+        this(driverName, url, login, password, 1, 10);
+    }
+
+    /**
+     * Создаёт пул заданного размера
+     * @param driverName имя класса драйвера СУБД
+     * @param url URL базы данных
+     * @param login имя пользователя БД
+     * @param password пароль БД
+     * @param minSize минимальное число удерживаемых соединений
+     * @param maxSize максимальное число одновременно выданных соединений
+     */
+    public ConnectionPool(String driverName, String url, String login, String password, int minSize, int maxSize){
+        if(maxSize < 1 || minSize < 0 || minSize > maxSize){
+            throw new IllegalArgumentException("Illegal pool size: min="+minSize+", max="+maxSize);
+        }
+        this.driverName = driverName;
+        this.url = url;
+        this.properties = new Properties();
+        if(login != null) properties.setProperty("user", login);
+        if(password != null) properties.setProperty("password", password);
+        this.dialect = SqlDialect.forUrl(url);
+        dialect.configure(properties);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+        scheduleEviction();
+    }
+
+    /**
+     * Возвращает пул, разделяемый всеми DAO с теми же URL и учётными данными, создавая его при необходимости
+     * @param driverName имя класса драйвера СУБД
+     * @param url URL базы данных
+     * @param login имя пользователя БД
+     * @param password пароль БД
+     * @return разделяемый пул
+     */
+    public static ConnectionPool getShared(String driverName, String url, String login, String password){
+        String key = driverName+"|"+url+"|"+login+"|"+password;
+        ConnectionPool pool = SHARED_POOLS.get(key);
+        while(pool == null || pool.closed){
+            ConnectionPool created = new ConnectionPool(driverName, url, login, password);
+            boolean installed = pool == null ? SHARED_POOLS.putIfAbsent(key, created) == null
+                    : SHARED_POOLS.replace(key, pool, created);
+            if(installed){
+                return created;
+            }
+            created.close();
+            pool = SHARED_POOLS.get(key);
+        }
+        return pool;
+    }
+
+    /**
+     * Выдаёт соединение из пула, при необходимости открывая новое.
+     * Соединение должно быть возвращено в пул вызовом close().
+     * @return соединение
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException соединение не удалось установить или истёк таймаут ожидания
+     */
+    public Connection getConnection() throws ClassNotFoundException, SQLException {
+        if(closed){
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if(!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)){
+                throw new SQLException("Timed out waiting for a connection to "+url);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection pooled;
+            while((pooled = idle.pollFirst()) != null){
+                if(!validateOnBorrow || isValid(pooled)){
+                    return pooled.borrow();
+                }
+                pooled.closePhysical();
+            }
+            return openPhysical().borrow();
+        } catch (SQLException e){
+            permits.release();
+            throw e;
+        } catch (ClassNotFoundException e){
+            permits.release();
+            throw e;
+        } catch (RuntimeException e){
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Закрывает все свободные соединения и запрещает выдачу новых.
+     * Выданные соединения закрываются при возврате.
+     */
+    public void close(){
+        closed = true;
+        PooledConnection pooled;
+        while((pooled = idle.pollFirst()) != null){
+            pooled.closePhysical();
+        }
+    }
+
+    /**
+     * @return URL базы данных
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return диалект СУБД
+     */
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Задаёт параметр драйвера для вновь открываемых соединений
+     * @param name имя параметра
+     * @param value значение параметра
+     */
+    public void setProperty(String name, String value){
+        properties.setProperty(name, value);
+    }
+
+    /**
+     * @param name имя параметра
+     * @return значение параметра драйвера; null, если параметр не задан
+     */
+    public String getProperty(String name){
+        return properties.getProperty(name);
+    }
+
+    /**
+     * @return число свободных соединений
+     */
+    public int getIdleCount(){
+        return idle.size();
+    }
+
+    /**
+     * @return число выданных соединений
+     */
+    public int getActiveCount(){
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        if(minSize < 0 || minSize > maxSize){
+            throw new IllegalArgumentException("Illegal minimal pool size: "+minSize);
+        }
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Изменяет максимальное число одновременно выданных соединений
+     * @param maxSize новый максимальный размер пула
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize < 1 || maxSize < minSize){
+            throw new IllegalArgumentException("Illegal maximal pool size: "+maxSize);
+        }
+        if(maxSize > this.maxSize){
+            permits.release(maxSize - this.maxSize);
+        } else if(maxSize < this.maxSize){
+            permits.acquireUninterruptibly(this.maxSize - maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    public long getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    /**
+     * @param acquireTimeout время ожидания свободного соединения, мс
+     */
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout время простоя, после которого соединение закрывается, мс
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isValidateOnBorrow() {
+        return validateOnBorrow;
+    }
+
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    /**
+     * @param validationTimeout таймаут проверки соединения, с
+     */
+    public void setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * @param statementCacheSize число подготовленных запросов, кэшируемых для каждого соединения; 0 отключает кэш
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * Открывает новое физическое соединение
+     * @return обёртка соединения
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException соединение не удалось установить
+     */
+    private PooledConnection openPhysical() throws ClassNotFoundException, SQLException {
+        if(!driverLoaded){
+            Class.forName(driverName);
+            driverLoaded = true;
+        }
+        return new PooledConnection(DriverManager.getConnection(url, properties));
+    }
+
+    /**
+     * Проверяет, что соединение всё ещё работоспособно
+     * @param pooled проверяемое соединение
+     * @return true, если соединение можно выдавать
+     */
+    private boolean isValid(PooledConnection pooled){
+        try {
+            return pooled.physical.isValid(validationTimeout);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Возвращает соединение в пул
+     * @param pooled возвращаемое соединение
+     */
+    private void release(PooledConnection pooled){
+        try {
+            if(closed || pooled.physical.isClosed()){
+                pooled.closePhysical();
+                return;
+            }
+            if(!pooled.physical.getAutoCommit()){
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.resetStatements();
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            pooled.closePhysical();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Закрывает соединения, простаивающие дольше idleTimeout, оставляя не менее minSize свободных,
+     * и открывает недостающие до minSize соединения
+     */
+    void evictIdle(){
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while(iterator.hasNext() && idle.size() > minSize){
+            PooledConnection pooled = iterator.next();
+            if(pooled.lastUsed < deadline && idle.removeFirstOccurrence(pooled)){
+                pooled.closePhysical();
+            }
+        }
+        try {
+            while(!closed && idle.size() + getActiveCount() < minSize){
+                idle.offerLast(openPhysical());
+            }
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Ставит пул в очередь на периодическое вытеснение простаивающих соединений
+     */
+    private void scheduleEviction(){
+        final WeakReference<ConnectionPool> reference = new WeakReference<ConnectionPool>(this);
+        EVICTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ConnectionPool pool = reference.get();
+                if(pool == null || pool.closed) return;
+                pool.evictIdle();
+                pool.scheduleEviction();
+            }
+        }, Math.max(1000, idleTimeout / 2), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Физическое соединение, принадлежащее пулу
+     */
+    private class PooledConnection {
+        /**
+         * Соединение, открытое драйвером
+         */
+        final Connection physical;
+        /**
+         * Время последнего возврата в пул
+         */
+        volatile long lastUsed = System.currentTimeMillis();
+        /**
+         * Подготовленные запросы соединения в формате текст запроса->запрос, вытесняются по LRU
+         */
+        final Map<String, PreparedStatement> statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if(size() > statementCacheSize){
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Возвращает подготовленный запрос из кэша соединения, подготавливая его при первом обращении
+         * @param sql текст запроса
+         * @return подготовленный запрос
+         * @throws SQLException запрос не удалось подготовить
+         */
+        PreparedStatement prepareCached(String sql) throws SQLException {
+            PreparedStatement statement = statementCache.get(sql);
+            if(statement == null || statement.isClosed()){
+                statement = physical.prepareStatement(sql);
+                statementCache.put(sql, statement);
+            }
+            return statement;
+        }
+
+        /**
+         * Сбрасывает состояние всех запросов кэша, в том числе не закрытых пользователем.
+         * Запрос, который не удалось сбросить, закрывается и удаляется из кэша
+         */
+        void resetStatements(){
+            Iterator<PreparedStatement> iterator = statementCache.values().iterator();
+            while(iterator.hasNext()){
+                PreparedStatement statement = iterator.next();
+                try {
+                    reset(statement);
+                } catch (SQLException e) {
+                    closeQuietly(statement);
+                    iterator.remove();
+                }
+            }
+        }
+
+        /**
+         * Выдаёт пользователю обёртку соединения, возвращающую его в пул при закрытии
+         * @return обёртка соединения
+         */
+        Connection borrow(){
+            return new Handle(this);
+        }
+
+        /**
+         * Закрывает физическое соединение, игнорируя ошибки
+         */
+        void closePhysical(){
+            for(PreparedStatement statement: statementCache.values()){
+                closeQuietly(statement);
+            }
+            statementCache.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Выданное пользователю соединение.
+     * Метод close() закрывает созданные через обёртку запросы и возвращает соединение в пул,
+     * после чего обёртка становится недействительной.
+     */
+    private class Handle extends DelegatingConnection {
+        /**
+         * Соединение пула; null после закрытия обёртки
+         */
+        private volatile PooledConnection pooled;
+        /**
+         * Запросы, созданные через обёртку
+         */
+        private final List<Statement> statements = new ArrayList<Statement>();
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        Connection delegate() throws SQLException {
+            PooledConnection current = pooled;
+            if(current == null){
+                throw new SQLException("Connection is closed");
+            }
+            return current.physical;
+        }
+
+        @Override
+        <S extends Statement> S created(S statement) {
+            synchronized (statements){
+                statements.add(statement);
+            }
+            return statement;
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            PooledConnection current = pooled;
+            if(current == null || statementCacheSize == 0){
+                return super.prepareStatement(sql);
+            }
+            return new CachedStatement(current.prepareCached(sql), this);
+        }
+
+        @Override
+        public synchronized void close() {
+            PooledConnection released = pooled;
+            if(released == null) return;
+            pooled = null;
+            synchronized (statements){
+                for(Statement statement: statements){
+                    closeQuietly(statement);
+                }
+                statements.clear();
+            }
+            release(released);
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            PooledConnection current = pooled;
+            return current == null || current.physical.isClosed();
+        }
+
+        @Override
+        public String toString() {
+            return "Pooled connection to "+url;
+        }
+    }
+
+    /**
+     * Подготовленный запрос из кэша соединения.
+     * Метод close() не закрывает запрос, а сбрасывает его состояние, чтобы запрос можно было использовать повторно.
+     */
+    private static class CachedStatement extends DelegatingPreparedStatement {
+        /**
+         * Запрос из кэша соединения
+         */
+        private final PreparedStatement statement;
+        /**
+         * Обёртка соединения, через которую получен запрос
+         */
+        private final Connection connection;
+        /**
+         * Закрыта ли обёртка запроса
+         */
+        private boolean closed = false;
+
+        CachedStatement(PreparedStatement statement, Connection connection) {
+            this.statement = statement;
+            this.connection = connection;
+        }
+
+        @Override
+        PreparedStatement delegate() throws SQLException {
+            if(closed){
+                throw new SQLException("Statement is closed");
+            }
+            return statement;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if(!closed){
+                closed = true;
+                reset(statement);
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed || statement.isClosed();
+        }
+
+        @Override
+        public Connection getConnection() {
+            return connection;
+        }
+
+        @Override
+        public String toString() {
+            return statement.toString();
+        }
+    }
+
+    /**
+     * Возвращает запрос из кэша в исходное состояние: очищает пакет и параметры
+     * и снимает ограничения времени выполнения, размера выборки и числа строк
+     * @param statement запрос из кэша соединения
+     * @throws SQLException запрос закрыт или драйвер не смог изменить его параметры
+     */
+    private static void reset(PreparedStatement statement) throws SQLException {
+        statement.clearBatch();
+        statement.clearParameters();
+        statement.setQueryTimeout(0);
+        statement.setFetchSize(0);
+        statement.setMaxRows(0);
+    }
+
+    /**
+     * Закрывает запрос, игнорируя ошибки
+     * @param statement закрываемый запрос
+     */
+    private static void closeQuietly(Statement statement){
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
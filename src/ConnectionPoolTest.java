@@ -0,0 +1,86 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("pool");
+        Connection connection = pool.getConnection();
+        Statement statement = connection.createStatement();
+        statement.executeUpdate("CREATE TABLE pooled (id INT PRIMARY KEY)");
+        statement.close();
+        connection.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    /**
+     * Пакет, оставленный в незакрытом запросе из кэша, не выполняется следующим пользователем соединения
+     */
+    @Test
+    public void testAbandonedBatchIsCleared() throws Exception {
+        Connection connection = pool.getConnection();
+        PreparedStatement statement = connection.prepareStatement("INSERT INTO pooled (id) VALUES (?)");
+        statement.setInt(1, 1);
+        statement.addBatch();
+        connection.close();
+
+        connection = pool.getConnection();
+        statement = connection.prepareStatement("INSERT INTO pooled (id) VALUES (?)");
+        Assert.assertTrue(statement.executeBatch().length == 0);
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testStatementSettingsAreReset() throws Exception {
+        Connection connection = pool.getConnection();
+        PreparedStatement statement = connection.prepareStatement("SELECT id FROM pooled");
+        statement.setMaxRows(1);
+        statement.setFetchSize(1);
+        statement.setQueryTimeout(3);
+        statement.close();
+        statement = connection.prepareStatement("SELECT id FROM pooled");
+        Assert.assertTrue(statement.getMaxRows() == 0);
+        Assert.assertTrue(statement.getQueryTimeout() == 0);
+        statement.close();
+        connection.close();
+    }
+
+    @Test
+    public void testClosedHandleIsInvalid() throws Exception {
+        Connection connection = pool.getConnection();
+        Statement created = connection.createStatement();
+        PreparedStatement cached = connection.prepareStatement("SELECT id FROM pooled");
+        Assert.assertTrue(cached.getConnection() == connection);
+        connection.close();
+        connection.close();
+        Assert.assertTrue(connection.isClosed() && created.isClosed());
+        Assert.assertTrue(pool.getActiveCount() == 0);
+        try {
+            connection.createStatement();
+            Assert.fail("Closed handle should reject calls");
+        } catch (SQLException e) {
+            // обёртка закрыта
+        }
+        try {
+            cached.close();
+            cached.executeQuery();
+            Assert.fail("Closed statement should reject calls");
+        } catch (SQLException e) {
+            // запрос закрыт
+        }
+    }
+}
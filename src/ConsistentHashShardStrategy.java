@@ -0,0 +1,73 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Распределение записей по кольцу согласованного хэширования.
+ * Каждый шард представлен на кольце несколькими виртуальными узлами; запись принадлежит шарду первого узла,
+ * следующего за хэшем её ключа. При добавлении шарда в него перемещается примерно 1/N записей,
+ * а остальные остаются на своих шардах.
+ */
+public class ConsistentHashShardStrategy implements ShardStrategy {
+    /**
+     * Число виртуальных узлов на шард по умолчанию
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    /**
+     * Число шардов
+     */
+    private final int shards;
+    /**
+     * Кольцо в формате хэш узла->номер шарда
+     */
+    private final TreeMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+
+    /**
+     * @param shards число шардов
+     */
+    public ConsistentHashShardStrategy(int shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param shards число шардов
+     * @param virtualNodes число виртуальных узлов на шард; чем больше, тем равномернее распределение
+     */
+    public ConsistentHashShardStrategy(int shards, int virtualNodes) {
+        if(shards < 1 || virtualNodes < 1){
+            throw new IllegalArgumentException("Illegal ring settings: shards="+shards+", virtualNodes="+virtualNodes);
+        }
+        this.shards = shards;
+        for(int shard = 0; shard < shards; shard++){
+            for(int node = 0; node < virtualNodes; node++){
+                ring.put(mix(new EntityKey("shard-"+shard+"#"+node).stableHash()), shard);
+            }
+        }
+    }
+
+    @Override
+    public int getShardCount() {
+        return shards;
+    }
+
+    @Override
+    public int shardFor(long keyHash) {
+        Map.Entry<Long, Integer> node = ring.ceilingEntry(mix(keyHash));
+        if(node == null) node = ring.firstEntry();
+        return node.getValue();
+    }
+
+    /**
+     * Перемешивает биты хэша (финализатор MurmurHash3), чтобы близкие хэши узлов равномерно распределялись по кольцу
+     * @param hash хэш
+     * @return перемешанный хэш
+     */
+    private static long mix(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,336 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Условия выборки объектов: сравнения значений полей, упорядочение, ограничение числа строк и набор выбираемых полей.
+ * Создаётся методом DaoRealisation.criteria(), поэтому имена полей проверяются по классу DAO сразу при добавлении условия.
+ * Условия объединяются через AND и передаются в запрос как параметры. Пример:
+ * <pre>
+ *     List&lt;Object[]&gt; rows = dao.criteria().eq("city", "Moscow").between("status", 1, 3)
+ *             .orderBy("id").limit(100).select("id", "email").listColumns();
+ * </pre>
+ * @param <T> Отображаемый класс.
+ */
+public class Criteria<T> {
+    /**
+     * DAO, выполняющий запрос
+     */
+    private final DaoRealisation<T> dao;
+    /**
+     * Условие WHERE без ключевого слова
+     */
+    private final StringBuilder condition = new StringBuilder();
+    /**
+     * Преобразователи полей, значения которых передаются в параметры условия
+     */
+    private final List<ColumnCodec> parameterCodecs = new ArrayList<ColumnCodec>();
+    /**
+     * Значения параметров условия
+     */
+    private final List<Object> parameters = new ArrayList<Object>();
+    /**
+     * Список ORDER BY без ключевого слова
+     */
+    private final StringBuilder order = new StringBuilder();
+    /**
+     * Максимальное число строк; 0 - без ограничения
+     */
+    private int limit = 0;
+    /**
+     * Выбираемые поля; null - все поля
+     */
+    private ColumnCodec[] projection;
+
+    Criteria(DaoRealisation<T> dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Поле равно значению; null выбирает записи с пустым значением
+     * @param field имя поля класса
+     * @param value значение поля, для примитивных типов - в обёртке
+     * @return эти же условия
+     */
+    public Criteria<T> eq(String field, Object value){
+        if(value == null){
+            return isNull(field);
+        }
+        return compare(field, "=", value);
+    }
+
+    /**
+     * Поле не равно значению
+     * @param field имя поля класса
+     * @param value значение поля
+     * @return эти же условия
+     */
+    public Criteria<T> ne(String field, Object value){
+        return compare(field, "<>", value);
+    }
+
+    /**
+     * Поле меньше значения
+     * @param field имя поля класса
+     * @param value значение поля
+     * @return эти же условия
+     */
+    public Criteria<T> lt(String field, Object value){
+        return compare(field, "<", value);
+    }
+
+    /**
+     * Поле меньше или равно значению
+     * @param field имя поля класса
+     * @param value значение поля
+     * @return эти же условия
+     */
+    public Criteria<T> le(String field, Object value){
+        return compare(field, "<=", value);
+    }
+
+    /**
+     * Поле больше значения
+     * @param field имя поля класса
+     * @param value значение поля
+     * @return эти же условия
+     */
+    public Criteria<T> gt(String field, Object value){
+        return compare(field, ">", value);
+    }
+
+    /**
+     * Поле больше или равно значению
+     * @param field имя поля класса
+     * @param value значение поля
+     * @return эти же условия
+     */
+    public Criteria<T> ge(String field, Object value){
+        return compare(field, ">=", value);
+    }
+
+    /**
+     * Поле в диапазоне [from, to] включительно
+     * @param field имя поля класса
+     * @param from нижняя граница
+     * @param to верхняя граница
+     * @return эти же условия
+     */
+    public Criteria<T> between(String field, Object from, Object to){
+        ColumnCodec codec = codec(field);
+        and().append(codec.column).append(" BETWEEN ? AND ?");
+        addParameter(codec, from);
+        addParameter(codec, to);
+        return this;
+    }
+
+    /**
+     * Поле равно одному из значений. Пустой набор значений не выбирает ни одной записи
+     * @param field имя поля класса
+     * @param values значения поля
+     * @return эти же условия
+     */
+    public Criteria<T> in(String field, Collection<?> values){
+        ColumnCodec codec = codec(field);
+        if(values.isEmpty()){
+            and().append("1=0");
+            return this;
+        }
+        and().append(codec.column).append(" IN (");
+        boolean first = true;
+        for(Object value: values){
+            if(!first) condition.append(',');
+            condition.append('?');
+            addParameter(codec, value);
+            first = false;
+        }
+        condition.append(')');
+        return this;
+    }
+
+    /**
+     * Значение поля пустое
+     * @param field имя поля класса
+     * @return эти же условия
+     */
+    public Criteria<T> isNull(String field){
+        and().append(codec(field).column).append(" IS NULL");
+        return this;
+    }
+
+    /**
+     * Упорядочение по возрастанию значения поля; повторные вызовы добавляют поля в порядок сортировки
+     * @param field имя поля класса
+     * @return эти же условия
+     */
+    public Criteria<T> orderBy(String field){
+        return order(field, " ASC");
+    }
+
+    /**
+     * Упорядочение по убыванию значения поля
+     * @param field имя поля класса
+     * @return эти же условия
+     */
+    public Criteria<T> orderByDescending(String field){
+        return order(field, " DESC");
+    }
+
+    /**
+     * Ограничивает число выбираемых строк
+     * @param limit максимальное число строк
+     * @return эти же условия
+     */
+    public Criteria<T> limit(int limit){
+        if(limit < 1){
+            throw new IllegalArgumentException("Limit should be positive");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Задаёт выбираемые поля. Из БД читаются только их столбцы;
+     * остальные поля объектов, возвращаемых list(), сохраняют значения, заданные конструктором класса
+     * @param fields имена полей класса
+     * @return эти же условия
+     */
+    public Criteria<T> select(String... fields){
+        if(fields.length == 0){
+            throw new IllegalArgumentException("No fields to select");
+        }
+        ColumnCodec[] selected = new ColumnCodec[fields.length];
+        for(int i = 0; i < fields.length; i++){
+            selected[i] = codec(fields[i]);
+        }
+        projection = selected;
+        return this;
+    }
+
+    /**
+     * Выполняет запрос
+     * @return объекты, у которых заполнены выбранные поля
+     */
+    public List<T> list(){
+        return dao.select(this);
+    }
+
+    /**
+     * Выполняет запрос, не создавая объекты
+     * @return строки результата; значения в строке следуют в порядке выбранных полей, примитивные типы - в обёртках
+     */
+    public List<Object[]> listColumns(){
+        return dao.selectColumns(this);
+    }
+
+    /**
+     * @return выбираемые поля
+     */
+    ColumnCodec[] getProjection(){
+        return projection == null ? dao.codecs : projection;
+    }
+
+    /**
+     * @return преобразователи полей в порядке параметров запроса
+     */
+    ColumnCodec[] getParameterCodecs(){
+        return parameterCodecs.toArray(new ColumnCodec[parameterCodecs.size()]);
+    }
+
+    /**
+     * @return значения параметров запроса, кроме ограничения числа строк
+     */
+    Object[] getParameters(){
+        return parameters.toArray();
+    }
+
+    /**
+     * @return максимальное число строк; 0 - без ограничения
+     */
+    int getLimit(){
+        return limit;
+    }
+
+    /**
+     * Строит текст запроса. Если задано ограничение числа строк, оно передаётся последним параметром
+     * @return текст запроса
+     */
+    String toSql(){
+        StringBuilder query = new StringBuilder("SELECT ");
+        ColumnCodec[] selected = getProjection();
+        for(int i = 0; i < selected.length; i++){
+            if(i > 0) query.append(',');
+            query.append(selected[i].column);
+        }
+        query.append(" FROM ").append(dao.tableName);
+        if(condition.length() > 0) query.append(" WHERE ").append(condition);
+        if(order.length() > 0) query.append(" ORDER BY ").append(order);
+        if(limit > 0) query.append(" LIMIT ?");
+        return query.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toSql();
+    }
+
+    /**
+     * Добавляет сравнение поля со значением
+     * @param field имя поля класса
+     * @param operator оператор сравнения
+     * @param value значение поля
+     * @return эти же условия
+     */
+    private Criteria<T> compare(String field, String operator, Object value){
+        if(value == null){
+            throw new IllegalArgumentException("Value of "+field+" should not be null");
+        }
+        ColumnCodec codec = codec(field);
+        and().append(codec.column).append(operator).append('?');
+        addParameter(codec, value);
+        return this;
+    }
+
+    /**
+     * Добавляет поле в порядок сортировки
+     * @param field имя поля класса
+     * @param direction направление сортировки
+     * @return эти же условия
+     */
+    private Criteria<T> order(String field, String direction){
+        if(order.length() > 0) order.append(',');
+        order.append(codec(field).column).append(direction);
+        return this;
+    }
+
+    /**
+     * @return условие WHERE, к которому добавлен AND, если оно не пустое
+     */
+    private StringBuilder and(){
+        if(condition.length() > 0) condition.append(" AND ");
+        return condition;
+    }
+
+    /**
+     * Добавляет параметр условия
+     * @param codec преобразователь поля
+     * @param value значение параметра
+     */
+    private void addParameter(ColumnCodec codec, Object value){
+        parameterCodecs.add(codec);
+        parameters.add(value);
+    }
+
+    /**
+     * @param field имя поля класса
+     * @return преобразователь поля
+     * @throws IllegalArgumentException в классе нет такого поля
+     */
+    private ColumnCodec codec(String field){
+        ColumnCodec codec = dao.metadata.codecsByField.get(field);
+        if(codec == null){
+            throw new IllegalArgumentException("Unknown field "+field+" of "+dao.tableClass.getName());
+        }
+        return codec;
+    }
+}
@@ -1,45 +1,32 @@
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
 public class DaoCompositeKeyTest {
+    ConnectionPool pool;
     DaoRealisation<CompositeKeyClass> testSubject;
 
-    public void DropTestTable() throws Exception{
-        String driverName = "com.mysql.jdbc.Driver";
-        Connection connection;
-        Class.forName(driverName);
-        String serverName = "localhost";
-        String schemeName = "test";
-        String url = "jdbc:mysql://" + serverName + "/" + schemeName;
-        String login = "user";
-        String password = "password";
-        connection = DriverManager.getConnection(url, login, password);
-        Statement statement = connection.createStatement();
-        String query = "DROP TABLE composite";
-        try {
-            statement.execute(query);
-        }catch(Exception e){
-            System.out.println("Table not found. That's OK actually");
-        }
-        connection.close();
-    }
     @Before
     public void setUp() throws Exception {
-        DropTestTable();
-        testSubject = new DaoRealisation<CompositeKeyClass>("localhost","test","com.mysql.jdbc.Driver","mysql://","user","password",CompositeKeyClass.class);
+        pool = H2TestSupport.pool("composite");
+        testSubject = new DaoRealisation<CompositeKeyClass>(pool, CompositeKeyClass.class);
 
     }
 
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
     @Test
     public void testHasAccessors() throws Exception {
         Class testClass = SampleClass.class;
@@ -91,5 +78,49 @@ public class DaoCompositeKeyTest {
                 && result.GetAge()==18);
     }
 
+    @Test
+    public void testDeleteByKeys() throws Exception {
+        testSubject.insert(new CompositeKeyClass("John",18,true,1.84));
+        testSubject.insert(new CompositeKeyClass("John",27,true,1.89));
+        testSubject.insert(new CompositeKeyClass("Jane",18,false,1.65));
+        List<CompositeKeyClass> keys = new ArrayList<CompositeKeyClass>();
+        keys.add(new CompositeKeyClass("John",18,true,0));
+        keys.add(new CompositeKeyClass("Jane",18,true,0));
+        keys.add(new CompositeKeyClass("Jane",27,true,0));
+        int deleted = testSubject.deleteByKeys(keys);
+        Assert.assertTrue("Expected 2 deleted rows, got "+deleted,deleted == 2);
+        List<CompositeKeyClass> result = testSubject.selectAll();
+        Assert.assertTrue(result.size() == 1 && result.get(0).GetAge() == 27);
+    }
+
+    @Test
+    public void testSelectByKeys() throws Exception {
+        testSubject.insert(new CompositeKeyClass("John",18,true,1.84));
+        testSubject.insert(new CompositeKeyClass("John",27,true,1.89));
+        testSubject.insert(new CompositeKeyClass("Jane",18,false,1.65));
+        List<CompositeKeyClass> keys = new ArrayList<CompositeKeyClass>();
+        keys.add(new CompositeKeyClass("John",27,true,0));
+        keys.add(new CompositeKeyClass("Jane",18,true,0));
+        keys.add(new CompositeKeyClass("Jane",27,true,0));
+        Map<EntityKey,CompositeKeyClass> result = testSubject.selectByKeys(keys);
+        Assert.assertTrue("Expected 2 found objects, got "+result.size(),result.size() == 2);
+        Assert.assertTrue(result.get(new EntityKey("John",27)).GetHeight() == 1.89);
+        Assert.assertTrue(result.get(new EntityKey("Jane",18)).GetHeight() == 1.65);
+        Assert.assertTrue(!result.containsKey(new EntityKey("Jane",27)));
+    }
+
+    @Test
+    public void testSelectPage() throws Exception {
+        testSubject.insert(new CompositeKeyClass("John",27,true,1.89));
+        testSubject.insert(new CompositeKeyClass("Jane",18,false,1.65));
+        testSubject.insert(new CompositeKeyClass("John",18,true,1.84));
+        Page<CompositeKeyClass> page = testSubject.selectPage(null,2);
+        Assert.assertTrue(page.getItems().size() == 2 && page.hasNext());
+        Assert.assertTrue(page.getItems().get(0).GetName().equals("Jane"));
+        Assert.assertTrue(page.getItems().get(1).GetName().equals("John") && page.getItems().get(1).GetAge() == 18);
+        page = testSubject.selectPage(page.getNextKey(),2);
+        Assert.assertTrue(page.getItems().size() == 1 && !page.hasNext());
+        Assert.assertTrue(page.getItems().get(0).GetAge() == 27);
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DaoIndexedTest {
+    ConnectionPool pool;
+    DaoRealisation<IndexedClass> testSubject;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("indexed");
+        testSubject = new DaoRealisation<IndexedClass>(pool, IndexedClass.class);
+        testSubject.insert(new IndexedClass(1,"john@mail.com","Moscow",1));
+        testSubject.insert(new IndexedClass(2,"petr@mail.com","Moscow",2));
+        testSubject.insert(new IndexedClass(3,"ivan@mail.com","Kazan",1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void testSelectBy() throws Exception {
+        Assert.assertTrue(testSubject.selectBy("city","Moscow").size() == 2);
+        Assert.assertTrue(testSubject.selectBy("city","Omsk").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectByRequiresLeadingColumn() throws Exception {
+        testSubject.selectBy("status",1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectByAllRequiresLeadingColumn() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("status",1);
+        testSubject.selectByAll(values);
+    }
+
+    @Test
+    public void testSelectByAll() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("city","Moscow");
+        values.put("status",1);
+        Assert.assertTrue(testSubject.selectByAll(values).size() == 1);
+        Assert.assertTrue(testSubject.selectByAll(values).get(0).GetId() == 1);
+    }
+
+    @Test
+    public void testSelectOneBy() throws Exception {
+        Assert.assertTrue(testSubject.selectOneBy("email","petr@mail.com").GetId() == 2);
+        Assert.assertTrue(testSubject.selectOneBy("email","nobody@mail.com") == null);
+    }
+
+    @Test
+    public void testUniqueIndexCreated() throws Exception {
+        testSubject.insert(new IndexedClass(4,"john@mail.com","Omsk",1));
+        Assert.assertTrue("Unique index should reject duplicate email", testSubject.selectAll().size() == 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectOneByRequiresUniqueIndex() throws Exception {
+        testSubject.selectOneBy("city","Moscow");
+    }
+
+    @Test
+    public void testCriteria() throws Exception {
+        List<IndexedClass> result = testSubject.criteria().eq("city","Moscow").ge("status",1)
+                .orderByDescending("id").limit(1).list();
+        Assert.assertTrue(result.size() == 1 && result.get(0).GetId() == 2);
+        Assert.assertTrue(testSubject.criteria().in("id", Arrays.asList(1,3)).list().size() == 2);
+        Assert.assertTrue(testSubject.criteria().between("status",2,5).list().size() == 1);
+        Assert.assertTrue(testSubject.criteria().in("id", new ArrayList<Integer>()).list().isEmpty());
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        List<IndexedClass> partial = testSubject.criteria().eq("id",1).select("id","email").list();
+        Assert.assertTrue(partial.get(0).GetEmail().equals("john@mail.com"));
+        Assert.assertTrue("Unselected field should keep its default value", partial.get(0).GetCity().equals(""));
+        List<Object[]> rows = testSubject.criteria().orderBy("id").select("id","status").listColumns();
+        Assert.assertTrue(rows.size() == 3);
+        Assert.assertTrue(rows.get(2)[0].equals(3) && rows.get(2)[1].equals(1));
+    }
+}
@@ -0,0 +1,332 @@
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Метрики DAO одной таблицы: задержки операций и их этапов, число прочитанных и записанных строк, ошибки по типам.
+ * Счётчики атомарные, запись измерения не блокирует потоки и не выделяет память.
+ * Метрики, полученные через forTable, регистрируются в JMX под именем
+ * DataAccessObject:type=DaoMetrics,table=...,url=... и разделяются всеми DAO этой таблицы в одной БД.
+ */
+public class DaoMetrics implements DaoMetricsMXBean {
+    /**
+     * Операции DAO
+     */
+    public enum Operation {
+        INSERT, INSERT_ALL, UPDATE, UPDATE_ALL, UPSERT, UPSERT_ALL, DELETE, DELETE_ALL,
+        SELECT_BY_KEY, SELECT_BY_KEYS, SELECT, SELECT_ALL, SELECT_PAGE, ITERATE_ALL, BULK_LOAD
+    }
+
+    /**
+     * Этапы операции DAO
+     */
+    public enum Phase {
+        /**
+         * Получение соединения из пула, включая проверку наличия таблицы
+         */
+        ACQUIRE,
+        /**
+         * Выполнение запроса в СУБД
+         */
+        EXECUTE,
+        /**
+         * Создание объектов по результату запроса
+         */
+        MAP
+    }
+
+    /**
+     * Метрики, зарегистрированные в JMX, в формате URL БД + имя таблицы->метрики
+     */
+    private static final ConcurrentMap<String, DaoMetrics> REGISTERED = new ConcurrentHashMap<String, DaoMetrics>();
+
+    /**
+     * Имя таблицы
+     */
+    private final String tableName;
+    /**
+     * URL базы данных
+     */
+    private final String url;
+    /**
+     * Задержки операций в порядке Operation
+     */
+    private final LatencyHistogram[] operations = new LatencyHistogram[Operation.values().length];
+    /**
+     * Задержки этапов в порядке Phase
+     */
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+    /**
+     * Число прочитанных строк
+     */
+    private final AtomicLong rowsRead = new AtomicLong();
+    /**
+     * Число записанных строк
+     */
+    private final AtomicLong rowsWritten = new AtomicLong();
+    /**
+     * Число ошибок в формате имя класса исключения->число
+     */
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+    /**
+     * Получатели измерений; массив заменяется целиком, чтобы обход не выделял память
+     */
+    private volatile MetricsListener[] listeners = new MetricsListener[0];
+    /**
+     * Имя в JMX; null, если метрики не зарегистрированы
+     */
+    private volatile ObjectName objectName;
+
+    /**
+     * Создаёт метрики, не регистрируя их в JMX
+     * @param url URL базы данных
+     * @param tableName имя таблицы
+     */
+    public DaoMetrics(String url, String tableName) {
+        this.url = url;
+        this.tableName = tableName;
+        for(int i = 0; i < operations.length; i++){
+            operations[i] = new LatencyHistogram();
+        }
+        for(int i = 0; i < phases.length; i++){
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Возвращает метрики таблицы, при первом обращении создаёт их и регистрирует в JMX
+     * @param pool пул соединений с БД таблицы
+     * @param tableName имя таблицы
+     * @return метрики, общие для всех DAO этой таблицы в этой БД
+     */
+    public static DaoMetrics forTable(ConnectionPool pool, String tableName){
+        String key = pool.getUrl()+" "+tableName;
+        DaoMetrics metrics = REGISTERED.get(key);
+        if(metrics == null){
+            DaoMetrics created = new DaoMetrics(pool.getUrl(), tableName);
+            metrics = REGISTERED.putIfAbsent(key, created);
+            if(metrics == null){
+                metrics = created;
+                metrics.register();
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Регистрирует метрики в JMX. Ошибки регистрации не мешают сбору метрик
+     */
+    private void register(){
+        try {
+            ObjectName name = new ObjectName("DataAccessObject:type=DaoMetrics,table="+ObjectName.quote(tableName)
+                    +",url="+ObjectName.quote(url));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+            objectName = name;
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Снимает метрики с регистрации в JMX; следующий вызов forTable для этой таблицы создаст новые метрики
+     */
+    public void unregister(){
+        REGISTERED.remove(url+" "+tableName, this);
+        ObjectName name = objectName;
+        if(name == null) return;
+        objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (InstanceNotFoundException e) {
+            // уже снят с регистрации
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return имя в JMX; null, если метрики не зарегистрированы
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Добавляет получателя измерений
+     * @param listener получатель
+     */
+    public synchronized void addListener(MetricsListener listener){
+        MetricsListener[] updated = Arrays.copyOf(listeners, listeners.length+1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Удаляет получателя измерений
+     * @param listener получатель
+     */
+    public synchronized void removeListener(MetricsListener listener){
+        for(int i = 0; i < listeners.length; i++){
+            if(listeners[i] == listener){
+                MetricsListener[] updated = new MetricsListener[listeners.length-1];
+                System.arraycopy(listeners, 0, updated, 0, i);
+                System.arraycopy(listeners, i+1, updated, i, updated.length-i);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Записывает длительность операции
+     * @param operation операция
+     * @param nanos длительность, нс
+     */
+    void operationCompleted(Operation operation, long nanos){
+        operations[operation.ordinal()].record(nanos);
+        for(MetricsListener listener: listeners){
+            listener.operationCompleted(tableName, operation, nanos);
+        }
+    }
+
+    /**
+     * Записывает длительность этапа операции
+     * @param phase этап
+     * @param nanos длительность, нс
+     */
+    void phaseCompleted(Phase phase, long nanos){
+        phases[phase.ordinal()].record(nanos);
+        for(MetricsListener listener: listeners){
+            listener.phaseCompleted(tableName, phase, nanos);
+        }
+    }
+
+    /**
+     * Увеличивает число прочитанных и записанных строк
+     * @param read число прочитанных строк
+     * @param written число записанных строк
+     */
+    void rowsProcessed(int read, int written){
+        if(read > 0) rowsRead.addAndGet(read);
+        if(written > 0) rowsWritten.addAndGet(written);
+        for(MetricsListener listener: listeners){
+            listener.rowsProcessed(tableName, read, written);
+        }
+    }
+
+    /**
+     * Увеличивает число ошибок типа исключения
+     * @param error ошибка
+     */
+    void errorOccurred(Exception error){
+        String type = error.getClass().getName();
+        AtomicLong counter = errors.get(type);
+        if(counter == null){
+            AtomicLong created = new AtomicLong();
+            counter = errors.putIfAbsent(type, created);
+            if(counter == null) counter = created;
+        }
+        counter.incrementAndGet();
+        for(MetricsListener listener: listeners){
+            listener.errorOccurred(tableName, error);
+        }
+    }
+
+    /**
+     * @param operation операция
+     * @return гистограмма задержек операции
+     */
+    public LatencyHistogram getHistogram(Operation operation){
+        return operations[operation.ordinal()];
+    }
+
+    /**
+     * @param phase этап
+     * @return гистограмма задержек этапа
+     */
+    public LatencyHistogram getHistogram(Phase phase){
+        return phases[phase.ordinal()];
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.get();
+    }
+
+    @Override
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(Map.Entry<String, AtomicLong> entry: errors.entrySet()){
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getOperations() {
+        Map<String, LatencyHistogram.Snapshot> result = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+        for(Operation operation: Operation.values()){
+            result.put(operation.name(), operations[operation.ordinal()].snapshot());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getPhases() {
+        Map<String, LatencyHistogram.Snapshot> result = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+        for(Phase phase: Phase.values()){
+            result.put(phase.name(), phases[phase.ordinal()].snapshot());
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for(LatencyHistogram histogram: operations){
+            histogram.reset();
+        }
+        for(LatencyHistogram histogram: phases){
+            histogram.reset();
+        }
+        rowsRead.set(0);
+        rowsWritten.set(0);
+        errors.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "DaoMetrics{table=" + tableName + ", rowsRead=" + rowsRead + ", rowsWritten=" + rowsWritten
+                + ", errors=" + getErrors() + "}";
+    }
+}
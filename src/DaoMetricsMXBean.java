@@ -0,0 +1,47 @@
+import java.util.Map;
+
+/**
+ * Интерфейс управления метриками DAO одной таблицы через JMX
+ */
+public interface DaoMetricsMXBean {
+
+    /**
+     * @return имя таблицы
+     */
+    public String getTableName();
+
+    /**
+     * @return URL базы данных
+     */
+    public String getUrl();
+
+    /**
+     * @return число прочитанных строк
+     */
+    public long getRowsRead();
+
+    /**
+     * @return число записанных строк
+     */
+    public long getRowsWritten();
+
+    /**
+     * @return число ошибок в формате имя класса исключения->число
+     */
+    public Map<String, Long> getErrors();
+
+    /**
+     * @return задержки операций в формате имя операции->сводка
+     */
+    public Map<String, LatencyHistogram.Snapshot> getOperations();
+
+    /**
+     * @return задержки этапов операций в формате имя этапа->сводка
+     */
+    public Map<String, LatencyHistogram.Snapshot> getPhases();
+
+    /**
+     * Сбрасывает все счётчики и гистограммы
+     */
+    public void reset();
+}
@@ -0,0 +1,106 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DaoMetricsTest {
+    ConnectionPool pool;
+    DaoRealisation<SampleClass> testSubject;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("metrics");
+        testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DaoMetrics metrics = testSubject.getMetrics();
+        if(metrics != null) metrics.unregister();
+        pool.close();
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        Assert.assertTrue(testSubject.getMetrics() == null);
+        testSubject.insert(new SampleClass("Name","LastName",1));
+        Assert.assertTrue(testSubject.selectAll().size() == 1);
+    }
+
+    @Test
+    public void testOperationsAndPhases() throws Exception {
+        DaoMetrics metrics = testSubject.enableMetrics();
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 10; i++){
+            objects.add(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        testSubject.insertAll(objects);
+        testSubject.update(new SampleClass("Changed","Changed",3));
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",3)) != null);
+        Assert.assertTrue(testSubject.selectAll().size() == 10);
+        Assert.assertTrue(metrics.getHistogram(DaoMetrics.Operation.INSERT_ALL).getCount() == 1);
+        Assert.assertTrue(metrics.getHistogram(DaoMetrics.Operation.UPDATE).getCount() == 1);
+        Assert.assertTrue(metrics.getHistogram(DaoMetrics.Operation.SELECT_BY_KEY).getCount() == 1);
+        Assert.assertTrue(metrics.getHistogram(DaoMetrics.Operation.SELECT_ALL).getCount() == 1);
+        Assert.assertTrue(metrics.getHistogram(DaoMetrics.Phase.ACQUIRE).getCount() == 4);
+        Assert.assertTrue(metrics.getHistogram(DaoMetrics.Phase.EXECUTE).getCount() == 4);
+        Assert.assertTrue(metrics.getHistogram(DaoMetrics.Phase.MAP).getCount() == 2);
+        Assert.assertTrue(metrics.getRowsWritten() == 11);
+        Assert.assertTrue(metrics.getRowsRead() == 11);
+        LatencyHistogram histogram = metrics.getHistogram(DaoMetrics.Operation.SELECT_ALL);
+        Assert.assertTrue(histogram.percentile(0.99) > 0 && histogram.percentile(0.99) <= histogram.snapshot().getMaxMicros() * 1000);
+    }
+
+    @Test
+    public void testErrorsAndListener() throws Exception {
+        DaoMetrics metrics = testSubject.enableMetrics();
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger operations = new AtomicInteger();
+        metrics.addListener(new MetricsListener() {
+            @Override
+            public void operationCompleted(String tableName, DaoMetrics.Operation operation, long nanos) {
+                operations.incrementAndGet();
+            }
+
+            @Override
+            public void phaseCompleted(String tableName, DaoMetrics.Phase phase, long nanos) {
+            }
+
+            @Override
+            public void rowsProcessed(String tableName, int read, int written) {
+            }
+
+            @Override
+            public void errorOccurred(String tableName, Exception error) {
+                errors.incrementAndGet();
+            }
+        });
+        testSubject.insert(new SampleClass("Name","LastName",1));
+        testSubject.insert(new SampleClass("Name","LastName",1));
+        Assert.assertTrue(operations.get() == 2);
+        Assert.assertTrue(errors.get() == 1);
+        Assert.assertTrue(metrics.getErrors().size() == 1);
+        metrics.reset();
+        Assert.assertTrue(metrics.getErrors().isEmpty() && metrics.getRowsWritten() == 0);
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        DaoMetrics metrics = testSubject.enableMetrics();
+        Assert.assertTrue(DaoMetrics.forTable(pool, testSubject.tableName) == metrics);
+        testSubject.insert(new SampleClass("Name","LastName",1));
+        ObjectName name = metrics.getObjectName();
+        Assert.assertTrue(name != null);
+        Object written = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RowsWritten");
+        Assert.assertTrue(Long.valueOf(1).equals(written));
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Operations") != null);
+        metrics.unregister();
+        Assert.assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -1,14 +1,17 @@
 import com.mysql.jdbc.exceptions.jdbc4.MySQLIntegrityConstraintViolationException;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.sql.*;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,6 +54,10 @@ public class DaoRealisation<T> implements ReflectionJdbcDao<T> {
      * Префикс для URL базы данных в формате jdbc: + префикс + имя сервера + / + имя бд
      */
             dbmcPrefix;
+    /**
+     * Пул соединений с БД, может разделяться несколькими DAO
+     */
+    ConnectionPool pool;
     /**
      * Класс, проецируемый в БД
      */
@@ -67,24 +74,94 @@ public class DaoRealisation<T> implements ReflectionJdbcDao<T> {
      * Список ключевых полей класса в формате имя->тип
      */
     Map<String,Class> keyFields;
+    /**
+     * Имена столбцов таблицы в формате имя поля->имя столбца
+     */
+    Map<String,String> columns;
+    /**
+     * Преобразователи неключевых полей в порядке fields
+     */
+    ColumnCodec[] fieldCodecs,
+    /**
+     * Преобразователи ключевых полей в порядке keyFields
+     */
+            keyCodecs,
+    /**
+     * Преобразователи всех полей: сначала неключевые, затем ключевые
+     */
+            codecs;
+    /**
+     * Конструктор класса без параметров типа ()Object
+     */
+    MethodHandle constructor;
+    /**
+     * Данные о классе из SchemaRegistry, общие для всех DAO этого класса
+     */
+    EntityMetadata<T> metadata;
+    /**
+     * Проверено ли наличие таблицы в БД
+     */
+    private volatile boolean tableVerified = false;
+    /**
+     * Снимки загруженных объектов для отслеживания изменений; null, если отслеживание выключено
+     */
+    private volatile SnapshotStore snapshots;
+    /**
+     * Метрики операций; null, если сбор метрик выключен
+     */
+    private volatile DaoMetrics metrics;
+    /**
+     * Журнал медленных запросов; null, если запросы не проверяются
+     */
+    private volatile SlowStatementLog slowLog;
     /**
      * Является ли ключ таблицы составным
      */
     boolean compositeKey = false;
     /**
-     *  Таблица соответствия примитивных классов и классов-обёрток
+     * Текст запроса вставки записи, строится один раз при создании DAO
      */
-    public final static Map<Class<?>, Class<?>> CLASS_MAP = new HashMap<Class<?>, Class<?>>();
-    static {
-        CLASS_MAP.put(boolean.class, Boolean.class);
-        CLASS_MAP.put(byte.class, Byte.class);
-        CLASS_MAP.put(short.class, Short.class);
-        CLASS_MAP.put(char.class, Character.class);
-        CLASS_MAP.put(int.class, Integer.class);
-        CLASS_MAP.put(long.class, Long.class);
-        CLASS_MAP.put(float.class, Float.class);
-        CLASS_MAP.put(double.class, Double.class);
-    }
+    String insertQuery,
+    /**
+     * Текст запроса обновления записи по ключу
+     */
+            updateQuery,
+    /**
+     * Текст запроса удаления записи по ключу
+     */
+            deleteQuery,
+    /**
+     * Текст запроса выборки записи по ключу
+     */
+            selectByKeyQuery,
+    /**
+     * Текст запроса выборки всех записей
+     */
+            selectAllQuery,
+    /**
+     * Текст запроса вставки или обновления записи, зависит от диалекта СУБД
+     */
+            upsertQuery,
+    /**
+     * Текст запроса выборки первой страницы по ключу
+     */
+            firstPageQuery,
+    /**
+     * Текст запроса выборки страницы, следующей за заданным ключом
+     */
+            nextPageQuery;
+    /**
+     * Число объектов в одном пакете пакетных операций
+     */
+    int batchSize = 1000;
+    /**
+     * Размер выборки для потокового чтения; по умолчанию определяется диалектом СУБД
+     */
+    int fetchSize;
+    /**
+     * Таймаут выполнения запроса, с; 0 - без ограничения
+     */
+    int queryTimeout = 0;
 
     /**
      * Создаёт, если необходимо, таблицу в базе данных и считывает из класса данные о полях
@@ -97,20 +174,7 @@ public class DaoRealisation<T> implements ReflectionJdbcDao<T> {
      * @param tableClass класс, проецируемый в БД
      */
     public DaoRealisation(String serverName, String schemeName, String driverName,String dbmcPrefix, String login, String password, Class<T> tableClass){
-
-       if(!tableClass.isAnnotationPresent(DbProjectable.class)){
-          System.err.println("Class has no DbProjectable annotation");
-           throw new IllegalArgumentException("Class has no DbProjectable annotation");
-       }
-        try {
-            tableClass.getConstructor();
-        } catch(NoSuchMethodException e){
-            throw new IllegalArgumentException("Class has no empty public constructor");
-        }
-
-        this.fields = new HashMap<String, Class>();
-
-        this.keyFields = new HashMap<String, Class>();
+        this(ConnectionPool.getShared(driverName, "jdbc:" + dbmcPrefix + serverName + "/" + schemeName, login, password), tableClass);
 
         this.serverName = serverName;
 
@@ -123,418 +187,1815 @@ public class DaoRealisation<T> implements ReflectionJdbcDao<T> {
         this.login = login;
 
         this.password = password;
+    }
 
-        this.tableClass = tableClass;
-        int keyFieldsNum = 0;
-        List<String> keyFieldsNames = new ArrayList<String>();
-        List<String> fieldNames = new ArrayList<String>();
-        Field[] fields = tableClass.getDeclaredFields();
-        for(Field field: fields){
-            if(Modifier.isStatic(field.getModifiers())){
-                continue;
-            }
-           if(field.isAnnotationPresent(KeyField.class)){
-               keyFieldsNum++;
-               keyFieldsNames.add(field.getName());
-               this.keyFields.put(field.getName(),field.getType());
-           }else{
-               fieldNames.add(field.getName());
-               this.fields.put(field.getName(),field.getType());
-           }
-           if(!hasAccessors(field)){
-               System.err.println("The field "+field.getName()+" does not have Set- and/or Get- accessors");
-               throw new IllegalArgumentException("The field "+field.getName()+" does not have Set- and/or Get- accessors");
-           }
-        }
-        if(keyFieldsNum>1) compositeKey = true;
-        if(keyFieldsNum == 0){
-            System.err.println("There are no fields marked as keys in the class");
-            throw new IllegalArgumentException("There are no fields marked as keys in the class");
-        }
-        //Создание таблицы
-        try{
-            Connection connection = getConnection();
-            Statement statement = connection.createStatement();
-            DbProjectable annotation = (DbProjectable)tableClass.getAnnotation(DbProjectable.class);
-            String tableName = annotation.tableName();
-            this.tableName = filterSymbols(tableName);
-            ResultSet set;
-            String query = "SHOW TABLES LIKE ?";
-            PreparedStatement prepStatement = connection.prepareStatement(query);
-            prepStatement.setString(1,tableName);
-            set = prepStatement.executeQuery();
-            if(set.next()) return;
-            query = "CREATE TABLE "+tableName+" (";
-            for(String fieldName: fieldNames){
-                Field field = tableClass.getDeclaredField(fieldName);
-                String type = getSqlType(field.getType());
-                query+= camelToUnderScore(field.getName())+" "+type;
-                if(CLASS_MAP.containsKey(field.getType())){
-                    query+=" NOT NULL ";
-                }
-                query+=",";
-            }
-            String key = "PRIMARY KEY( ";
-            for(String fieldName: keyFieldsNames){
-                Field field = tableClass.getDeclaredField(fieldName);
-                this.keyFields.put(fieldName,field.getType());
-                String type = getSqlType(field.getType());
-                query+= camelToUnderScore(field.getName())+" "+type+", ";
-                key+=field.getName()+",";
-            }
-            key=key.substring(0,key.length()-1)+")";
-            if(keyFieldsNum>1){
-               compositeKey = true;
-            }
-            query +=key+" )";
-            statement.executeUpdate(query);
-            connection.close();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+    /**
+     * Создаёт, если необходимо, таблицу в базе данных и считывает из класса данные о полях.
+     * Соединения берутся из переданного пула, который может использоваться и другими DAO.
+     * @param pool пул соединений с БД
+     * @param tableClass класс, проецируемый в БД
+     */
+    public DaoRealisation(ConnectionPool pool, Class<T> tableClass){
+        this.metadata = SchemaRegistry.metadata(tableClass);
 
-        }
-        catch(SQLException e){
-            e.printStackTrace();
-        } catch (NoSuchFieldException e) {
-            e.printStackTrace();
-        }
+        this.pool = pool;
+
+        this.fetchSize = pool.getDialect().getStreamingFetchSize();
+
+        this.tableClass = tableClass;
+        this.tableName = metadata.tableName;
+        this.fields = metadata.fields;
+        this.keyFields = metadata.keyFields;
+        this.columns = metadata.columns;
+        this.compositeKey = metadata.compositeKey;
+        this.fieldCodecs = metadata.fieldCodecs;
+        this.keyCodecs = metadata.keyCodecs;
+        this.codecs = metadata.codecs;
+        this.constructor = metadata.constructor;
+        this.insertQuery = metadata.insertQuery;
+        this.updateQuery = metadata.updateQuery;
+        this.deleteQuery = metadata.deleteQuery;
+        this.selectByKeyQuery = metadata.selectByKeyQuery;
+        this.selectAllQuery = metadata.selectAllQuery;
+        this.upsertQuery = metadata.upsertQuery(pool.getDialect());
+        this.firstPageQuery = metadata.firstPageQuery;
+        this.nextPageQuery = metadata.nextPageQuery;
     }
 
     /**
-     * Создаёт соединение с базой данных
+     * Берёт соединение с базой данных из пула.
+     * При первом вызове проверяет наличие таблицы и создаёт её, если необходимо (один раз на процесс, см. SchemaRegistry).
+     * Соединение возвращается в пул вызовом close().
+     * Если в текущем потоке выполняется транзакция, возвращается её соединение; close, commit и rollback на нём ничего не делают
      * @return объект соединения
      * @throws ClassNotFoundException  отсутствует драйвер
      * @throws SQLException соединение не удалось установить
      */
     private Connection getConnection() throws ClassNotFoundException, SQLException{
-        Connection connection;
-            Class.forName(driverName);
-            String url = "jdbc:"+dbmcPrefix + serverName + "/" + schemeName;
-            connection = DriverManager.getConnection(url, login, password);
-            return connection;
+        long start = startTime();
+        if(!tableVerified){
+            SchemaRegistry.ensureTable(pool, metadata);
+            tableVerified = true;
+        }
+        TransactionContext transaction = TransactionContext.current();
+        Connection connection = transaction != null ? transaction.getConnection(pool) : pool.getConnection();
+        finish(DaoMetrics.Phase.ACQUIRE, start);
+        return connection;
+    }
+
+    /**
+     * Выполняет действия в одной транзакции: все вызовы DAO в текущем потоке используют одно соединение на пул,
+     * изменения фиксируются один раз по завершении действий
+     * @param callback действия
+     * @param <R> тип результата
+     * @return результат действий
+     * @throws IllegalStateException транзакцию не удалось зафиксировать или она откачена из-за ошибки СУБД
+     */
+    public <R> R inTransaction(TransactionCallback<R> callback){
+        return new TransactionContext().execute(callback);
+    }
+
+    /**
+     * Сообщает об ошибке СУБД и помечает текущую транзакцию для отката
+     * @param e ошибка
+     */
+    private void failed(SQLException e){
+        rejected(e);
+        e.printStackTrace();
+    }
+
+    /**
+     * Учитывает ошибку СУБД в метриках и помечает текущую транзакцию для отката, не сообщая о ней.
+     * Используется вариантами операций, которые передают ошибку вызывающему
+     * @param e ошибка
+     * @return переданная ошибка
+     */
+    private SQLException rejected(SQLException e){
+        TransactionContext.markRollbackOnly();
+        DaoMetrics tracked = metrics;
+        if(tracked != null) tracked.errorOccurred(e);
+        return e;
+    }
+
+    /**
+     * Сообщает об ошибке и учитывает её в метриках
+     * @param e ошибка
+     */
+    private void error(Exception e){
+        DaoMetrics tracked = metrics;
+        if(tracked != null) tracked.errorOccurred(e);
+        e.printStackTrace();
+    }
+
+    /**
+     * Включает сбор метрик в общие для таблицы метрики, зарегистрированные в JMX (см. DaoMetrics.forTable)
+     * @return метрики таблицы
+     */
+    public DaoMetrics enableMetrics(){
+        DaoMetrics tableMetrics = DaoMetrics.forTable(pool, tableName);
+        metrics = tableMetrics;
+        return tableMetrics;
+    }
+
+    /**
+     * Задаёт метрики, в которые записываются измерения операций.
+     * Пока метрики не заданы, операции не измеряются и не выделяют для этого память
+     * @param metrics метрики; null выключает сбор метрик
+     */
+    public void setMetrics(DaoMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return метрики операций; null, если сбор метрик выключен
+     */
+    public DaoMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return время начала измерения, нс; 0, если сбор метрик и журнал медленных запросов выключены
+     */
+    private long startTime(){
+        return metrics == null && slowLog == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Записывает длительность операции, если сбор метрик включён
+     * @param operation операция
+     * @param start время начала, полученное из startTime
+     */
+    private void finish(DaoMetrics.Operation operation, long start){
+        DaoMetrics tracked = metrics;
+        if(tracked != null && start != 0) tracked.operationCompleted(operation, System.nanoTime()-start);
+    }
+
+    /**
+     * Записывает длительность этапа операции, если сбор метрик включён
+     * @param phase этап
+     * @param start время начала, полученное из startTime
+     */
+    private void finish(DaoMetrics.Phase phase, long start){
+        DaoMetrics tracked = metrics;
+        if(tracked != null && start != 0) tracked.phaseCompleted(phase, System.nanoTime()-start);
+    }
+
+    /**
+     * Учитывает в метриках прочитанные и записанные строки, если сбор метрик включён
+     * @param read число прочитанных строк
+     * @param written число записанных строк
+     */
+    private void rows(int read, int written){
+        DaoMetrics tracked = metrics;
+        if(tracked != null) tracked.rowsProcessed(read, written);
+    }
+
+    /**
+     * Выполняет запрос изменения и измеряет его
+     * @param statement подготовленный запрос с заданными параметрами
+     * @return число изменённых записей
+     * @throws SQLException ошибка выполнения запроса
+     */
+    private int executeUpdate(PreparedStatement statement) throws SQLException {
+        long start = startTime();
+        int updated = statement.executeUpdate();
+        finish(DaoMetrics.Phase.EXECUTE, start);
+        rows(0, updated);
+        return updated;
+    }
+
+    /**
+     * Выполняет пакет запросов, измеряет его и записывает в журнал, если он выполнялся дольше порога
+     * @param statement подготовленный запрос с накопленным пакетом
+     * @param sql текст запроса
+     * @param count число запросов в пакете
+     * @return результаты выполнения запросов пакета
+     * @throws SQLException ошибка выполнения пакета
+     */
+    private int[] executeBatch(PreparedStatement statement, String sql, int count) throws SQLException {
+        long start = startTime();
+        int[] counts = statement.executeBatch();
+        finish(DaoMetrics.Phase.EXECUTE, start);
+        if(metrics != null) rows(0, countUpdates(counts));
+        long elapsed = slowElapsed(start);
+        if(elapsed >= 0){
+            SlowStatementLog log = slowLog;
+            if(log != null){
+                log.capture(pool, new SlowStatement(tableName, sql, "[batch of "+count+"]", elapsed,
+                        countUpdates(counts), null), null);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Выполняет запрос выборки и измеряет его
+     * @param statement подготовленный запрос с заданными параметрами
+     * @return результат запроса
+     * @throws SQLException ошибка выполнения запроса
+     */
+    private ResultSet executeQuery(PreparedStatement statement) throws SQLException {
+        long start = startTime();
+        ResultSet set = statement.executeQuery();
+        finish(DaoMetrics.Phase.EXECUTE, start);
+        return set;
+    }
+
+    /**
+     * Задаёт журнал медленных запросов. Журнал может быть общим для нескольких DAO
+     * @param slowLog журнал; null выключает проверку запросов
+     */
+    public void setSlowStatementLog(SlowStatementLog slowLog) {
+        this.slowLog = slowLog;
+    }
+
+    /**
+     * @return журнал медленных запросов; null, если запросы не проверяются
+     */
+    public SlowStatementLog getSlowStatementLog() {
+        return slowLog;
+    }
+
+    /**
+     * Проверяет, нужно ли записать запрос в журнал медленных запросов
+     * @param start время начала выполнения запроса, полученное из startTime
+     * @return время выполнения запроса, нс; -1, если запрос не медленный или не попал в выборку журнала
+     */
+    private long slowElapsed(long start){
+        SlowStatementLog log = slowLog;
+        if(log == null || start == 0) return -1;
+        long elapsed = System.nanoTime()-start;
+        return log.shouldCapture(elapsed) ? elapsed : -1;
+    }
+
+    /**
+     * Записывает запрос в журнал медленных запросов
+     * @param sql текст запроса
+     * @param elapsed время выполнения, нс
+     * @param rows число прочитанных или изменённых строк
+     * @param values значения параметров запроса
+     */
+    private void logSlow(String sql, long elapsed, int rows, Object[] values){
+        SlowStatementLog log = slowLog;
+        if(log == null) return;
+        log.capture(pool, new SlowStatement(tableName, sql, SlowStatementLog.describe(values), elapsed, rows, null), values);
     }
 
     /**
-     * Устанавливает соответствие между классами Java и типами данных SQL
-     * @param fieldType входной класс Java
-     * @return имя соответствующего типа SQL
+     * Значения полей объекта в порядке параметров запроса
+     * @param object объект
+     * @param first преобразователи полей первых параметров
+     * @param second преобразователи полей следующих параметров; может быть null
+     * @return значения параметров
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
      */
-    private String getSqlType(Class<?> fieldType) {
-        if(fieldType == String.class){
-            return " VARCHAR(255) ";
+    private Object[] valuesOf(T object, ColumnCodec[] first, ColumnCodec[] second) throws InvocationTargetException {
+        Object[] values = new Object[first.length + (second == null ? 0 : second.length)];
+        for(int i = 0; i < first.length; i++){
+            values[i] = first[i].get(object);
+        }
+        for(int i = first.length; i < values.length; i++){
+            values[i] = second[i-first.length].get(object);
         }
-        if(fieldType.getName().equals("int") || fieldType == Integer.class){
-            return " INTEGER ";
+        return values;
+    }
+
+    /**
+     * Значения полей набора объектов в порядке параметров запроса
+     * @param objects объекты
+     * @param fieldCodecs преобразователи полей каждого объекта
+     * @return значения параметров
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    private Object[] valuesOf(Collection<T> objects, ColumnCodec[] fieldCodecs) throws InvocationTargetException {
+        Object[] values = new Object[objects.size()*fieldCodecs.length];
+        int index = 0;
+        for(T object: objects){
+            for(ColumnCodec codec: fieldCodecs){
+                values[index++] = codec.get(object);
+            }
         }
-        if(fieldType.getName().equals("byte") || fieldType == Byte.class){
-            return " TINYINT ";
+        return values;
+    }
+
+    /**
+     * @param values значения параметров
+     * @param limit значение последнего параметра
+     * @return значения параметров с добавленным последним параметром
+     */
+    private static Object[] withLimit(Object[] values, int limit){
+        Object[] result = new Object[values.length+1];
+        System.arraycopy(values, 0, result, 0, values.length);
+        result[values.length] = limit;
+        return result;
+    }
+
+    /**
+     * Подготавливает запрос и задаёт ему таймаут.
+     * Если для текущего потока установлен QueryContext, запрос регистрируется в нём, чтобы его можно было отменить
+     * @param connection соединение
+     * @param sql текст запроса
+     * @return подготовленный запрос
+     * @throws SQLException запрос не удалось подготовить или он отменён
+     */
+    private PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return attach(connection.prepareStatement(sql));
+    }
+
+    /**
+     * Подготавливает запрос с заданными типом и режимом изменения результата и задаёт ему таймаут
+     * @param connection соединение
+     * @param sql текст запроса
+     * @param resultSetType тип результата
+     * @param resultSetConcurrency режим изменения результата
+     * @return подготовленный запрос
+     * @throws SQLException запрос не удалось подготовить или он отменён
+     */
+    private PreparedStatement prepare(Connection connection, String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return attach(connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    /**
+     * Задаёт запросу таймаут и регистрирует его в QueryContext текущего потока
+     * @param statement подготовленный запрос
+     * @return тот же запрос
+     * @throws SQLException не удалось задать таймаут или контекст отменён
+     */
+    private PreparedStatement attach(PreparedStatement statement) throws SQLException {
+        QueryContext context = QueryContext.current();
+        if(context != null){
+            context.attach(statement);
+        } else {
+            statement.setQueryTimeout(queryTimeout);
         }
-        if(fieldType.getName().equals("long") || fieldType == Long.class){
-            return " BIGINT ";
+        return statement;
+    }
+
+    /**
+     * Включает или выключает отслеживание изменений.
+     * Когда оно включено, DAO запоминает значения полей объектов, которые он загрузил или записал,
+     * и update записывает только изменённые поля, а для неизменённого объекта не обращается к БД.
+     * Объекты, о которых DAO не знает, обновляются целиком
+     * @param enabled true - включить отслеживание
+     */
+    public void setChangeTracking(boolean enabled) {
+        if(!enabled){
+            snapshots = null;
+        } else if(snapshots == null){
+            snapshots = new SnapshotStore(fieldCodecs);
         }
-        if(fieldType.getName().equals("float") || fieldType == Float.class){
-            return " FLOAT ";
+    }
+
+    /**
+     * @return true, если отслеживание изменений включено
+     */
+    public boolean isChangeTracking() {
+        return snapshots != null;
+    }
+
+    /**
+     * Запоминает значения полей объекта, если включено отслеживание изменений
+     * @param object загруженный или записанный объект
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    private void remember(T object) throws InvocationTargetException {
+        SnapshotStore tracked = snapshots;
+        if(tracked != null) tracked.remember(object);
+    }
+
+    /**
+     * Запоминает значения полей записанных объектов, если включено отслеживание изменений
+     * @param objects объекты, записанные в БД
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    private void rememberAll(List<T> objects) throws InvocationTargetException {
+        SnapshotStore tracked = snapshots;
+        if(tracked == null) return;
+        for(T object: objects){
+            tracked.remember(object);
         }
-        if(fieldType.getName().equals("double") || fieldType == Double.class){
-            return " DOUBLE PRECISION ";
+    }
+
+    /**
+     * Забывает значения полей объекта, запись которого удалена: следующий update запишет его целиком.
+     * Снимки других объектов с тем же ключом остаются; update такого объекта при новой записи с тем же ключом
+     * ведёт себя как при её изменении другим клиентом и записывает только изменённые поля
+     * @param key объект, по ключу которого удалена запись
+     */
+    private void forget(T key){
+        SnapshotStore tracked = snapshots;
+        if(tracked != null) tracked.forget(key);
+    }
+
+    /**
+     * @return таймаут выполнения запроса, с
+     */
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * @param queryTimeout таймаут выполнения запроса, с; 0 - без ограничения
+     */
+    public void setQueryTimeout(int queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+
+    /**
+     * Закрывает запрос, игнорируя ошибки. Запрос из кэша соединения при этом сбрасывается:
+     * пакет и параметры, оставшиеся после прерванной операции, не достанутся следующему пользователю
+     * @param statement запрос, может быть null
+     */
+    private void closeStatement(Statement statement){
+        if(statement == null) return;
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
-        if(fieldType.getName().equals("boolean") || fieldType == Boolean.class){
-            return " BIT ";
+    }
+
+    /**
+     * Возвращает соединение в пул, игнорируя ошибки
+     * @param connection соединение, может быть null
+     */
+    private void closeConnection(Connection connection){
+        if(connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
-        throw new IllegalArgumentException("Type is not supported");
     }
 
     /**
      * Проверяет наличие Get и Set аксессоров в классе
      * @param field поле, для которого проходит проверка
-     * @return
+     * @return true, если у поля есть оба аксессора
      */
     public boolean hasAccessors(Field field){
-        Class declaringClass = field.getDeclaringClass();
-        String fieldName = field.getName();
-        fieldName = Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
-        try {
-            Method getMethod = declaringClass.getMethod("Get"+fieldName);
-            if(getMethod.getReturnType() != field.getType()){
-                return false;
+        return EntityMetadata.hasAccessors(field);
+    }
+    /**
+     * Строит условие выборки записей по списку ключей.
+     * Для составного ключа используется сравнение строк (key1,key2) IN ((?,?),...)
+     * @param count число ключей в списке
+     * @return условие вида key IN (?,?,...)
+     */
+    private String keyInCondition(int count){
+        StringBuilder condition = new StringBuilder();
+        StringBuilder row = new StringBuilder();
+        if(compositeKey){
+            condition.append('(');
+            row.append('(');
+            for(String fieldName: keyFields.keySet()){
+                if(row.length() > 1){
+                    condition.append(',');
+                    row.append(',');
+                }
+                condition.append(columns.get(fieldName));
+                row.append('?');
             }
+            condition.append(')');
+            row.append(')');
+        } else {
+            condition.append(columns.get(keyFields.keySet().iterator().next()));
+            row.append('?');
+        }
+        condition.append(" IN (");
+        for(int i = 0; i < count; i++){
+            if(i > 0) condition.append(',');
+            condition.append(row);
+        }
+        return condition.append(')').toString();
+    }
 
-            Method setMethod = declaringClass.getMethod("Set"+fieldName,field.getType());
-            if(!setMethod.getReturnType().getName().equals("void")){
-                return false;
-            }
-        } catch (NoSuchMethodException e) {
-            return false;
+    /**
+     * Передаёт значения полей объекта в параметры запроса
+     * @param statement подготовленный запрос
+     * @param object объект, значения полей которого передаются
+     * @param codecs преобразователи передаваемых полей
+     * @param index номер первого параметра
+     * @return номер следующего свободного параметра
+     * @throws SQLException не удалось задать параметр
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    private int bindValues(PreparedStatement statement, Object object, ColumnCodec[] codecs, int index)
+            throws SQLException, InvocationTargetException {
+        for(ColumnCodec codec: codecs){
+            codec.bind(statement, index++, object);
         }
-        return true;
+        return index;
     }
+
     @Override
     public void insert(T object) {
         try {
-            Connection connection = getConnection();
-            Statement statement = connection.createStatement();
-            String query = "INSERT INTO "+tableName+" (";
-            String values =" VALUES (";
-            for(String fieldName:fields.keySet()){
-                query+=camelToUnderScore(fieldName)+",";
-                String methodName = "Get"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
-                Object value = tableClass.getMethod(methodName).invoke(object);
-                Class fieldClass =  fields.get(fieldName);
-                if(CLASS_MAP.containsKey(fieldClass)){
-                    fieldClass = CLASS_MAP.get(fieldClass);
-                }
-                String valueStr = fieldClass.cast(value).toString();
-                valueStr = filterSymbols(valueStr);
-                if(fieldClass == String.class) values+="'"+filterSymbols(valueStr)+"',";
-                else values+=filterSymbols(valueStr)+",";
-            }
-            for(String fieldName:keyFields.keySet()){
-                query+=camelToUnderScore(fieldName)+",";
-                String methodName = "Get"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
-                Object value = tableClass.getMethod(methodName).invoke(object);
-                Class fieldClass =  keyFields.get(fieldName);
-                if(CLASS_MAP.containsKey(fieldClass)){
-                    fieldClass = CLASS_MAP.get(fieldClass);
-                }
-                String valueStr = fieldClass.cast(value).toString();
-                if(fieldClass == String.class) values+="'"+filterSymbols(valueStr)+"',";
-                else values+=filterSymbols(valueStr)+",";
-            }
-            query = query.substring(0,query.length()-1)+") ";
-            values = values.substring(0,values.length()-1)+")";
-            query+=values;
-            statement.execute(query);
-            connection.close();
+            insertChecked(object);
         } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            error(e);
         }catch(MySQLIntegrityConstraintViolationException e){
             System.out.println("Object with the same primary key already exists in database");
         } catch (SQLException e) {
             e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
         } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+            error(e);
         }
     }
 
-    @Override
-    public void update(T object) {
+    /**
+     * Вставляет объект, см. insert. В отличие от insert, сообщает об ошибке вызывающему
+     * @param object вставляемый объект
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException ошибка СУБД
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    void insertChecked(T object) throws ClassNotFoundException, SQLException, InvocationTargetException {
+        long start = startTime();
         Connection connection = null;
         try {
             connection = getConnection();
-            Statement statement = connection.createStatement();
-            String query = "UPDATE "+tableName+" SET ";
-            for(String fieldName:fields.keySet()){
-                query+=camelToUnderScore(fieldName)+"=";
-                String methodName = "Get"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
-                Object value = tableClass.getMethod(methodName).invoke(object);
-                Class fieldClass =  fields.get(fieldName);
-                if(CLASS_MAP.containsKey(fieldClass)){
-                    fieldClass = CLASS_MAP.get(fieldClass);
-                }
-                String valueStr = fieldClass.cast(value).toString();
-                if(fieldClass == String.class) query+="'"+filterSymbols(valueStr)+"',";
-                else query+=filterSymbols(valueStr)+",";
-            }
-            query = query.substring(0,query.length()-1);
-            query+=" WHERE ";
-            for(String fieldName:keyFields.keySet()){
-                query+=camelToUnderScore(fieldName)+"=";
-                String methodName = "Get"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
-                Object value = tableClass.getMethod(methodName).invoke(object);
-                Class fieldClass =  keyFields.get(fieldName);
-                if(CLASS_MAP.containsKey(fieldClass)){
-                    fieldClass = CLASS_MAP.get(fieldClass);
-                }
-                String valueStr = fieldClass.cast(value).toString();
-                if(fieldClass == String.class) query+="'"+filterSymbols(valueStr)+"' AND ";
-                else query+=filterSymbols(valueStr)+" AND ";
-            }
-            query = query.substring(0,query.length()-5);
-            statement.execute(query);
-            connection.close();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            PreparedStatement statement = prepare(connection, insertQuery);
+            bindValues(statement, object, codecs, 1);
+            long executeStart = startTime();
+            int inserted = executeUpdate(statement);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(insertQuery, elapsed, inserted, valuesOf(object, codecs, null));
+            statement.close();
+            remember(object);
         } catch (SQLException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+            throw rejected(e);
+        } finally {
+            finish(DaoMetrics.Operation.INSERT, start);
+            closeConnection(connection);
         }
+    }
 
+    @Override
+    public BatchResult<T> insertAll(Collection<T> objects) {
+        return insertAll(objects.iterator());
     }
 
     @Override
-    public void deleteByKey(T key) {
+    public BatchResult<T> insertAll(Iterator<T> objects) {
+        BatchResult<T> result = new BatchResult<T>();
+        long start = startTime();
+        Connection connection = null;
+        PreparedStatement statement = null;
         try {
-            Connection connection = getConnection();
-            Statement statement = connection.createStatement();
-            String query = "DELETE FROM "+tableName+" WHERE ";
-            for(String fieldName:keyFields.keySet()){
-                query+=camelToUnderScore(fieldName)+"=";
-                String methodName = "Get"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
-                Object value = tableClass.getMethod(methodName).invoke(key);
-                Class fieldClass =  keyFields.get(fieldName);
-                if(CLASS_MAP.containsKey(fieldClass)){
-                    fieldClass = CLASS_MAP.get(fieldClass);
+            connection = getConnection();
+            connection.setAutoCommit(false);
+            statement = prepare(connection, insertQuery);
+            List<T> chunk = new ArrayList<T>();
+            int offset = 0;
+            while(objects.hasNext()){
+                chunk.add(objects.next());
+                if(chunk.size() == batchSize || !objects.hasNext()){
+                    insertChunk(connection, statement, chunk, offset, result);
+                    offset += chunk.size();
+                    chunk.clear();
                 }
-                String valueStr = fieldClass.cast(value).toString();
-                if(fieldClass == String.class) query+="'"+filterSymbols(valueStr)+"' AND ";
-                else query+=filterSymbols(valueStr)+" AND ";
             }
-            query = query.substring(0,query.length()-5);
-            statement.execute(query);
-            connection.close();
-        }catch (SQLException e){
-            e.printStackTrace();
+            connection.setAutoCommit(true);
         } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            error(e);
+        } catch (SQLException e) {
+            failed(e);
         } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.INSERT_ALL, start);
+            closeStatement(statement);
+            closeConnection(connection);
+        }
+        return result;
+    }
+
+    /**
+     * Вставляет пакет объектов в одной транзакции.
+     * Если пакет не удалось вставить целиком, он откатывается до точки сохранения и объекты вставляются по одному,
+     * а ошибки по отдельным объектам записываются в результат.
+     * Внутри TransactionContext фиксация откладывается до завершения транзакции.
+     * @param connection соединение с отключённой автофиксацией
+     * @param statement подготовленный запрос вставки
+     * @param chunk пакет объектов
+     * @param offset номер первого объекта пакета во входном наборе
+     * @param result результат пакетной операции
+     * @throws SQLException пакет не удалось отправить
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    private void insertChunk(Connection connection, PreparedStatement statement, List<T> chunk, int offset, BatchResult<T> result)
+            throws SQLException, InvocationTargetException {
+        Savepoint chunkStart = connection.setSavepoint();
+        try {
+            for(T object: chunk){
+                bindValues(statement, object, codecs, 1);
+                statement.addBatch();
+            }
+            executeBatch(statement, insertQuery, chunk.size());
+            connection.commit();
+            result.addSucceeded(chunk.size());
+            rememberAll(chunk);
+            return;
+        } catch (BatchUpdateException e) {
+            statement.clearBatch();
+            connection.rollback(chunkStart);
+        }
+        List<T> inserted = new ArrayList<T>();
+        for(int i = 0; i < chunk.size(); i++){
+            T object = chunk.get(i);
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                bindValues(statement, object, codecs, 1);
+                executeUpdate(statement);
+                result.addSucceeded(1);
+                inserted.add(object);
+            } catch (SQLException e) {
+                connection.rollback(savepoint);
+                result.addFailure(offset + i, object, e);
+            }
+        }
+        connection.commit();
+        rememberAll(inserted);
+    }
+
+    /**
+     * @return число объектов в одном пакете пакетных операций
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize число объектов в одном пакете пакетных операций
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 1){
+            throw new IllegalArgumentException("Batch size should be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Массовая загрузка объектов, см. bulkLoad(Iterator, boolean)
+     * @param objects загружаемые объекты
+     * @return число загруженных строк и скорость загрузки
+     */
+    public BulkLoadResult bulkLoad(Iterable<T> objects){
+        return bulkLoad(objects.iterator(), false);
+    }
+
+    /**
+     * Массовая загрузка объектов, см. bulkLoad(Iterator, boolean)
+     * @param objects загружаемые объекты
+     * @return число загруженных строк и скорость загрузки
+     */
+    public BulkLoadResult bulkLoad(Iterator<T> objects){
+        return bulkLoad(objects, false);
+    }
+
+    /**
+     * Массовая загрузка объектов.
+     * Если диалект поддерживает потоковую загрузку (MySQL) и в параметрах пула задано allowLoadLocalInfile=true,
+     * объекты сериализуются по мере чтения в поток, который передаётся запросу LOAD DATA LOCAL INFILE без временного файла;
+     * строки с существующим ключом при этом пропускаются. Если потоковая загрузка недоступна или сервер её отклонил,
+     * объекты вставляются многострочными INSERT по batchSize записей, и загрузка останавливается на первой ошибке.
+     * @param objects загружаемые объекты
+     * @param deferIndexes удалить неуникальные вторичные индексы на время загрузки и построить их заново после неё;
+     *                     в MySQL также отключаются проверки уникальности и внешних ключей в сеансе загрузки
+     * @return число загруженных строк и скорость загрузки
+     * @throws IllegalStateException индексы нельзя перестроить внутри транзакции, так как изменение схемы её фиксирует
+     */
+    public BulkLoadResult bulkLoad(Iterator<T> objects, boolean deferIndexes){
+        if(deferIndexes && TransactionContext.current() != null){
+            throw new IllegalStateException("Indexes can not be rebuilt inside a transaction");
+        }
+        long started = System.nanoTime();
+        long start = startTime();
+        long submitted = 0;
+        long loaded = 0;
+        boolean streamed = false;
+        SqlDialect dialect = pool.getDialect();
+        List<String> dropped = new ArrayList<String>();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            if(deferIndexes){
+                dropSecondaryIndexes(connection, dropped);
+                String relaxQuery = dialect.relaxChecksQuery(true);
+                if(relaxQuery != null) execute(connection, relaxQuery);
+            }
+            String loadQuery = metadata.bulkLoadQuery(dialect);
+            if(loadQuery != null && "true".equalsIgnoreCase(pool.getProperty("allowLoadLocalInfile"))){
+                DelimitedEntityStream stream = new DelimitedEntityStream(objects, codecs);
+                Statement statement = connection.createStatement();
+                try {
+                    dialect.setBulkLoadStream(statement, stream);
+                    long executeStart = startTime();
+                    loaded = statement.executeUpdate(loadQuery);
+                    finish(DaoMetrics.Phase.EXECUTE, executeStart);
+                    streamed = true;
+                } catch (SQLException e) {
+                    // если данные ещё не читались, сервер отклонил LOCAL INFILE, и объекты вставляются запросами INSERT;
+                    // вызывающий видит это по BulkLoadResult.isStreamed()
+                    if(stream.getRows() > 0) throw e;
+                } finally {
+                    statement.close();
+                    submitted = stream.getRows();
+                }
+            }
+            if(!streamed){
+                long[] counts = insertRows(connection, objects);
+                submitted = counts[0];
+                loaded = counts[1];
+            }
+        } catch (SQLException e) {
+            failed(e);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            if(deferIndexes && connection != null){
+                restoreIndexes(connection, dropped);
+            }
+            finish(DaoMetrics.Operation.BULK_LOAD, start);
+            rows(0, (int) Math.min(loaded, Integer.MAX_VALUE));
+            closeConnection(connection);
+        }
+        return new BulkLoadResult(submitted, loaded, System.nanoTime()-started, streamed);
+    }
+
+    /**
+     * Вставляет объекты многострочными INSERT по batchSize записей, но не более 32767 параметров в запросе
+     * @param connection соединение
+     * @param objects вставляемые объекты
+     * @return число переданных объектов и число вставленных строк
+     * @throws SQLException ошибка вставки
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    private long[] insertRows(Connection connection, Iterator<T> objects) throws SQLException, InvocationTargetException {
+        int rowsPerStatement = Math.max(1, Math.min(batchSize, Short.MAX_VALUE / codecs.length));
+        List<T> chunk = new ArrayList<T>(rowsPerStatement);
+        long submitted = 0;
+        long loaded = 0;
+        PreparedStatement full = null;
+        try {
+            while(objects.hasNext()){
+                chunk.add(objects.next());
+                if(chunk.size() == rowsPerStatement || !objects.hasNext()){
+                    PreparedStatement statement;
+                    if(chunk.size() == rowsPerStatement){
+                        if(full == null) full = prepare(connection, metadata.multiRowInsertQuery(rowsPerStatement));
+                        statement = full;
+                    } else {
+                        statement = prepare(connection, metadata.multiRowInsertQuery(chunk.size()));
+                    }
+                    int index = 1;
+                    for(T object: chunk){
+                        index = bindValues(statement, object, codecs, index);
+                    }
+                    submitted += chunk.size();
+                    loaded += executeUpdate(statement);
+                    if(statement != full) statement.close();
+                    chunk.clear();
+                }
+            }
+        } finally {
+            if(full != null) full.close();
+        }
+        return new long[]{submitted, loaded};
+    }
+
+    /**
+     * Удаляет неуникальные вторичные индексы таблицы
+     * @param connection соединение
+     * @param dropped список, в который добавляется имя каждого индекса сразу после его удаления,
+     *                чтобы при ошибке на следующем индексе уже удалённые были построены заново
+     * @throws SQLException индекс не удалось удалить
+     */
+    private void dropSecondaryIndexes(Connection connection, List<String> dropped) throws SQLException {
+        for(Map.Entry<String, String> index: metadata.indexQueries.entrySet()){
+            if(index.getValue().startsWith("CREATE UNIQUE ")) continue;
+            execute(connection, pool.getDialect().dropIndexQuery(tableName, index.getKey()));
+            dropped.add(index.getKey());
+        }
+    }
+
+    /**
+     * Включает проверки, отключённые на время загрузки, и строит заново удалённые индексы.
+     * Каждый шаг выполняется независимо: ошибка одного не мешает остальным
+     * @param connection соединение
+     * @param dropped имена удалённых индексов
+     */
+    private void restoreIndexes(Connection connection, List<String> dropped){
+        String restoreQuery = pool.getDialect().relaxChecksQuery(false);
+        if(restoreQuery != null){
+            try {
+                execute(connection, restoreQuery);
+            } catch (SQLException e) {
+                failed(e);
+            }
+        }
+        for(String index: dropped){
+            try {
+                execute(connection, metadata.indexQueries.get(index));
+            } catch (SQLException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * Выполняет запрос без параметров
+     * @param connection соединение
+     * @param sql текст запроса
+     * @throws SQLException ошибка выполнения запроса
+     */
+    private void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public void update(T object) {
+        try {
+            updateChecked(object);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (SQLException e) {
             e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
+        } catch (InvocationTargetException e) {
+            error(e);
+        }
+    }
+
+    /**
+     * Обновляет запись объекта, см. update. В отличие от update, сообщает об ошибке вызывающему
+     * @param object объект, поля которого обновляются в записи таблицы
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException ошибка СУБД
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    void updateChecked(T object) throws ClassNotFoundException, SQLException, InvocationTargetException {
+        if(updateQuery == null) return;
+        SnapshotStore tracked = snapshots;
+        long start = startTime();
+        Connection connection = null;
+        try {
+            String query = updateQuery;
+            ColumnCodec[] changedCodecs = fieldCodecs;
+            BitSet changed = tracked == null ? null : tracked.changedFields(object);
+            if(changed != null){
+                if(changed.isEmpty()) return;
+                if(changed.cardinality() < fieldCodecs.length){
+                    query = metadata.partialUpdateQuery(changed);
+                    changedCodecs = new ColumnCodec[changed.cardinality()];
+                    for(int i = changed.nextSetBit(0), j = 0; i >= 0; i = changed.nextSetBit(i+1)){
+                        changedCodecs[j++] = fieldCodecs[i];
+                    }
+                }
+            }
+            connection = getConnection();
+            PreparedStatement statement = prepare(connection, query);
+            bindValues(statement, object, keyCodecs, bindValues(statement, object, changedCodecs, 1));
+            long executeStart = startTime();
+            int updated = executeUpdate(statement);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(query, elapsed, updated, valuesOf(object, changedCodecs, keyCodecs));
+            statement.close();
+            if(tracked != null) tracked.remember(object);
+        } catch (SQLException e) {
+            throw rejected(e);
+        } finally {
+            finish(DaoMetrics.Operation.UPDATE, start);
+            closeConnection(connection);
+        }
+    }
+
+    @Override
+    public int updateAll(Collection<T> objects) {
+        try {
+            return updateAllChecked(objects);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (SQLException e) {
             e.printStackTrace();
+        } catch (InvocationTargetException e) {
+            error(e);
+        }
+        return 0;
+    }
+
+    /**
+     * Обновляет объекты пакетами, см. updateAll. В отличие от updateAll, сообщает об ошибке вызывающему
+     * @param objects объекты, поля которых обновляются в записях таблицы
+     * @return число обновлённых записей
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException ошибка СУБД; пакеты, отправленные до ошибки, остаются зафиксированными
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    int updateAllChecked(Collection<T> objects) throws ClassNotFoundException, SQLException, InvocationTargetException {
+        if(updateQuery == null) return 0;
+        int updated = 0;
+        long start = startTime();
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = getConnection();
+            connection.setAutoCommit(false);
+            statement = prepare(connection, updateQuery);
+            List<T> batch = new ArrayList<T>();
+            try {
+                for(T object: objects){
+                    bindValues(statement, object, codecs, 1);
+                    statement.addBatch();
+                    batch.add(object);
+                    if(batch.size() == batchSize){
+                        updated += countUpdates(executeBatch(statement, updateQuery, batch.size()));
+                        connection.commit();
+                        rememberAll(batch);
+                        batch.clear();
+                    }
+                }
+                if(!batch.isEmpty()){
+                    updated += countUpdates(executeBatch(statement, updateQuery, batch.size()));
+                    connection.commit();
+                    rememberAll(batch);
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw rejected(e);
+        } finally {
+            finish(DaoMetrics.Operation.UPDATE_ALL, start);
+            closeStatement(statement);
+            closeConnection(connection);
         }
+        return updated;
     }
 
     @Override
-    public T selectByKey(T key) {
+    public void upsert(T object) {
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            PreparedStatement statement = prepare(connection, upsertQuery);
+            bindValues(statement, object, codecs, 1);
+            long executeStart = startTime();
+            int written = executeUpdate(statement);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(upsertQuery, elapsed, written, valuesOf(object, codecs, null));
+            statement.close();
+            remember(object);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (SQLException e) {
+            failed(e);
+        } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.UPSERT, start);
+            closeConnection(connection);
+        }
+    }
 
+    @Override
+    public int upsertAll(Collection<T> objects) {
+        int written = 0;
+        long start = startTime();
+        Connection connection = null;
+        PreparedStatement statement = null;
         try {
-            Connection connection = getConnection();
-            Statement statement = connection.createStatement();
-            String query = "SELECT * FROM "+tableName+" WHERE ";
-            for(String fieldName:keyFields.keySet()){
-                query+=camelToUnderScore(fieldName)+"=";
-                String methodName = "Get"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
-                Object value = tableClass.getMethod(methodName).invoke(key);
-                Class fieldClass =  keyFields.get(fieldName);
-                if(CLASS_MAP.containsKey(fieldClass)){
-                    fieldClass = CLASS_MAP.get(fieldClass);
+            connection = getConnection();
+            connection.setAutoCommit(false);
+            statement = prepare(connection, upsertQuery);
+            List<T> batch = new ArrayList<T>();
+            try {
+                for(T object: objects){
+                    bindValues(statement, object, codecs, 1);
+                    statement.addBatch();
+                    batch.add(object);
+                    if(batch.size() == batchSize){
+                        int[] counts = executeBatch(statement, upsertQuery, batch.size());
+                        connection.commit();
+                        written += countUpdates(counts);
+                        rememberAll(batch);
+                        batch.clear();
+                    }
                 }
-                String valueStr = fieldClass.cast(value).toString();
-                if(fieldClass == String.class) query+="'"+filterSymbols(valueStr)+"' AND ";
-                else query+=filterSymbols(valueStr)+" AND ";
+                if(!batch.isEmpty()){
+                    int[] counts = executeBatch(statement, upsertQuery, batch.size());
+                    connection.commit();
+                    written += countUpdates(counts);
+                    rememberAll(batch);
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
             }
-            query = query.substring(0,query.length()-5);
-            ResultSet result = statement.executeQuery(query);
+            connection.setAutoCommit(true);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (SQLException e) {
+            failed(e);
+        } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.UPSERT_ALL, start);
+            closeStatement(statement);
+            closeConnection(connection);
+        }
+        return written;
+    }
 
-            List<T> results = CreateObjects(result);
-            connection.close();
-            if(!results.isEmpty()){
-                return results.get(0);
+    /**
+     * Суммирует результаты выполнения пакета запросов
+     * @param counts результаты executeBatch
+     * @return число изменённых записей; запросы, для которых драйвер не сообщил число записей, считаются за одну
+     */
+    private int countUpdates(int[] counts){
+        int total = 0;
+        for(int count: counts){
+            if(count > 0) total += count;
+            else if(count == Statement.SUCCESS_NO_INFO) total++;
+        }
+        return total;
+    }
+
+    @Override
+    public int deleteByKeys(Collection<T> keys) {
+        int deleted = 0;
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            List<T> chunk = new ArrayList<T>();
+            Iterator<T> iterator = keys.iterator();
+            while(iterator.hasNext()){
+                chunk.add(iterator.next());
+                if(chunk.size() == batchSize || !iterator.hasNext()){
+                    String query = "DELETE FROM "+tableName+" WHERE "+keyInCondition(chunk.size());
+                    PreparedStatement statement = prepare(connection, query);
+                    int index = 1;
+                    for(T key: chunk){
+                        index = bindValues(statement, key, keyCodecs, index);
+                    }
+                    long executeStart = startTime();
+                    int chunkDeleted = executeUpdate(statement);
+                    long elapsed = slowElapsed(executeStart);
+                    if(elapsed >= 0) logSlow(query, elapsed, chunkDeleted, valuesOf(chunk, keyCodecs));
+                    deleted += chunkDeleted;
+                    statement.close();
+                    for(T key: chunk){
+                        forget(key);
+                    }
+                    chunk.clear();
+                }
             }
         }catch (SQLException e){
-            e.printStackTrace();
+            failed(e);
         } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            error(e);
         } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.DELETE_ALL, start);
+            closeConnection(connection);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void deleteByKey(T key) {
+        try {
+            deleteByKeyChecked(key);
+        }catch (SQLException e){
             e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (InvocationTargetException e) {
+            error(e);
+        }
+    }
+
+    /**
+     * Удаляет запись по ключу, см. deleteByKey. В отличие от deleteByKey, сообщает об ошибке вызывающему
+     * @param key объект с заполненными ключевыми полями
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException ошибка СУБД
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    void deleteByKeyChecked(T key) throws ClassNotFoundException, SQLException, InvocationTargetException {
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            PreparedStatement statement = prepare(connection, deleteQuery);
+            bindValues(statement, key, keyCodecs, 1);
+            long executeStart = startTime();
+            int deleted = executeUpdate(statement);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(deleteQuery, elapsed, deleted, valuesOf(key, keyCodecs, null));
+            statement.close();
+            forget(key);
+        }catch (SQLException e){
+            throw rejected(e);
+        } finally {
+            finish(DaoMetrics.Operation.DELETE, start);
+            closeConnection(connection);
+        }
+    }
+
+    @Override
+    public T selectByKey(T key) {
+        try {
+            return selectByKeyChecked(key);
+        }catch (SQLException e){
             e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (InvocationTargetException e) {
+            error(e);
         }
         return null;
     }
 
+    /**
+     * Выбирает объект по ключу, см. selectByKey. В отличие от selectByKey, сообщает об ошибке вызывающему
+     * @param key объект с заполненными ключевыми полями
+     * @return найденный объект; null, если записи с таким ключом нет
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException ошибка СУБД
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    T selectByKeyChecked(T key) throws ClassNotFoundException, SQLException, InvocationTargetException {
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            PreparedStatement statement = prepare(connection, selectByKeyQuery);
+            bindValues(statement, key, keyCodecs, 1);
+            long executeStart = startTime();
+            ResultSet result = executeQuery(statement);
+
+            List<T> results = CreateObjects(result);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(selectByKeyQuery, elapsed, results.size(), valuesOf(key, keyCodecs, null));
+            result.close();
+            statement.close();
+            if(!results.isEmpty()){
+                return results.get(0);
+            }
+        }catch (SQLException e){
+            throw rejected(e);
+        } finally {
+            finish(DaoMetrics.Operation.SELECT_BY_KEY, start);
+            closeConnection(connection);
+        }
+        return null;
+    }
+
+    @Override
+    public Map<EntityKey, T> selectByKeys(Collection<T> keys) {
+        Map<EntityKey, T> results = new LinkedHashMap<EntityKey, T>();
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            Map<EntityKey, T> chunk = new LinkedHashMap<EntityKey, T>();
+            Iterator<T> iterator = keys.iterator();
+            while(iterator.hasNext()){
+                T key = iterator.next();
+                chunk.put(keyOf(key), key);
+                if(chunk.size() == batchSize || !iterator.hasNext()){
+                    String query = "SELECT * FROM "+tableName+" WHERE "+keyInCondition(chunk.size());
+                    PreparedStatement statement = prepare(connection, query);
+                    int index = 1;
+                    for(T chunkKey: chunk.values()){
+                        index = bindValues(statement, chunkKey, keyCodecs, index);
+                    }
+                    long executeStart = startTime();
+                    ResultSet result = executeQuery(statement);
+                    List<T> found = CreateObjects(result);
+                    long elapsed = slowElapsed(executeStart);
+                    if(elapsed >= 0) logSlow(query, elapsed, found.size(), valuesOf(chunk.values(), keyCodecs));
+                    for(T object: found){
+                        results.put(keyOf(object), object);
+                    }
+                    result.close();
+                    statement.close();
+                    chunk.clear();
+                }
+            }
+        }catch (SQLException e){
+            failed(e);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.SELECT_BY_KEYS, start);
+            closeConnection(connection);
+        }
+        return results;
+    }
+
+    /**
+     * Возвращает значение ключа объекта
+     * @param object объект с заполненными ключевыми полями
+     * @return значения ключевых полей в порядке их объявления в классе
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    EntityKey keyOf(T object) throws InvocationTargetException {
+        Object[] values = new Object[keyCodecs.length];
+        for(int i = 0; i < keyCodecs.length; i++){
+            values[i] = keyCodecs[i].get(object);
+        }
+        return new EntityKey(values);
+    }
+
+    /**
+     * Создаёт копию объекта, копируя значения всех отображаемых полей
+     * @param object копируемый объект
+     * @return новый объект с теми же значениями полей
+     * @throws InvocationTargetException конструктор или аксессор выбросил исключение
+     */
+    @SuppressWarnings("unchecked")
+    T copy(T object) throws InvocationTargetException {
+        T copy;
+        try {
+            copy = (T) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+        for(ColumnCodec codec: codecs){
+            codec.set(copy, codec.get(object));
+        }
+        return copy;
+    }
+
+    /**
+     * Выборка объектов по значению поля. Поле должно быть первым столбцом первичного ключа или индекса Indexed,
+     * чтобы запрос выполнялся по индексу; по второму и следующим столбцам составного индекса выбирать нельзя
+     * @param field имя поля класса
+     * @param value значение поля, для примитивных типов - в обёртке; null выбирает записи с пустым значением
+     * @return список объектов
+     * @throws IllegalArgumentException поле не является первым столбцом индекса или значение не соответствует типу поля
+     */
+    public List<T> selectBy(String field, Object value){
+        String query = metadata.finderQueries.get(field);
+        if(query == null){
+            throw new IllegalArgumentException("Field "+field+" is not the leading column of an index");
+        }
+        if(value == null){
+            return select(selectAllQuery+" WHERE "+columns.get(field)+" IS NULL", new ColumnCodec[0], new Object[0]);
+        }
+        return select(query, new ColumnCodec[]{metadata.codecsByField.get(field)}, new Object[]{value});
+    }
+
+    /**
+     * Выборка объектов по значениям нескольких полей, например по всем столбцам составного индекса.
+     * Среди полей должен быть первый столбец первичного ключа или одного из индексов, тогда запрос выполняется
+     * по индексу, а остальные поля уточняют выборку
+     * @param values значения полей в формате имя поля->значение; null выбирает записи с пустым значением
+     * @return список объектов, удовлетворяющих всем условиям
+     * @throws IllegalArgumentException поле не найдено, поля не начинают ни один индекс или значение не соответствует типу поля
+     */
+    public List<T> selectByAll(Map<String, Object> values){
+        if(values.isEmpty()){
+            throw new IllegalArgumentException("No field values given");
+        }
+        StringBuilder condition = new StringBuilder();
+        List<ColumnCodec> bound = new ArrayList<ColumnCodec>();
+        List<Object> boundValues = new ArrayList<Object>();
+        boolean indexed = false;
+        int found = 0;
+        for(ColumnCodec codec: codecs){
+            if(!values.containsKey(codec.name)) continue;
+            found++;
+            indexed |= metadata.indexedFields.contains(codec.name);
+            if(condition.length() > 0) condition.append(" AND ");
+            Object value = values.get(codec.name);
+            if(value == null){
+                condition.append(codec.column).append(" IS NULL");
+            } else {
+                condition.append(codec.column).append("=?");
+                bound.add(codec);
+                boundValues.add(value);
+            }
+        }
+        if(found != values.size()){
+            throw new IllegalArgumentException("Unknown fields in "+values.keySet());
+        }
+        if(!indexed){
+            throw new IllegalArgumentException("Fields "+values.keySet()+" do not include the leading column of an index");
+        }
+        return select(selectAllQuery+" WHERE "+condition, bound.toArray(new ColumnCodec[bound.size()]), boundValues.toArray());
+    }
+
+    /**
+     * Выборка объекта по значению поля с уникальным индексом (или единственного ключевого поля)
+     * @param field имя поля класса
+     * @param value значение поля, для примитивных типов - в обёртке
+     * @return найденный объект или null
+     * @throws IllegalArgumentException поле не имеет уникального индекса или значение не соответствует типу поля
+     */
+    public T selectOneBy(String field, Object value){
+        if(!metadata.uniqueFields.contains(field)){
+            throw new IllegalArgumentException("Field "+field+" has no unique index");
+        }
+        List<T> result = selectBy(field, value);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Выполняет запрос выборки с параметрами
+     * @param query текст запроса
+     * @param parameterCodecs преобразователи полей, значения которых передаются в параметры
+     * @param values значения параметров
+     * @return список объектов
+     */
+    private List<T> select(String query, ColumnCodec[] parameterCodecs, Object[] values){
+        List<T> results = new ArrayList<T>();
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            PreparedStatement statement = prepare(connection, query);
+            for(int i = 0; i < parameterCodecs.length; i++){
+                parameterCodecs[i].bindValue(statement, i+1, values[i]);
+            }
+            long executeStart = startTime();
+            ResultSet result = executeQuery(statement);
+            results = CreateObjects(result);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(query, elapsed, results.size(), values);
+            result.close();
+            statement.close();
+        }catch(SQLException e){
+            failed(e);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.SELECT, start);
+            closeConnection(connection);
+        }
+        return results;
+    }
+
+    /**
+     * Создаёт условия выборки объектов этого DAO
+     * @return пустые условия: все записи, все поля
+     */
+    public Criteria<T> criteria(){
+        return new Criteria<T>(this);
+    }
+
+    /**
+     * Выполняет выборку по условиям и создаёт объекты, заполняя только выбранные поля
+     * @param criteria условия выборки
+     * @return список объектов
+     */
+    List<T> select(Criteria<T> criteria){
+        List<T> results = new ArrayList<T>();
+        ColumnCodec[] projection = criteria.getProjection();
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            String query = criteria.toSql();
+            PreparedStatement statement = prepare(connection, query, criteria);
+            long executeStart = startTime();
+            ResultSet set = executeQuery(statement);
+            long mapStart = startTime();
+            while(set.next()){
+                results.add(createObject(set, projection));
+            }
+            finish(DaoMetrics.Phase.MAP, mapStart);
+            rows(results.size(), 0);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(query, elapsed, results.size(), criteriaValues(criteria));
+            set.close();
+            statement.close();
+        }catch(SQLException e){
+            failed(e);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.SELECT, start);
+            closeConnection(connection);
+        }
+        return results;
+    }
+
+    /**
+     * Выполняет выборку по условиям, не создавая объекты
+     * @param criteria условия выборки
+     * @return строки со значениями выбранных полей
+     */
+    List<Object[]> selectColumns(Criteria<T> criteria){
+        List<Object[]> results = new ArrayList<Object[]>();
+        ColumnCodec[] projection = criteria.getProjection();
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            String query = criteria.toSql();
+            PreparedStatement statement = prepare(connection, query, criteria);
+            long executeStart = startTime();
+            ResultSet set = executeQuery(statement);
+            long mapStart = startTime();
+            while(set.next()){
+                Object[] row = new Object[projection.length];
+                for(int i = 0; i < projection.length; i++){
+                    row[i] = projection[i].readValue(set, i+1);
+                }
+                results.add(row);
+            }
+            finish(DaoMetrics.Phase.MAP, mapStart);
+            rows(results.size(), 0);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(query, elapsed, results.size(), criteriaValues(criteria));
+            set.close();
+            statement.close();
+        }catch(SQLException e){
+            failed(e);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.SELECT, start);
+            closeConnection(connection);
+        }
+        return results;
+    }
+
+    /**
+     * Подготавливает запрос выборки по условиям и задаёт его параметры
+     * @param connection соединение
+     * @param sql текст запроса, построенный по условиям
+     * @param criteria условия выборки
+     * @return подготовленный запрос
+     * @throws SQLException запрос не удалось подготовить
+     */
+    private PreparedStatement prepare(Connection connection, String sql, Criteria<T> criteria) throws SQLException {
+        PreparedStatement statement = prepare(connection, sql);
+        ColumnCodec[] parameterCodecs = criteria.getParameterCodecs();
+        Object[] values = criteria.getParameters();
+        for(int i = 0; i < parameterCodecs.length; i++){
+            parameterCodecs[i].bindValue(statement, i+1, values[i]);
+        }
+        if(criteria.getLimit() > 0){
+            statement.setInt(parameterCodecs.length+1, criteria.getLimit());
+        }
+        return statement;
+    }
+
+    /**
+     * @param criteria условия выборки
+     * @return значения параметров запроса выборки по условиям
+     */
+    private static Object[] criteriaValues(Criteria<?> criteria){
+        Object[] values = criteria.getParameters();
+        return criteria.getLimit() > 0 ? withLimit(values, criteria.getLimit()) : values;
+    }
+
     /**
      * Возвращает список объектов, созданных на основе ответа, пришедшего из БД
      * @param set набор данных, результат запроса
      * @return список сконструированных объектов
      * @throws SQLException результат запроса оказался недоступен
-     * @throws NoSuchMethodException метод для задания значение поля не был найден
-     * @throws IllegalAccessException не удалось получить доступ к конструктору класса
      */
-    private List<T> CreateObjects(ResultSet set) throws SQLException, NoSuchMethodException, IllegalAccessException {
+    List<T> CreateObjects(ResultSet set) throws SQLException {
+        long start = startTime();
         List<T> result = new ArrayList<T>();
+        int[] indexes = columnIndexes(set);
          while(set.next()){
              try {
-                 T object = tableClass.newInstance();
-
-             for(String fieldName:fields.keySet()){
-                 Object value = set.getObject(camelToUnderScore(fieldName));
-                 Class fieldType = fields.get(fieldName);
-                 Class wrapper;
-                 if(CLASS_MAP.containsKey(fieldType)){
-                     wrapper = CLASS_MAP.get(fieldType);
-                 }else{
-                     wrapper = fieldType;
-                 }
-                Method setMethod = tableClass.getMethod("Set"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1),fieldType);
-                setMethod.invoke(object, wrapper.cast(value));
-             }
-                 for(String fieldName:keyFields.keySet()){
-                     Object value = set.getObject(fieldName);
-                     Class fieldType = keyFields.get(fieldName);
-                     Class wrapper;
-                     if(CLASS_MAP.containsKey(fieldType)){
-                         wrapper = CLASS_MAP.get(fieldType);
-                     }else{
-                         wrapper = fieldType;
-                     }
-                     Method setMethod = tableClass.getMethod("Set"+Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1),fieldType);
-                     if(CLASS_MAP.containsKey(fieldType)){
-                         fieldType = CLASS_MAP.get(fieldType);
-                     }
-                     setMethod.invoke(object, wrapper.cast(value));
-                 }
-              result.add(object);
-             } catch (InstantiationException e) {
-                 e.printStackTrace();
+                 result.add(createObject(set, indexes));
              } catch (InvocationTargetException e) {
-                 e.printStackTrace();
+                 error(e);
              }
          }
+        finish(DaoMetrics.Phase.MAP, start);
+        rows(result.size(), 0);
         return result;
     }
 
+    /**
+     * Находит номера столбцов всех полей в наборе данных, чтобы не искать столбцы по имени в каждой строке
+     * @param set набор данных, результат запроса
+     * @return номера столбцов в порядке codecs
+     * @throws SQLException в наборе данных нет столбца одного из полей
+     */
+    private int[] columnIndexes(ResultSet set) throws SQLException {
+        int[] indexes = new int[codecs.length];
+        for(int i = 0; i < codecs.length; i++){
+            indexes[i] = set.findColumn(codecs[i].column);
+        }
+        return indexes;
+    }
+
+    /**
+     * Создаёт объект по текущей строке результата запроса
+     * @param set набор данных, установленный на нужную строку
+     * @param indexes номера столбцов в порядке codecs
+     * @return сконструированный объект
+     * @throws SQLException результат запроса оказался недоступен
+     * @throws InvocationTargetException конструктор или Set-аксессор выбросил исключение
+     */
+    @SuppressWarnings("unchecked")
+    private T createObject(ResultSet set, int[] indexes) throws SQLException, InvocationTargetException {
+        T object;
+        try {
+            object = (T) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+        for(int i = 0; i < codecs.length; i++){
+            codecs[i].read(set, indexes[i], object);
+        }
+        remember(object);
+        return object;
+    }
+
+    /**
+     * Создаёт объект по текущей строке результата запроса, в котором выбраны не все поля
+     * @param set набор данных, установленный на нужную строку
+     * @param projection преобразователи выбранных полей в порядке столбцов результата
+     * @return объект, у которого заполнены выбранные поля
+     * @throws SQLException результат запроса оказался недоступен
+     * @throws InvocationTargetException конструктор или Set-аксессор выбросил исключение
+     */
+    @SuppressWarnings("unchecked")
+    private T createObject(ResultSet set, ColumnCodec[] projection) throws SQLException, InvocationTargetException {
+        T object;
+        try {
+            object = (T) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+        for(int i = 0; i < projection.length; i++){
+            projection[i].read(set, i+1, object);
+        }
+        return object;
+    }
+
     @Override
     public List<T> selectAll() {
-        List<T> results = new ArrayList<T>();
         try {
-            Connection connection = getConnection();
-            Statement statement = connection.createStatement();
-            String query = "SELECT * FROM " + tableName;
-            ResultSet result = statement.executeQuery(query);
-            results =  CreateObjects(result);
+            return selectAllChecked();
         }catch(SQLException e){
             e.printStackTrace();
         } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+            error(e);
+        }
+        return new ArrayList<T>();
+    }
+
+    /**
+     * Выбирает все объекты таблицы, см. selectAll. В отличие от selectAll, сообщает об ошибке вызывающему
+     * @return все объекты таблицы
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException ошибка СУБД
+     */
+    List<T> selectAllChecked() throws ClassNotFoundException, SQLException {
+        List<T> results = new ArrayList<T>();
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            PreparedStatement statement = prepare(connection, selectAllQuery);
+            long executeStart = startTime();
+            ResultSet result = executeQuery(statement);
+            results =  CreateObjects(result);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0) logSlow(selectAllQuery, elapsed, results.size(), new Object[0]);
+            result.close();
+            statement.close();
+        }catch(SQLException e){
+            throw rejected(e);
+        } finally {
+            finish(DaoMetrics.Operation.SELECT_ALL, start);
+            closeConnection(connection);
         }
         return results;
     }
 
     /**
-     * Фильтует символы апострофа, кавычек и backslash
-     * @param string
-     * @return
+     * Постраничная выборка объектов в порядке ключевых полей.
+     * Следующая страница выбирается условием (key1,key2) > (?,?) по первичному ключу,
+     * поэтому стоимость выборки не зависит от того, насколько далеко страница от начала таблицы.
+     * @param afterKey объект с ключом последней записи предыдущей страницы (см. Page.getNextKey); null для первой страницы
+     * @param limit максимальное число объектов на странице
+     * @return страница с объектами и ключом продолжения
      */
-    private String filterSymbols(String string){
-             return string.replaceAll("['\"\\\\]","");
+    public Page<T> selectPage(T afterKey, int limit){
+        if(limit < 1){
+            throw new IllegalArgumentException("Page limit should be positive");
+        }
+        List<T> results = new ArrayList<T>();
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            PreparedStatement statement;
+            String query = afterKey == null ? firstPageQuery : nextPageQuery;
+            int index = 1;
+            statement = prepare(connection, query);
+            if(afterKey != null){
+                index = bindValues(statement, afterKey, keyCodecs, index);
+            }
+            statement.setInt(index, limit);
+            long executeStart = startTime();
+            ResultSet result = executeQuery(statement);
+            results = CreateObjects(result);
+            long elapsed = slowElapsed(executeStart);
+            if(elapsed >= 0){
+                Object[] keyValues = afterKey == null ? new Object[0] : valuesOf(afterKey, keyCodecs, null);
+                logSlow(query, elapsed, results.size(), withLimit(keyValues, limit));
+            }
+            result.close();
+            statement.close();
+        }catch (SQLException e){
+            failed(e);
+        } catch (ClassNotFoundException e) {
+            error(e);
+        } catch (InvocationTargetException e) {
+            error(e);
+        } finally {
+            finish(DaoMetrics.Operation.SELECT_PAGE, start);
+            closeConnection(connection);
+        }
+        T nextKey = results.size() == limit ? results.get(results.size()-1) : null;
+        return new Page<T>(results, nextKey);
+    }
+
+    /**
+     * Потоковая выборка всех объектов из таблицы БД.
+     * Строки читаются курсором только для чтения порциями по fetchSize и преобразуются в объекты по одной,
+     * поэтому расход памяти не зависит от размера таблицы.
+     * Итератор удерживает соединение, пока не будет закрыт или пройден до конца.
+     * Внутри TransactionContext итератор читает через соединение транзакции. Если при текущем fetchSize
+     * драйвер занимает соединение до конца чтения (MySQL с Integer.MIN_VALUE), выборка отклоняется:
+     * остальные запросы транзакции завершались бы ошибкой, пока итератор открыт.
+     * Для чтения внутри транзакции задайте обычный размер выборки через setFetchSize или используйте selectPage.
+     * @return итератор по объектам таблицы
+     * @throws IllegalStateException таблицу не удалось прочитать или потоковое чтение заняло бы соединение транзакции
+     */
+    public CloseableIterator<T> iterateAll(){
+        if(TransactionContext.current() != null && pool.getDialect().isStreamingExclusive(fetchSize)){
+            throw new IllegalStateException("Streaming read of "+tableName+" with fetch size "+fetchSize
+                    +" would block the transaction connection");
+        }
+        long start = startTime();
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            connection.setAutoCommit(false);
+            PreparedStatement statement = prepare(connection, selectAllQuery,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            ResultSet set = executeQuery(statement);
+            return new ResultSetIterator(connection, set, columnIndexes(set), start);
+        } catch (SQLException e) {
+            closeConnection(connection);
+            throw new IllegalStateException("Unable to read table "+tableName, e);
+        } catch (ClassNotFoundException e) {
+            closeConnection(connection);
+            throw new IllegalStateException("Unable to read table "+tableName, e);
+        }
+    }
+
+    /**
+     * Потоковая обработка всех объектов таблицы БД.
+     * Объекты создаются по мере чтения строк и передаются обработчику по одному.
+     * Внутри TransactionContext действуют те же ограничения, что и для iterateAll
+     * @param handler обработчик объектов
+     * @throws IllegalStateException таблицу не удалось прочитать или потоковое чтение заняло бы соединение транзакции
+     */
+    public void forEach(RowHandler<T> handler){
+        CloseableIterator<T> iterator = iterateAll();
+        try {
+            while(iterator.hasNext()){
+                handler.handle(iterator.next());
+            }
+        } finally {
+            iterator.close();
+        }
     }
 
     /**
-     * Переводит строку из camelCase в under_score
-     * @param string такаяСтрока
-     * @return такая_строка
+     * @return размер выборки для потокового чтения
      */
-    private String camelToUnderScore(String string){
-        String regex = "([a-z])([A-Z])";
-        String replacement = "$1_$2";
-        return string.replaceAll(regex,replacement).toLowerCase();
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param fetchSize размер выборки для потокового чтения; для MySQL Integer.MIN_VALUE включает построчное чтение
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Итератор по результату запроса, создающий объекты по одной строке.
+     * Закрывает набор данных и возвращает соединение в пул при закрытии или по достижении конца результата.
+     */
+    private class ResultSetIterator implements CloseableIterator<T> {
+        /**
+         * Соединение, удерживаемое итератором
+         */
+        private Connection connection;
+        /**
+         * Результат запроса
+         */
+        private final ResultSet set;
+        /**
+         * Номера столбцов в порядке codecs
+         */
+        private final int[] indexes;
+        /**
+         * Объект, созданный по следующей строке, но ещё не выданный
+         */
+        private T next;
+        /**
+         * Время начала выборки для метрик, нс
+         */
+        private final long start;
+        /**
+         * Число прочитанных строк
+         */
+        private int read = 0;
+
+        ResultSetIterator(Connection connection, ResultSet set, int[] indexes, long start) {
+            this.connection = connection;
+            this.set = set;
+            this.indexes = indexes;
+            this.start = start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next != null) return true;
+            if(connection == null) return false;
+            try {
+                if(set.next()){
+                    next = createObject(set, indexes);
+                    read++;
+                    return true;
+                }
+                close();
+                return false;
+            } catch (SQLException e) {
+                close();
+                throw new IllegalStateException("Unable to read table "+tableName, e);
+            } catch (InvocationTargetException e) {
+                close();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public T next() {
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            T object = next;
+            next = null;
+            return object;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if(connection == null) return;
+            try {
+                set.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            closeConnection(connection);
+            connection = null;
+            finish(DaoMetrics.Operation.ITERATE_ALL, start);
+            rows(read, 0);
+        }
     }
 
     /**
@@ -0,0 +1,100 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тесты, которым нужен сервер MySQL на localhost: общий пул по URL, построчное чтение и загрузка через LOAD DATA.
+ * Запускаются с профилем mysql
+ */
+public class DaoRealisationMySqlTest {
+    DaoRealisation<SampleClass> testSubject;
+
+    public void DropTestTable() throws Exception{
+        String driverName = "com.mysql.jdbc.Driver";
+        Connection connection;
+        Class.forName(driverName);
+        String serverName = "localhost";
+        String schemeName = "test";
+        String url = "jdbc:mysql://" + serverName + "/" + schemeName;
+        String login = "user";
+        String password = "password";
+        connection = DriverManager.getConnection(url, login, password);
+        Statement statement = connection.createStatement();
+        String query = "DROP TABLE sample";
+        try {
+            statement.execute(query);
+        }catch(Exception e){
+            System.out.println("Table not found. That's OK actually");
+        }
+        connection.close();
+        SchemaRegistry.invalidateTables();
+    }
+    @Before
+    public void setUp() throws Exception {
+         DropTestTable();
+         testSubject = new DaoRealisation<SampleClass>("localhost","test","com.mysql.jdbc.Driver","mysql://","user","password",SampleClass.class);
+
+    }
+
+    @Test
+    public void testPoolShared() throws Exception {
+        DaoRealisation<SampleClass> other = new DaoRealisation<SampleClass>("localhost","test","com.mysql.jdbc.Driver","mysql://","user","password",SampleClass.class);
+        Assert.assertTrue("DAOs with the same URL and credentials should share the pool", other.pool == testSubject.pool);
+    }
+
+    @Test
+    public void testStreamingRejectedInTransaction() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        try {
+            testSubject.inTransaction(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    testSubject.iterateAll();
+                    return null;
+                }
+            });
+            Assert.fail("Streaming read should be rejected in a transaction");
+        } catch (IllegalStateException e) {
+            // построчное чтение заняло бы соединение транзакции
+        }
+        testSubject.setFetchSize(100);
+        Integer read = testSubject.inTransaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionContext transaction) {
+                CloseableIterator<SampleClass> iterator = testSubject.iterateAll();
+                int count = 0;
+                while(iterator.hasNext()){
+                    iterator.next();
+                    count++;
+                }
+                return count;
+            }
+        });
+        Assert.assertTrue(read == 1);
+    }
+
+    @Test
+    public void testBulkLoadStreamed() throws Exception {
+        ConnectionPool pool = new ConnectionPool("com.mysql.jdbc.Driver","jdbc:mysql://localhost/test","user","password");
+        pool.setProperty("allowLoadLocalInfile", "true");
+        DaoRealisation<SampleClass> loader = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 1000; i++){
+            objects.add(new SampleClass("Name\t"+i,"Фамилия"+i,i));
+        }
+        objects.add(new SampleClass("Duplicate","Duplicate",5));
+        BulkLoadResult result = loader.bulkLoad(objects.iterator(), true);
+        pool.close();
+        Assert.assertTrue(result.isStreamed());
+        Assert.assertTrue(result.getSubmitted() == 1001);
+        Assert.assertTrue("Rows with existing keys should be skipped", result.getLoaded() == 1000);
+        Assert.assertTrue(testSubject.selectAll().size() == 1000);
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",7)).GetLastName().equals("Фамилия7"));
+    }
+}
@@ -1,43 +1,29 @@
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.*;
 
 public class DaoRealisationTest {
+    ConnectionPool pool;
     DaoRealisation<SampleClass> testSubject;
 
-    public void DropTestTable() throws Exception{
-        String driverName = "com.mysql.jdbc.Driver";
-        Connection connection;
-        Class.forName(driverName);
-        String serverName = "localhost";
-        String schemeName = "test";
-        String url = "jdbc:mysql://" + serverName + "/" + schemeName;
-        String login = "user";
-        String password = "password";
-        connection = DriverManager.getConnection(url, login, password);
-        Statement statement = connection.createStatement();
-        String query = "DROP TABLE sample";
-        try {
-            statement.execute(query);
-        }catch(Exception e){
-            System.out.println("Table not found. That's OK actually");
-        }
-        connection.close();
-    }
     @Before
     public void setUp() throws Exception {
-         DropTestTable();
-         testSubject = new DaoRealisation<SampleClass>("localhost","test","com.mysql.jdbc.Driver","mysql://","user","password",SampleClass.class);
+        pool = H2TestSupport.pool("sample");
+         testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+
+    }
 
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
     }
 
     @Test
@@ -117,4 +103,255 @@ public class DaoRealisationTest {
         Assert.assertTrue("Looked for Regular Client, found "+result.GetName()+" "+result.GetLastName(),result.GetName().equals("Regular")
                 && result.GetLastName().equals("Client") && result.GetId()==21);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConnectionsReturnedToPool() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",34));
+        testSubject.selectByKey(new SampleClass("","",34));
+        testSubject.selectAll();
+        testSubject.deleteByKey(new SampleClass("","",34));
+        Assert.assertTrue("All connections should be returned to the pool", testSubject.pool.getActiveCount() == 0);
+    }
+
+    @Test
+    public void testQuotesPreserved() throws Exception {
+        SampleClass obj = new SampleClass("O'Brien","\"Quoted\" \\ name",7);
+        testSubject.insert(obj);
+        SampleClass result = testSubject.selectByKey(new SampleClass("","",7));
+        Assert.assertTrue("Looked for O'Brien, found "+result.GetName()+" "+result.GetLastName(),result.equals(obj));
+    }
+
+    @Test
+    public void testInsertAll() throws Exception {
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 25; i++){
+            objects.add(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        testSubject.setBatchSize(10);
+        BatchResult<SampleClass> result = testSubject.insertAll(objects);
+        Assert.assertTrue("Expected 25 inserted objects, got "+result.getSucceeded(),result.getSucceeded() == 25);
+        Assert.assertFalse(result.hasFailures());
+        Assert.assertTrue(testSubject.selectAll().size() == 25);
+    }
+
+    @Test
+    public void testInsertAllReportsDuplicates() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",2));
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        objects.add(new SampleClass("Petr","Petrov",1));
+        objects.add(new SampleClass("Ivan","Ivanov",2));
+        objects.add(new SampleClass("Anna","Petrova",3));
+        BatchResult<SampleClass> result = testSubject.insertAll(objects);
+        Assert.assertTrue(result.getSucceeded() == 2);
+        Assert.assertTrue(result.getFailures().size() == 1);
+        Assert.assertTrue(result.getFailures().get(0).getIndex() == 1);
+        Assert.assertTrue(result.getFailures().get(0).isDuplicateKey());
+        Assert.assertTrue(testSubject.selectAll().size() == 3);
+    }
+
+    @Test
+    public void testUpdateAll() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.insert(new SampleClass("Petr","Petrov",2));
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        objects.add(new SampleClass("Johnny","Dow",1));
+        objects.add(new SampleClass("Pyotr","Petrov",2));
+        objects.add(new SampleClass("Nobody","Nobody",3));
+        int updated = testSubject.updateAll(objects);
+        Assert.assertTrue("Expected 2 updated rows, got "+updated,updated == 2);
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",2)).GetName().equals("Pyotr"));
+    }
+
+    @Test
+    public void testIterateAll() throws Exception {
+        SampleClass obj1 = new SampleClass("John","Dow",34);
+        SampleClass obj2 =  new SampleClass("Petr","Petrov",43);
+        testSubject.insert(obj1);
+        testSubject.insert(obj2);
+        List<SampleClass> result = new ArrayList<SampleClass>();
+        CloseableIterator<SampleClass> iterator = testSubject.iterateAll();
+        while(iterator.hasNext()){
+            result.add(iterator.next());
+        }
+        Assert.assertTrue(result.size() == 2);
+        Assert.assertTrue(result.contains(obj1) && result.contains(obj2));
+        Assert.assertTrue("Iterator should release the connection", testSubject.pool.getActiveCount() == 0);
+    }
+
+    @Test
+    public void testIterateAllInTransaction() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.insert(new SampleClass("Petr","Petrov",2));
+        Integer read = testSubject.inTransaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionContext transaction) {
+                int count = 0;
+                CloseableIterator<SampleClass> iterator = testSubject.iterateAll();
+                while(iterator.hasNext()){
+                    SampleClass object = iterator.next();
+                    object.SetLastName("Read");
+                    testSubject.update(object);
+                    count++;
+                }
+                return count;
+            }
+        });
+        Assert.assertTrue(read == 2);
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",2)).GetLastName().equals("Read"));
+    }
+
+    @Test
+    public void testSelectPage() throws Exception {
+        for(int i = 0; i < 5; i++){
+            testSubject.insert(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        Page<SampleClass> page = testSubject.selectPage(new SampleClass("","",1),3);
+        Assert.assertTrue(page.getItems().size() == 3 && page.getItems().get(0).GetId() == 2);
+        Assert.assertTrue(page.getNextKey().GetId() == 4);
+        Assert.assertTrue(testSubject.selectPage(page.getNextKey(),3).getItems().isEmpty());
+    }
+
+    @Test
+    public void testTransactionCommitsOnce() throws Exception {
+        Integer inserted = testSubject.inTransaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionContext transaction) {
+                for(int i = 0; i < 5; i++){
+                    testSubject.insert(new SampleClass("Name"+i,"LastName"+i,i));
+                }
+                Assert.assertTrue("Transaction should hold one connection", testSubject.pool.getActiveCount() == 1);
+                return testSubject.selectAll().size();
+            }
+        });
+        Assert.assertTrue(inserted == 5);
+        Assert.assertTrue(testSubject.selectAll().size() == 5);
+        Assert.assertTrue(testSubject.pool.getActiveCount() == 0);
+    }
+
+    @Test
+    public void testTransactionRollback() throws Exception {
+        try {
+            testSubject.inTransaction(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    testSubject.insert(new SampleClass("John","Dow",1));
+                    throw new IllegalArgumentException("Abort");
+                }
+            });
+            Assert.fail("Exception should be rethrown");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertTrue(testSubject.selectAll().isEmpty());
+        try {
+            testSubject.inTransaction(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    testSubject.insert(new SampleClass("John","Dow",1));
+                    testSubject.insert(new SampleClass("Petr","Petrov",1));
+                    return null;
+                }
+            });
+            Assert.fail("Duplicate key should roll the transaction back");
+        } catch (IllegalStateException e) {
+        }
+        Assert.assertTrue(testSubject.selectAll().isEmpty());
+    }
+
+    @Test
+    public void testUpsert() throws Exception {
+        testSubject.upsert(new SampleClass("John","Dow",1));
+        testSubject.upsert(new SampleClass("John","Petrov",1));
+        Assert.assertTrue(testSubject.selectAll().size() == 1);
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 3; i++){
+            objects.add(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        Assert.assertTrue(testSubject.upsertAll(objects) == 3);
+        Assert.assertTrue(testSubject.selectAll().size() == 3);
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)).GetLastName().equals("LastName1"));
+    }
+
+    @Test
+    public void testMetadataShared() throws Exception {
+        DaoRealisation<SampleClass> another = new DaoRealisation<SampleClass>(testSubject.pool, SampleClass.class);
+        Assert.assertTrue("Metadata should be parsed once per class", another.metadata == testSubject.metadata);
+        Assert.assertTrue(another.codecs == testSubject.codecs);
+        another.insert(new SampleClass("John","Dow",1));
+        Assert.assertTrue(testSubject.selectAll().size() == 1);
+    }
+
+    @Test
+    public void testChangeTracking() throws Exception {
+        DaoRealisation<SampleClass> other = new DaoRealisation<SampleClass>(testSubject.pool, SampleClass.class);
+        testSubject.setChangeTracking(true);
+        testSubject.insert(new SampleClass("John","Dow",1));
+        SampleClass loaded = testSubject.selectByKey(new SampleClass("","",1));
+        other.update(new SampleClass("John","Petrov",1));
+        testSubject.update(loaded);
+        Assert.assertTrue("Unchanged object should not be written",
+                other.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+        loaded.SetName("Ivan");
+        testSubject.update(loaded);
+        SampleClass stored = other.selectByKey(new SampleClass("","",1));
+        Assert.assertTrue("Only the changed column should be written",
+                stored.GetName().equals("Ivan") && stored.GetLastName().equals("Petrov"));
+    }
+
+    @Test
+    public void testChangeTrackingRollback() throws Exception {
+        testSubject.setChangeTracking(true);
+        testSubject.insert(new SampleClass("John","Dow",1));
+        final SampleClass loaded = testSubject.selectByKey(new SampleClass("","",1));
+        loaded.SetLastName("Petrov");
+        try {
+            testSubject.inTransaction(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    testSubject.update(loaded);
+                    transaction.setRollbackOnly();
+                    return null;
+                }
+            });
+        } catch (IllegalStateException e) {
+            // транзакция откачена
+        }
+        testSubject.update(loaded);
+        Assert.assertTrue("Rolled back change should be written again",
+                testSubject.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+    }
+
+    @Test
+    public void testChangeTrackingBatchWrites() throws Exception {
+        testSubject.setChangeTracking(true);
+        testSubject.insert(new SampleClass("x","Dow",1));
+        SampleClass loaded = testSubject.selectByKey(new SampleClass("","",1));
+        loaded.SetName("y");
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        objects.add(loaded);
+        testSubject.updateAll(objects);
+        loaded.SetName("x");
+        testSubject.update(loaded);
+        Assert.assertTrue("Update after updateAll should be written",
+                testSubject.selectByKey(new SampleClass("","",1)).GetName().equals("x"));
+        loaded.SetName("z");
+        testSubject.upsertAll(objects);
+        loaded.SetName("x");
+        testSubject.update(loaded);
+        Assert.assertTrue("Update after upsertAll should be written",
+                testSubject.selectByKey(new SampleClass("","",1)).GetName().equals("x"));
+    }
+
+    @Test
+    public void testChangeTrackingDelete() throws Exception {
+        DaoRealisation<SampleClass> other = new DaoRealisation<SampleClass>(testSubject.pool, SampleClass.class);
+        testSubject.setChangeTracking(true);
+        testSubject.insert(new SampleClass("John","Dow",1));
+        SampleClass loaded = testSubject.selectByKey(new SampleClass("","",1));
+        testSubject.deleteByKey(loaded);
+        other.insert(new SampleClass("Petr","Petrov",1));
+        testSubject.update(loaded);
+        Assert.assertTrue("Deleted object should be written in full",
+                other.selectByKey(new SampleClass("","",1)).equals(loaded));
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Поток байтов, в который объекты сериализуются по мере чтения: значения полей через табуляцию, объекты через перевод строки.
+ * Обратная косая черта, табуляция, переводы строки и нулевой символ экранируются, пустое значение записывается как \N,
+ * логические значения - как 1 и 0. Формат совпадает с форматом по умолчанию LOAD DATA в MySQL.
+ * Объекты берутся из итератора только тогда, когда буфер прочитан, поэтому загрузка не требует
+ * ни временного файла, ни памяти под весь набор объектов.
+ */
+class DelimitedEntityStream extends InputStream {
+    /**
+     * Размер буфера, после заполнения которого сериализация приостанавливается
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Кодировка строковых значений
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Сериализуемые объекты
+     */
+    private final Iterator<?> objects;
+    /**
+     * Преобразователи полей в порядке столбцов
+     */
+    private final ColumnCodec[] codecs;
+    /**
+     * Буфер сериализованных объектов
+     */
+    private byte[] buffer = new byte[BUFFER_SIZE + 1024];
+    /**
+     * Число байтов в буфере
+     */
+    private int limit = 0;
+    /**
+     * Позиция чтения в буфере
+     */
+    private int position = 0;
+    /**
+     * Число сериализованных объектов
+     */
+    private long rows = 0;
+
+    /**
+     * @param objects сериализуемые объекты
+     * @param codecs преобразователи полей в порядке столбцов
+     */
+    DelimitedEntityStream(Iterator<?> objects, ColumnCodec[] codecs) {
+        this.objects = objects;
+        this.codecs = codecs;
+    }
+
+    /**
+     * @return число объектов, сериализованных к этому моменту
+     */
+    long getRows() {
+        return rows;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(position == limit && !fill()) return -1;
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        if(length == 0) return 0;
+        if(position == limit && !fill()) return -1;
+        int count = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, target, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Сериализует следующие объекты в буфер, пока он не заполнится или объекты не кончатся
+     * @return false, если объектов больше нет
+     * @throws IOException аксессор объекта выбросил исключение
+     */
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+        try {
+            while(limit < BUFFER_SIZE && objects.hasNext()){
+                Object object = objects.next();
+                for(int i = 0; i < codecs.length; i++){
+                    if(i > 0) put((byte) '\t');
+                    writeValue(codecs[i].get(object));
+                }
+                put((byte) '\n');
+                rows++;
+            }
+        } catch (InvocationTargetException e) {
+            throw new IOException("Unable to read object fields", e);
+        }
+        return limit > 0;
+    }
+
+    /**
+     * Записывает значение поля в буфер
+     * @param value значение поля
+     */
+    private void writeValue(Object value){
+        if(value == null){
+            put((byte) '\\');
+            put((byte) 'N');
+        } else if(value instanceof Boolean){
+            put((byte) ((Boolean) value ? '1' : '0'));
+        } else if(value instanceof String){
+            writeString((String) value);
+        } else {
+            String number = value.toString();
+            for(int i = 0; i < number.length(); i++){
+                put((byte) number.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Записывает строку в UTF-8, экранируя служебные символы
+     * @param value строка
+     */
+    private void writeString(String value){
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c >= 0x80){
+                byte[] encoded = value.substring(i).getBytes(UTF8);
+                ensureCapacity(encoded.length);
+                // служебные символы ASCII не встречаются внутри многобайтовых последовательностей UTF-8
+                for(byte b: encoded){
+                    if(b == '\\' || b == '\t' || b == '\n' || b == '\r' || b == 0){
+                        escape(b);
+                    } else {
+                        put(b);
+                    }
+                }
+                return;
+            }
+            if(c == '\\' || c == '\t' || c == '\n' || c == '\r' || c == 0){
+                escape((byte) c);
+            } else {
+                put((byte) c);
+            }
+        }
+    }
+
+    /**
+     * Записывает экранированный служебный символ
+     * @param b символ
+     */
+    private void escape(byte b){
+        put((byte) '\\');
+        switch (b){
+            case '\t': put((byte) 't'); break;
+            case '\n': put((byte) 'n'); break;
+            case '\r': put((byte) 'r'); break;
+            case 0: put((byte) '0'); break;
+            default: put(b);
+        }
+    }
+
+    /**
+     * Записывает байт в буфер, расширяя его при необходимости
+     * @param b байт
+     */
+    private void put(byte b){
+        if(limit == buffer.length) ensureCapacity(1);
+        buffer[limit++] = b;
+    }
+
+    /**
+     * Расширяет буфер так, чтобы в него поместилось ещё count байтов
+     * @param count число байтов
+     */
+    private void ensureCapacity(int count){
+        if(limit + count > buffer.length){
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, limit + count));
+        }
+    }
+}
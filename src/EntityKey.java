@@ -0,0 +1,109 @@
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Значение ключа записи: значения ключевых полей объекта в порядке их объявления в классе.
+ * Используется как ключ отображений, возвращаемых DAO; для составного ключа содержит несколько значений.
+ */
+public final class EntityKey {
+    /**
+     * Начальное значение хэша FNV-1a
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /**
+     * Множитель хэша FNV-1a
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /**
+     * Кодировка строковых значений при вычислении стабильного хэша
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Значения ключевых полей
+     */
+    private final Object[] values;
+    /**
+     * Хэш-код, вычисляется при создании
+     */
+    private final int hash;
+
+    /**
+     * Создаёт ключ по значениям ключевых полей
+     * @param values значения ключевых полей в порядке их объявления в классе
+     */
+    public EntityKey(Object... values) {
+        this.values = values.clone();
+        this.hash = Arrays.hashCode(this.values);
+    }
+
+    /**
+     * @return число ключевых полей
+     */
+    public int size(){
+        return values.length;
+    }
+
+    /**
+     * @param index номер ключевого поля
+     * @return значение ключевого поля
+     */
+    public Object get(int index){
+        return values[index];
+    }
+
+    /**
+     * Вычисляет 64-битный хэш FNV-1a значений ключа.
+     * В отличие от hashCode, результат определён через байтовое представление значений и одинаков во всех JVM,
+     * поэтому может использоваться для распределения записей по шардам.
+     * Целые числа любого типа хэшируются как long, поэтому ключи int и long с одинаковым значением совпадают.
+     * @return стабильный хэш ключа
+     */
+    public long stableHash(){
+        long hash = FNV_OFFSET;
+        for(Object value: values){
+            if(value == null){
+                hash = (hash ^ 0xff) * FNV_PRIME;
+            } else if(value instanceof String){
+                for(byte b: ((String) value).getBytes(UTF8)){
+                    hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+                }
+            } else if(value instanceof Boolean){
+                hash = (hash ^ ((Boolean) value ? 1 : 0)) * FNV_PRIME;
+            } else {
+                long bits;
+                if(value instanceof Float || value instanceof Double){
+                    bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                } else if(value instanceof Number){
+                    bits = ((Number) value).longValue();
+                } else {
+                    throw new IllegalArgumentException("Unsupported key value type "+value.getClass().getName());
+                }
+                for(int i = 0; i < 8; i++){
+                    hash = (hash ^ ((bits >>> (i * 8)) & 0xff)) * FNV_PRIME;
+                }
+            }
+            // разделитель значений, чтобы ("ab","c") и ("a","bc") различались
+            hash = (hash ^ 0xfe) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other) return true;
+        if(!(other instanceof EntityKey)) return false;
+        EntityKey key = (EntityKey) other;
+        return hash == key.hash && Arrays.equals(values, key.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return values.length == 1 ? String.valueOf(values[0]) : Arrays.toString(values);
+    }
+}
@@ -0,0 +1,448 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Данные об отображаемом классе, считанные из него один раз: поля, столбцы, преобразователи, конструктор
+ * и текст запросов. Не изменяются после создания и разделяются всеми DAO одного класса через SchemaRegistry.
+ * @param <T> Отображаемый класс.
+ */
+final class EntityMetadata<T> {
+    /**
+     * Класс, проецируемый в БД
+     */
+    final Class<T> tableClass;
+    /**
+     * Имя таблицы
+     */
+    final String tableName;
+    /**
+     * Список неключевых полей класса в формате имя->тип
+     */
+    final Map<String,Class> fields;
+    /**
+     * Список ключевых полей класса в формате имя->тип
+     */
+    final Map<String,Class> keyFields;
+    /**
+     * Имена столбцов таблицы в формате имя поля->имя столбца
+     */
+    final Map<String,String> columns;
+    /**
+     * Является ли ключ таблицы составным
+     */
+    final boolean compositeKey;
+    /**
+     * Преобразователи неключевых полей в порядке fields
+     */
+    ColumnCodec[] fieldCodecs,
+    /**
+     * Преобразователи ключевых полей в порядке keyFields
+     */
+            keyCodecs,
+    /**
+     * Преобразователи всех полей: сначала неключевые, затем ключевые
+     */
+            codecs;
+    /**
+     * Конструктор класса без параметров типа ()Object
+     */
+    MethodHandle constructor;
+    /**
+     * Текст запроса вставки записи
+     */
+    String insertQuery,
+    /**
+     * Текст запроса обновления записи по ключу; null, если в классе нет неключевых полей
+     */
+            updateQuery,
+    /**
+     * Текст запроса удаления записи по ключу
+     */
+            deleteQuery,
+    /**
+     * Текст запроса выборки записи по ключу
+     */
+            selectByKeyQuery,
+    /**
+     * Текст запроса выборки всех записей
+     */
+            selectAllQuery,
+    /**
+     * Текст запроса выборки первой страницы по ключу
+     */
+            firstPageQuery,
+    /**
+     * Текст запроса выборки страницы, следующей за заданным ключом
+     */
+            nextPageQuery,
+    /**
+     * Текст запроса создания таблицы
+     */
+            createTableQuery;
+    /**
+     * Преобразователи всех полей в формате имя поля->преобразователь
+     */
+    final Map<String, ColumnCodec> codecsByField = new HashMap<String, ColumnCodec>();
+    /**
+     * Запросы создания вторичных индексов в формате имя индекса->текст запроса
+     */
+    final Map<String, String> indexQueries = new LinkedHashMap<String, String>();
+    /**
+     * Поля, по которым разрешена выборка selectBy: первые столбцы индексов и первичного ключа.
+     * Остальные поля составного индекса в него не входят: условие только по ним не использует индекс
+     */
+    final Set<String> indexedFields = new HashSet<String>();
+    /**
+     * Поля, значение которых определяет не более одной записи: единственное ключевое поле
+     * и поля с уникальным индексом из одного столбца
+     */
+    final Set<String> uniqueFields = new HashSet<String>();
+    /**
+     * Текст запросов выборки по значению одного поля в формате имя поля->текст запроса
+     */
+    final Map<String, String> finderQueries = new HashMap<String, String>();
+    /**
+     * Текст запросов обновления части неключевых полей в формате номера полей->текст запроса
+     */
+    private final ConcurrentMap<BitSet, String> partialUpdateQueries = new ConcurrentHashMap<BitSet, String>();
+    /**
+     * Максимальное число запоминаемых запросов обновления части полей
+     */
+    private static final int PARTIAL_UPDATE_CACHE_SIZE = 256;
+    /**
+     * Все столбцы таблицы: сначала неключевые, затем ключевые
+     */
+    private final List<String> allColumns = new ArrayList<String>();
+    /**
+     * Ключевые столбцы таблицы
+     */
+    private final List<String> keyColumns = new ArrayList<String>();
+    /**
+     * Текст запросов вставки или обновления записи для каждого диалекта, строится при первом обращении
+     */
+    private final Map<SqlDialect, String> upsertQueries = new EnumMap<SqlDialect, String>(SqlDialect.class);
+
+    /**
+     * Считывает из класса данные о полях и строит текст запросов
+     * @param tableClass класс, проецируемый в БД
+     * @throws IllegalArgumentException класс не удовлетворяет требованиям DaoRealisation
+     */
+    EntityMetadata(Class<T> tableClass){
+
+       if(!tableClass.isAnnotationPresent(DbProjectable.class)){
+          System.err.println("Class has no DbProjectable annotation");
+           throw new IllegalArgumentException("Class has no DbProjectable annotation");
+       }
+        try {
+            tableClass.getConstructor();
+        } catch(NoSuchMethodException e){
+            throw new IllegalArgumentException("Class has no empty public constructor");
+        }
+
+        this.tableClass = tableClass;
+        Map<String,Class> fields = new LinkedHashMap<String, Class>();
+        Map<String,Class> keyFields = new LinkedHashMap<String, Class>();
+        Map<String,String> columns = new HashMap<String, String>();
+        for(Field field: tableClass.getDeclaredFields()){
+            if(Modifier.isStatic(field.getModifiers())){
+                continue;
+            }
+           if(field.isAnnotationPresent(KeyField.class)){
+               keyFields.put(field.getName(),field.getType());
+           }else{
+               fields.put(field.getName(),field.getType());
+           }
+           columns.put(field.getName(),camelToUnderScore(field.getName()));
+           if(!hasAccessors(field)){
+               System.err.println("The field "+field.getName()+" does not have Set- and/or Get- accessors");
+               throw new IllegalArgumentException("The field "+field.getName()+" does not have Set- and/or Get- accessors");
+           }
+        }
+        if(keyFields.isEmpty()){
+            System.err.println("There are no fields marked as keys in the class");
+            throw new IllegalArgumentException("There are no fields marked as keys in the class");
+        }
+        this.fields = Collections.unmodifiableMap(fields);
+        this.keyFields = Collections.unmodifiableMap(keyFields);
+        this.columns = Collections.unmodifiableMap(columns);
+        this.compositeKey = keyFields.size() > 1;
+        resolveCodecs();
+        DbProjectable annotation = (DbProjectable)tableClass.getAnnotation(DbProjectable.class);
+        this.tableName = filterSymbols(annotation.tableName());
+        buildQueries();
+        buildIndexes();
+    }
+
+    /**
+     * Создаёт преобразователи всех полей и находит конструктор класса, чтобы не искать аксессоры при каждом обращении
+     */
+    private void resolveCodecs(){
+        try {
+            fieldCodecs = new ColumnCodec[fields.size()];
+            int i = 0;
+            for(String fieldName: fields.keySet()){
+                fieldCodecs[i++] = ColumnCodec.forField(tableClass.getDeclaredField(fieldName), columns.get(fieldName));
+            }
+            keyCodecs = new ColumnCodec[keyFields.size()];
+            i = 0;
+            for(String fieldName: keyFields.keySet()){
+                keyCodecs[i++] = ColumnCodec.forField(tableClass.getDeclaredField(fieldName), columns.get(fieldName));
+            }
+            codecs = new ColumnCodec[fieldCodecs.length + keyCodecs.length];
+            System.arraycopy(fieldCodecs, 0, codecs, 0, fieldCodecs.length);
+            System.arraycopy(keyCodecs, 0, codecs, fieldCodecs.length, keyCodecs.length);
+            for(ColumnCodec codec: codecs){
+                codecsByField.put(codec.name, codec);
+            }
+            constructor = MethodHandles.lookup().findConstructor(tableClass, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("Unable to resolve fields of "+tableClass.getName(), e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unable to resolve accessors of "+tableClass.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Accessors of "+tableClass.getName()+" are not accessible", e);
+        }
+    }
+
+    /**
+     * Строит по данным о полях класса текст запросов для всех операций.
+     * Значения полей передаются в запросы как параметры.
+     */
+    private void buildQueries(){
+        StringBuilder columnList = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        for(String fieldName: fields.keySet()){
+            columnList.append(columns.get(fieldName)).append(',');
+            placeholders.append("?,");
+            assignments.append(columns.get(fieldName)).append("=?,");
+            allColumns.add(columns.get(fieldName));
+        }
+        for(String fieldName: keyFields.keySet()){
+            columnList.append(columns.get(fieldName)).append(',');
+            placeholders.append("?,");
+            allColumns.add(columns.get(fieldName));
+            keyColumns.add(columns.get(fieldName));
+        }
+        columnList.setLength(columnList.length()-1);
+        placeholders.setLength(placeholders.length()-1);
+        String keyCondition = keyCondition();
+
+        insertQuery = "INSERT INTO "+tableName+" ("+columnList+") VALUES ("+placeholders+")";
+        if(assignments.length() > 0){
+            assignments.setLength(assignments.length()-1);
+            updateQuery = "UPDATE "+tableName+" SET "+assignments+" WHERE "+keyCondition;
+        }
+        deleteQuery = "DELETE FROM "+tableName+" WHERE "+keyCondition;
+        selectByKeyQuery = "SELECT * FROM "+tableName+" WHERE "+keyCondition;
+        selectAllQuery = "SELECT * FROM "+tableName;
+
+        StringBuilder keyList = new StringBuilder();
+        StringBuilder keyPlaceholders = new StringBuilder();
+        for(String column: keyColumns){
+            if(keyList.length() > 0){
+                keyList.append(',');
+                keyPlaceholders.append(',');
+            }
+            keyList.append(column);
+            keyPlaceholders.append('?');
+        }
+        String seek = compositeKey ? "("+keyList+") > ("+keyPlaceholders+")" : keyList+" > ?";
+        firstPageQuery = selectAllQuery+" ORDER BY "+keyList+" LIMIT ?";
+        nextPageQuery = selectAllQuery+" WHERE "+seek+" ORDER BY "+keyList+" LIMIT ?";
+
+        StringBuilder create = new StringBuilder("CREATE TABLE ").append(tableName).append(" (");
+        for(ColumnCodec codec: fieldCodecs){
+            create.append(codec.column).append(' ').append(codec.getSqlType());
+            if(codec.primitive){
+                create.append(" NOT NULL");
+            }
+            create.append(", ");
+        }
+        for(ColumnCodec codec: keyCodecs){
+            create.append(codec.column).append(' ').append(codec.getSqlType()).append(", ");
+        }
+        create.append("PRIMARY KEY(").append(keyList).append("))");
+        createTableQuery = create.toString();
+    }
+
+    /**
+     * Строит по аннотациям Indexed запросы создания вторичных индексов и запросы выборки по индексированным полям
+     */
+    private void buildIndexes(){
+        Map<String, List<String>> members = new LinkedHashMap<String, List<String>>();
+        Set<String> unique = new HashSet<String>();
+        for(Field field: tableClass.getDeclaredFields()){
+            Indexed indexed = field.getAnnotation(Indexed.class);
+            if(indexed == null || Modifier.isStatic(field.getModifiers())) continue;
+            String column = columns.get(field.getName());
+            String indexName = indexed.name().isEmpty()
+                    ? "idx_"+tableName.toLowerCase()+"_"+column
+                    : filterSymbols(indexed.name());
+            List<String> indexFields = members.get(indexName);
+            if(indexFields == null){
+                indexFields = new ArrayList<String>();
+                members.put(indexName, indexFields);
+            }
+            indexFields.add(field.getName());
+            if(indexed.unique()) unique.add(indexName);
+        }
+        for(Map.Entry<String, List<String>> index: members.entrySet()){
+            StringBuilder columnList = new StringBuilder();
+            for(String fieldName: index.getValue()){
+                if(columnList.length() > 0) columnList.append(',');
+                columnList.append(columns.get(fieldName));
+            }
+            indexedFields.add(index.getValue().get(0));
+            boolean isUnique = unique.contains(index.getKey());
+            if(isUnique && index.getValue().size() == 1){
+                uniqueFields.add(index.getValue().get(0));
+            }
+            indexQueries.put(index.getKey(), "CREATE "+(isUnique ? "UNIQUE " : "")+"INDEX "+index.getKey()
+                    +" ON "+tableName+" ("+columnList+")");
+        }
+        indexedFields.add(keyFields.keySet().iterator().next());
+        if(!compositeKey){
+            uniqueFields.addAll(keyFields.keySet());
+        }
+        for(String fieldName: indexedFields){
+            finderQueries.put(fieldName, selectAllQuery+" WHERE "+columns.get(fieldName)+"=?");
+        }
+    }
+
+    /**
+     * Строит условие выборки записи по ключевым полям
+     * @return условие вида key1=? AND key2=?
+     */
+    private String keyCondition(){
+        StringBuilder condition = new StringBuilder();
+        for(String column: keyColumns){
+            if(condition.length() > 0) condition.append(" AND ");
+            condition.append(column).append("=?");
+        }
+        return condition.toString();
+    }
+
+    /**
+     * Возвращает текст запроса вставки или обновления записи для диалекта СУБД
+     * @param dialect диалект СУБД
+     * @return текст запроса; параметры передаются в порядке codecs
+     */
+    String upsertQuery(SqlDialect dialect){
+        synchronized (upsertQueries){
+            String query = upsertQueries.get(dialect);
+            if(query == null){
+                query = dialect.upsertQuery(tableName, allColumns, keyColumns);
+                upsertQueries.put(dialect, query);
+            }
+            return query;
+        }
+    }
+
+    /**
+     * @param dialect диалект СУБД
+     * @return текст запроса потоковой загрузки всех столбцов в порядке codecs; null, если диалект её не поддерживает
+     */
+    String bulkLoadQuery(SqlDialect dialect){
+        return dialect.bulkLoadQuery(tableName, allColumns);
+    }
+
+    /**
+     * @param rows число вставляемых записей
+     * @return текст запроса вставки нескольких записей; параметры - значения всех полей каждой записи в порядке codecs
+     */
+    String multiRowInsertQuery(int rows){
+        int values = insertQuery.lastIndexOf(" VALUES ");
+        String row = insertQuery.substring(values + " VALUES ".length());
+        StringBuilder query = new StringBuilder(insertQuery.length() + row.length() * rows);
+        query.append(insertQuery, 0, values).append(" VALUES ");
+        for(int i = 0; i < rows; i++){
+            if(i > 0) query.append(',');
+            query.append(row);
+        }
+        return query.toString();
+    }
+
+    /**
+     * Возвращает текст запроса обновления заданных неключевых полей.
+     * Текст запросов для часто встречающихся наборов полей запоминается, поэтому совпадает и кэш подготовленных запросов пула
+     * @param changed номера обновляемых полей в порядке fieldCodecs
+     * @return текст запроса; параметры - значения обновляемых полей, затем ключевых
+     */
+    String partialUpdateQuery(BitSet changed){
+        String query = partialUpdateQueries.get(changed);
+        if(query != null) return query;
+        StringBuilder assignments = new StringBuilder();
+        for(int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i+1)){
+            if(assignments.length() > 0) assignments.append(',');
+            assignments.append(fieldCodecs[i].column).append("=?");
+        }
+        query = "UPDATE "+tableName+" SET "+assignments+" WHERE "+keyCondition();
+        if(partialUpdateQueries.size() < PARTIAL_UPDATE_CACHE_SIZE){
+            partialUpdateQueries.putIfAbsent((BitSet) changed.clone(), query);
+        }
+        return query;
+    }
+
+    /**
+     * Проверяет наличие Get и Set аксессоров в классе
+     * @param field поле, для которого проходит проверка
+     * @return true, если у поля есть оба аксессора
+     */
+    static boolean hasAccessors(Field field){
+        Class declaringClass = field.getDeclaringClass();
+        String fieldName = field.getName();
+        fieldName = Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
+        try {
+            Method getMethod = declaringClass.getMethod("Get"+fieldName);
+            if(getMethod.getReturnType() != field.getType()){
+                return false;
+            }
+
+            Method setMethod = declaringClass.getMethod("Set"+fieldName,field.getType());
+            if(!setMethod.getReturnType().getName().equals("void")){
+                return false;
+            }
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Фильтует символы апострофа, кавычек и backslash
+     * @param string
+     * @return
+     */
+    private static String filterSymbols(String string){
+             return string.replaceAll("['\"\\\\]","");
+    }
+
+    /**
+     * Переводит строку из camelCase в under_score
+     * @param string такаяСтрока
+     * @return такая_строка
+     */
+    private static String camelToUnderScore(String string){
+        String regex = "([a-z])([A-Z])";
+        String replacement = "$1_$2";
+        return string.replaceAll(regex,replacement).toLowerCase();
+    }
+}
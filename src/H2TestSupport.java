@@ -0,0 +1,26 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пулы соединений с базами H2 в памяти для тестов, которым не нужен сервер MySQL.
+ * Каждый вызов pool создаёт новую базу, поэтому тесты и их повторные запуски не видят данных друг друга.
+ */
+final class H2TestSupport {
+    /**
+     * Число созданных баз, входит в имя базы
+     */
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private H2TestSupport() {
+    }
+
+    /**
+     * Создаёт пул соединений с новой базой H2 в режиме совместимости с MySQL.
+     * База существует, пока открыт хотя бы один пул к ней
+     * @param name префикс имени базы
+     * @return пул соединений
+     */
+    static ConnectionPool pool(String name){
+        return new ConnectionPool("org.h2.Driver", "jdbc:h2:mem:"+name+databases.incrementAndGet()
+                +";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
@@ -0,0 +1,21 @@
+import java.lang.annotation.*;
+
+/**
+ * Поле, по которому при создании таблицы строится вторичный индекс.
+ * Поля с одинаковым именем индекса образуют составной индекс; столбцы в нём следуют в порядке объявления полей.
+ * По индексированным полям выполняется выборка методами DaoRealisation.selectBy и selectByAll,
+ * по полям с уникальным индексом из одного столбца - методом selectOneBy.
+ */
+@Target(value = ElementType.FIELD)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface Indexed {
+    /**
+     * @return имя индекса; по умолчанию idx_таблица_столбец
+     */
+    String name() default "";
+
+    /**
+     * @return является ли индекс уникальным; составной индекс уникален, если так помечено хотя бы одно его поле
+     */
+    boolean unique() default false;
+}
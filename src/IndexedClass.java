@@ -0,0 +1,62 @@
+/**
+ * Класс с вторичными индексами: уникальным по email и составным по городу и статусу
+ */
+@DbProjectable(tableName = "indexed")
+public class IndexedClass {
+    @KeyField
+    private int id;
+
+    @Indexed(unique = true)
+    private String email;
+
+    @Indexed(name = "idx_indexed_city_status")
+    private String city;
+
+    @Indexed(name = "idx_indexed_city_status")
+    private int status;
+
+    public IndexedClass(int id, String email, String city, int status) {
+        this.id = id;
+        this.email = email;
+        this.city = city;
+        this.status = status;
+    }
+
+    public IndexedClass(){
+        id = 0;
+        email = city = "";
+        status = 0;
+    }
+
+    public int GetId() {
+        return id;
+    }
+
+    public void SetId(int id) {
+        this.id = id;
+    }
+
+    public String GetEmail() {
+        return email;
+    }
+
+    public void SetEmail(String email) {
+        this.email = email;
+    }
+
+    public String GetCity() {
+        return city;
+    }
+
+    public void SetCity(String city) {
+        this.city = city;
+    }
+
+    public int GetStatus() {
+        return status;
+    }
+
+    public void SetStatus(int status) {
+        this.status = status;
+    }
+}
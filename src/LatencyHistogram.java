@@ -0,0 +1,151 @@
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек с корзинами по степеням двойки наносекунд.
+ * Запись значения - несколько атомарных инкрементов без блокировок и выделения памяти;
+ * перцентили вычисляются с точностью до корзины, то есть не хуже чем в два раза.
+ */
+public final class LatencyHistogram {
+    /**
+     * Число корзин: корзина i содержит значения из [2^i, 2^(i+1)) нс
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * Число значений в корзинах
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    /**
+     * Число значений
+     */
+    private final AtomicLong count = new AtomicLong();
+    /**
+     * Сумма значений, нс
+     */
+    private final AtomicLong total = new AtomicLong();
+    /**
+     * Наибольшее значение, нс
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Записывает значение
+     * @param nanos задержка, нс
+     */
+    public void record(long nanos){
+        if(nanos < 0) nanos = 0;
+        buckets.incrementAndGet(nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long current;
+        while(nanos > (current = max.get())){
+            if(max.compareAndSet(current, nanos)) break;
+        }
+    }
+
+    /**
+     * @return число записанных значений
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * Оценивает перцентиль по верхней границе корзины, в которую он попадает
+     * @param quantile доля значений от 0 до 1
+     * @return значение, не меньше которого quantile записанных значений, нс; 0, если значений нет
+     */
+    public long percentile(double quantile){
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if(total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                long upper = i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                return Math.min(upper, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Сбрасывает все значения
+     */
+    public void reset(){
+        for(int i = 0; i < BUCKETS; i++){
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return сводка по записанным значениям в микросекундах
+     */
+    public Snapshot snapshot(){
+        long n = count.get();
+        return new Snapshot(n, n == 0 ? 0 : total.get() / 1000.0 / n,
+                percentile(0.5) / 1000.0, percentile(0.99) / 1000.0, max.get() / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Сводка по гистограмме на момент её создания; отображается в JMX как CompositeData
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double maxMicros;
+
+        @ConstructorProperties({"count", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+        public Snapshot(long count, double meanMicros, double p50Micros, double p99Micros, double maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public double getP50Micros() {
+            return p50Micros;
+        }
+
+        public double getP99Micros() {
+            return p99Micros;
+        }
+
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + meanMicros + "us, p50=" + p50Micros + "us, p99=" + p99Micros
+                    + "us, max=" + maxMicros + "us}";
+        }
+    }
+}
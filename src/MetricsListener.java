@@ -0,0 +1,37 @@
+/**
+ * Получатель измерений DAO, например адаптер к внешней системе метрик.
+ * Методы вызываются в потоке, выполняющем операцию, поэтому должны работать быстро и не бросать исключений.
+ */
+public interface MetricsListener {
+
+    /**
+     * Операция DAO завершена
+     * @param tableName имя таблицы
+     * @param operation операция
+     * @param nanos длительность операции, нс
+     */
+    public void operationCompleted(String tableName, DaoMetrics.Operation operation, long nanos);
+
+    /**
+     * Этап операции завершён
+     * @param tableName имя таблицы
+     * @param phase этап
+     * @param nanos длительность этапа, нс
+     */
+    public void phaseCompleted(String tableName, DaoMetrics.Phase phase, long nanos);
+
+    /**
+     * Прочитаны или записаны строки
+     * @param tableName имя таблицы
+     * @param read число прочитанных строк
+     * @param written число записанных строк
+     */
+    public void rowsProcessed(String tableName, int read, int written);
+
+    /**
+     * Операция завершилась ошибкой
+     * @param tableName имя таблицы
+     * @param error ошибка
+     */
+    public void errorOccurred(String tableName, Exception error);
+}
@@ -0,0 +1,30 @@
+/**
+ * Распределение записей по остатку от деления хэша ключа на число шардов.
+ * Распределение равномерное, но при изменении числа шардов перемещается почти каждая запись.
+ */
+public class ModuloShardStrategy implements ShardStrategy {
+    /**
+     * Число шардов
+     */
+    private final int shards;
+
+    /**
+     * @param shards число шардов
+     */
+    public ModuloShardStrategy(int shards) {
+        if(shards < 1){
+            throw new IllegalArgumentException("Shard count should be positive");
+        }
+        this.shards = shards;
+    }
+
+    @Override
+    public int getShardCount() {
+        return shards;
+    }
+
+    @Override
+    public int shardFor(long keyHash) {
+        return (int) ((keyHash & Long.MAX_VALUE) % shards);
+    }
+}
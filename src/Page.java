@@ -0,0 +1,50 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Страница выборки по ключу.
+ * Содержит объекты страницы, упорядоченные по ключевым полям, и ключ, с которого продолжается выборка.
+ * @param <T> Отображаемый класс.
+ */
+public class Page<T> {
+    /**
+     * Объекты страницы
+     */
+    private final List<T> items;
+    /**
+     * Объект, после ключа которого начинается следующая страница; null, если страница последняя
+     */
+    private final T nextKey;
+
+    /**
+     * @param items объекты страницы
+     * @param nextKey объект, после ключа которого начинается следующая страница; null, если страница последняя
+     */
+    public Page(List<T> items, T nextKey) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * @return объекты страницы
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Возвращает ключ продолжения: его можно сохранить и передать в selectPage, чтобы продолжить выборку,
+     * в том числе после перезапуска
+     * @return объект с ключом последней записи страницы; null, если страница последняя
+     */
+    public T getNextKey() {
+        return nextKey;
+    }
+
+    /**
+     * @return true, если за этой страницей могут следовать другие
+     */
+    public boolean hasNext(){
+        return nextKey != null;
+    }
+}
@@ -0,0 +1,91 @@
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Параметры выполнения запросов DAO в текущем потоке: таймаут запроса и возможность отменить его из другого потока.
+ * DAO регистрирует в контексте каждый выполняемый запрос; отмена контекста вызывает Statement.cancel()
+ * для выполняемого запроса и запрещает выполнение следующих.
+ */
+final class QueryContext {
+    /**
+     * Контекст, установленный для текущего потока
+     */
+    private static final ThreadLocal<QueryContext> CURRENT = new ThreadLocal<QueryContext>();
+
+    /**
+     * Таймаут запроса, с; 0 - без ограничения
+     */
+    private final int timeout;
+    /**
+     * Выполняемый запрос
+     */
+    private volatile Statement statement;
+    /**
+     * Отменён ли контекст
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param timeout таймаут запроса, с; 0 - без ограничения
+     */
+    QueryContext(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return контекст, установленный для текущего потока, или null
+     */
+    static QueryContext current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * Устанавливает контекст для текущего потока
+     * @param context контекст; null снимает контекст
+     */
+    static void set(QueryContext context){
+        if(context == null){
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    /**
+     * Регистрирует запрос перед выполнением и задаёт ему таймаут
+     * @param statement выполняемый запрос
+     * @throws SQLException контекст отменён
+     */
+    void attach(Statement statement) throws SQLException {
+        if(cancelled){
+            throw new SQLException("Query was cancelled");
+        }
+        statement.setQueryTimeout(timeout);
+        this.statement = statement;
+        if(cancelled){
+            statement.cancel();
+        }
+    }
+
+    /**
+     * Отменяет выполняемый запрос и запрещает выполнение следующих
+     */
+    void cancel(){
+        cancelled = true;
+        Statement current = statement;
+        if(current != null){
+            try {
+                current.cancel();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return true, если контекст отменён
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+}
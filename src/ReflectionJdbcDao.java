@@ -1,4 +1,7 @@
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Earlviktor on 30.04.2014.
@@ -81,4 +84,71 @@ public T selectByKey(T key);
 
 public List< T > selectAll();
 
+/**
+ * Пакетная вставка объектов в соответствующую таблицу БД.
+ * Объекты отправляются пакетами, каждый пакет вставляется в отдельной транзакции.
+ * @param objects вставляемые объекты
+ * @return число вставленных объектов и ошибки по объектам, которые вставить не удалось
+ */
+
+public BatchResult<T> insertAll(Collection<T> objects);
+
+/**
+ * Пакетная вставка объектов, получаемых из итератора.
+ * Объекты считываются из итератора по мере отправки пакетов.
+ * @param objects итератор вставляемых объектов
+ * @return число вставленных объектов и ошибки по объектам, которые вставить не удалось
+ */
+
+public BatchResult<T> insertAll(Iterator<T> objects);
+
+/**
+ * Пакетное обновление записей в таблице БД. Идентификация записей происходит по ключевым полям объектов.
+ * Объекты отправляются пакетами, каждый пакет обновляется в отдельной транзакции.
+ * @param objects объекты, поля которых обновляются в записях таблицы
+ * @return число обновлённых записей
+ */
+
+public int updateAll(Collection<T> objects);
+
+/**
+ * Удаление из таблицы БД записей с ключами переданных объектов.
+ * Ключи передаются в запрос списками IN (...), ограниченными размером пакета.
+ * Остальные поля объектов в методе не используются и могут быть не заполнены.
+ * @param keys объекты с заполненными ключевыми полями
+ * @return число удалённых записей
+ */
+
+public int deleteByKeys(Collection<T> keys);
+
+/**
+ * Выборка из таблицы БД объектов по набору ключей.
+ * Ключи передаются в запрос списками IN (...), ограниченными размером пакета.
+ * Остальные поля объектов в методе не используются и могут быть не заполнены.
+ * @param keys объекты с заполненными ключевыми полями
+ * @return отображение ключ->выбранный объект; ключи, для которых записи не найдены, в отображение не входят
+ */
+
+public Map<EntityKey, T> selectByKeys(Collection<T> keys);
+
+/**
+ * Вставка объекта в таблицу БД или, если запись с таким ключом уже существует, обновление этой записи.
+ * Выполняется одним запросом: INSERT ... ON DUPLICATE KEY UPDATE для MySQL, MERGE для H2 и прочих СУБД.
+ * @param object объект, поля которого записываются в таблицу
+ */
+
+public void upsert(T object);
+
+/**
+ * Пакетная вставка или обновление объектов.
+ * Объекты отправляются пакетами, каждый пакет записывается в отдельной транзакции.
+ * Возвращается сумма чисел записей, о которых сообщил драйвер, а не число объектов: MySQL при ON DUPLICATE KEY UPDATE
+ * считает вставленную запись за 1, обновлённую за 2, а запись, значения которой не изменились, за 1
+ * (за 0 при useAffectedRows=true). H2 считает каждую запись за 1.
+ * @param objects объекты, поля которых записываются в таблицу
+ * @return число записей по данным драйвера
+ */
+
+public int upsertAll(Collection<T> objects);
+
         }
\ No newline at end of file
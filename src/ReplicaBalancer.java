@@ -0,0 +1,44 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Способ выбора реплики для чтения.
+ */
+public enum ReplicaBalancer {
+    /**
+     * Реплики выбираются по очереди
+     */
+    ROUND_ROBIN {
+        @Override
+        int choose(AtomicInteger[] outstanding, AtomicInteger sequence) {
+            return (sequence.getAndIncrement() & Integer.MAX_VALUE) % outstanding.length;
+        }
+    },
+    /**
+     * Выбирается реплика с наименьшим числом выполняемых запросов; при равенстве - по очереди
+     */
+    LEAST_OUTSTANDING {
+        @Override
+        int choose(AtomicInteger[] outstanding, AtomicInteger sequence) {
+            int start = (sequence.getAndIncrement() & Integer.MAX_VALUE) % outstanding.length;
+            int best = start;
+            int bestCount = outstanding[start].get();
+            for(int i = 1; i < outstanding.length && bestCount > 0; i++){
+                int candidate = (start + i) % outstanding.length;
+                int count = outstanding[candidate].get();
+                if(count < bestCount){
+                    best = candidate;
+                    bestCount = count;
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * Выбирает реплику
+     * @param outstanding число выполняемых запросов на каждой реплике
+     * @param sequence счётчик выборов
+     * @return номер реплики
+     */
+    abstract int choose(AtomicInteger[] outstanding, AtomicInteger sequence);
+}
@@ -0,0 +1,229 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DAO с разделением чтения и записи между основной БД и репликами.
+ * Запись всегда выполняется в основной БД, чтение распределяется между репликами.
+ * Чтение тоже выполняется в основной БД, если в текущем потоке выполняется транзакция (TransactionContext)
+ * или если поток недавно выполнял запись и задано окно чтения собственных записей.
+ * @param <T> Отображаемый класс.
+ */
+public class ReplicatedDao<T> implements ReflectionJdbcDao<T> {
+    /**
+     * DAO основной БД
+     */
+    private final DaoRealisation<T> primary;
+    /**
+     * DAO реплик
+     */
+    private final List<DaoRealisation<T>> replicas;
+    /**
+     * Способ выбора реплики
+     */
+    private final ReplicaBalancer balancer;
+    /**
+     * Число выполняемых запросов на каждой реплике
+     */
+    private final AtomicInteger[] outstanding;
+    /**
+     * Счётчик выборов реплики
+     */
+    private final AtomicInteger sequence = new AtomicInteger();
+    /**
+     * Время последней записи, выполненной потоком, нс
+     */
+    private final ThreadLocal<Long> lastWrite = new ThreadLocal<Long>();
+    /**
+     * Окно чтения собственных записей, нс; 0 - отключено
+     */
+    private volatile long readYourWritesWindow = 0;
+
+    /**
+     * @param primary DAO основной БД
+     * @param replicas DAO реплик; если список пуст, чтение выполняется в основной БД
+     * @param balancer способ выбора реплики
+     */
+    public ReplicatedDao(DaoRealisation<T> primary, List<DaoRealisation<T>> replicas, ReplicaBalancer balancer){
+        this.primary = primary;
+        this.replicas = new ArrayList<DaoRealisation<T>>(replicas);
+        this.balancer = balancer;
+        this.outstanding = new AtomicInteger[replicas.size()];
+        for(int i = 0; i < outstanding.length; i++){
+            outstanding[i] = new AtomicInteger();
+        }
+    }
+
+    @Override
+    public void insert(T object) {
+        primary.insert(object);
+        written();
+    }
+
+    @Override
+    public BatchResult<T> insertAll(Collection<T> objects) {
+        BatchResult<T> result = primary.insertAll(objects);
+        written();
+        return result;
+    }
+
+    @Override
+    public BatchResult<T> insertAll(Iterator<T> objects) {
+        BatchResult<T> result = primary.insertAll(objects);
+        written();
+        return result;
+    }
+
+    @Override
+    public void update(T object) {
+        primary.update(object);
+        written();
+    }
+
+    @Override
+    public int updateAll(Collection<T> objects) {
+        int updated = primary.updateAll(objects);
+        written();
+        return updated;
+    }
+
+    @Override
+    public void upsert(T object) {
+        primary.upsert(object);
+        written();
+    }
+
+    @Override
+    public int upsertAll(Collection<T> objects) {
+        int written = primary.upsertAll(objects);
+        written();
+        return written;
+    }
+
+    @Override
+    public void deleteByKey(T key) {
+        primary.deleteByKey(key);
+        written();
+    }
+
+    @Override
+    public int deleteByKeys(Collection<T> keys) {
+        int deleted = primary.deleteByKeys(keys);
+        written();
+        return deleted;
+    }
+
+    @Override
+    public T selectByKey(final T key) {
+        return read(new ReadOperation<T, T>() {
+            @Override
+            public T apply(DaoRealisation<T> dao) {
+                return dao.selectByKey(key);
+            }
+        });
+    }
+
+    @Override
+    public List<T> selectAll() {
+        return read(new ReadOperation<T, List<T>>() {
+            @Override
+            public List<T> apply(DaoRealisation<T> dao) {
+                return dao.selectAll();
+            }
+        });
+    }
+
+    @Override
+    public Map<EntityKey, T> selectByKeys(final Collection<T> keys) {
+        return read(new ReadOperation<T, Map<EntityKey, T>>() {
+            @Override
+            public Map<EntityKey, T> apply(DaoRealisation<T> dao) {
+                return dao.selectByKeys(keys);
+            }
+        });
+    }
+
+    /**
+     * Задаёт окно чтения собственных записей: в течение этого времени после записи поток читает из основной БД,
+     * чтобы увидеть свои изменения, ещё не дошедшие до реплик
+     * @param window длительность окна; 0 - отключено
+     * @param unit единица измерения
+     */
+    public void setReadYourWritesWindow(long window, TimeUnit unit) {
+        this.readYourWritesWindow = unit.toNanos(window);
+    }
+
+    /**
+     * @return DAO основной БД
+     */
+    public DaoRealisation<T> getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Выбирает DAO для чтения в текущем потоке. Для выбранной реплики выполняемый запрос не учитывается,
+     * поэтому метод предназначен для операций, отсутствующих в ReflectionJdbcDao (selectBy, criteria и т.п.)
+     * @return DAO основной БД или одной из реплик
+     */
+    public DaoRealisation<T> readDao(){
+        int replica = chooseReplica();
+        return replica < 0 ? primary : replicas.get(replica);
+    }
+
+    /**
+     * Операция чтения, выполняемая на выбранном DAO
+     * @param <T> Отображаемый класс.
+     * @param <R> тип результата
+     */
+    private interface ReadOperation<T, R> {
+        R apply(DaoRealisation<T> dao);
+    }
+
+    /**
+     * Выполняет чтение на выбранной реплике, учитывая его в числе выполняемых запросов реплики
+     * @param operation операция чтения
+     * @param <R> тип результата
+     * @return результат операции
+     */
+    private <R> R read(ReadOperation<T, R> operation){
+        int replica = chooseReplica();
+        if(replica < 0){
+            return operation.apply(primary);
+        }
+        outstanding[replica].incrementAndGet();
+        try {
+            return operation.apply(replicas.get(replica));
+        } finally {
+            outstanding[replica].decrementAndGet();
+        }
+    }
+
+    /**
+     * @return номер реплики для чтения; -1, если читать нужно из основной БД
+     */
+    private int chooseReplica(){
+        if(replicas.isEmpty() || TransactionContext.current() != null) return -1;
+        long window = readYourWritesWindow;
+        if(window > 0){
+            Long written = lastWrite.get();
+            if(written != null){
+                if(System.nanoTime() - written < window) return -1;
+                lastWrite.remove();
+            }
+        }
+        return balancer.choose(outstanding, sequence);
+    }
+
+    /**
+     * Запоминает время записи, если задано окно чтения собственных записей
+     */
+    private void written(){
+        if(readYourWritesWindow > 0){
+            lastWrite.set(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ReplicatedDaoTest {
+    List<ConnectionPool> pools;
+    DaoRealisation<SampleClass> primary;
+    List<DaoRealisation<SampleClass>> replicas;
+    ReplicatedDao<SampleClass> testSubject;
+
+    /**
+     * Основная БД и реплики - отдельные базы H2 без репликации, поэтому по результату чтения видно, откуда оно выполнено
+     */
+    @Before
+    public void setUp() throws Exception {
+        pools = new ArrayList<ConnectionPool>();
+        replicas = new ArrayList<DaoRealisation<SampleClass>>();
+        for(int i = 0; i < 3; i++){
+            ConnectionPool pool = H2TestSupport.pool("replica");
+            pools.add(pool);
+            DaoRealisation<SampleClass> dao = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+            if(i == 0){
+                primary = dao;
+            } else {
+                replicas.add(dao);
+            }
+        }
+        testSubject = new ReplicatedDao<SampleClass>(primary, replicas, ReplicaBalancer.ROUND_ROBIN);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for(ConnectionPool pool: pools){
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testReadsGoToReplicas() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        Assert.assertTrue(primary.selectByKey(new SampleClass("","",1)) != null);
+        Assert.assertTrue("Read should be served by a replica", testSubject.selectByKey(new SampleClass("","",1)) == null);
+        replicas.get(0).insert(new SampleClass("Replica","One",2));
+        int found = 0;
+        for(int i = 0; i < 4; i++){
+            if(testSubject.selectByKey(new SampleClass("","",2)) != null) found++;
+        }
+        Assert.assertTrue("Round robin should alternate replicas", found == 2);
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        testSubject.setReadYourWritesWindow(1, TimeUnit.MINUTES);
+        testSubject.insert(new SampleClass("John","Dow",1));
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",1)) != null);
+    }
+
+    @Test
+    public void testTransactionUsesPrimary() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        SampleClass found = new TransactionContext().execute(new TransactionCallback<SampleClass>() {
+            @Override
+            public SampleClass doInTransaction(TransactionContext transaction) {
+                return testSubject.selectByKey(new SampleClass("","",1));
+            }
+        });
+        Assert.assertTrue(found != null);
+    }
+}
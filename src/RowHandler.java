@@ -0,0 +1,12 @@
+/**
+ * Обработчик объектов, получаемых из БД по одному по мере чтения результата запроса.
+ * @param <T> Отображаемый класс.
+ */
+public interface RowHandler<T> {
+
+    /**
+     * Обрабатывает очередной объект
+     * @param object объект, созданный по строке результата запроса
+     */
+    public void handle(T object);
+}
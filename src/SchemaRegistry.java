@@ -0,0 +1,247 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Общий для процесса реестр отображаемых классов и таблиц.
+ * Хранит считанные из классов данные (EntityMetadata), поэтому повторное создание DAO для известного класса
+ * не обращается к reflection, и запоминает таблицы, наличие которых уже проверено: проверка и CREATE TABLE
+ * выполняются при первом обращении DAO к БД, один раз на пул соединений и таблицу.
+ * Вместе с таблицей создаются отсутствующие в ней вторичные индексы полей, помеченных Indexed.
+ */
+public final class SchemaRegistry {
+    /**
+     * Данные об отображаемых классах в формате класс->данные
+     */
+    private static final ConcurrentMap<Class<?>, EntityMetadata<?>> METADATA =
+            new ConcurrentHashMap<Class<?>, EntityMetadata<?>>();
+    /**
+     * Проверки таблиц в формате URL БД и имя таблицы->проверка
+     */
+    private static final ConcurrentMap<String, FutureTask<Void>> TABLES =
+            new ConcurrentHashMap<String, FutureTask<Void>>();
+
+    private SchemaRegistry() {
+    }
+
+    /**
+     * Возвращает данные об отображаемом классе, при первом обращении считывает их из класса
+     * @param tableClass класс, проецируемый в БД
+     * @param <T> Отображаемый класс.
+     * @return данные о классе
+     * @throws IllegalArgumentException класс не удовлетворяет требованиям DaoRealisation
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntityMetadata<T> metadata(Class<T> tableClass){
+        EntityMetadata<T> metadata = (EntityMetadata<T>) METADATA.get(tableClass);
+        if(metadata == null){
+            metadata = new EntityMetadata<T>(tableClass);
+            EntityMetadata<T> existing = (EntityMetadata<T>) METADATA.putIfAbsent(tableClass, metadata);
+            if(existing != null) metadata = existing;
+        }
+        return metadata;
+    }
+
+    /**
+     * Проверяет наличие таблицы и её вторичных индексов и создаёт их, если они отсутствуют.
+     * Для каждой пары пул-таблица проверка выполняется один раз; параллельные вызовы ждут её завершения.
+     * Если проверка завершилась ошибкой, следующий вызов выполняет её заново
+     * @param pool пул соединений с БД
+     * @param metadata данные об отображаемом классе
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException таблицу не удалось проверить или создать
+     */
+    static void ensureTable(final ConnectionPool pool, final EntityMetadata<?> metadata)
+            throws ClassNotFoundException, SQLException {
+        String key = pool.getUrl()+" "+metadata.tableName;
+        FutureTask<Void> check = TABLES.get(key);
+        if(check == null){
+            FutureTask<Void> created = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    createTable(pool, metadata);
+                    return null;
+                }
+            });
+            check = TABLES.putIfAbsent(key, created);
+            if(check == null){
+                check = created;
+                created.run();
+            }
+        }
+        try {
+            check.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while checking table "+metadata.tableName, e);
+        } catch (ExecutionException e) {
+            TABLES.remove(key, check);
+            Throwable cause = e.getCause();
+            if(cause instanceof SQLException) throw (SQLException) cause;
+            if(cause instanceof ClassNotFoundException) throw (ClassNotFoundException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * Считывает данные о классах и проверяет их таблицы параллельно, например при запуске приложения.
+     * Возвращает управление, когда все проверки завершены
+     * @param pool пул соединений с БД
+     * @param classes классы, проецируемые в БД
+     * @param threads число потоков; не больше размера пула соединений имеет смысл
+     * @throws IllegalArgumentException один из классов не удовлетворяет требованиям DaoRealisation
+     * @throws IllegalStateException таблицу одного из классов не удалось проверить или создать
+     */
+    public static void initialize(final ConnectionPool pool, Collection<? extends Class<?>> classes, int threads){
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> checks = new ArrayList<Future<Void>>();
+            for(final Class<?> tableClass: classes){
+                checks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ensureTable(pool, metadata(tableClass));
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> check: checks){
+                try {
+                    check.get();
+                } catch (ExecutionException e) {
+                    if(e.getCause() instanceof IllegalArgumentException) throw (IllegalArgumentException) e.getCause();
+                    throw new IllegalStateException("Unable to initialize schema", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while initializing schema", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Забывает результаты проверки таблиц, например после удаления таблиц вне DAO.
+     * Следующее обращение каждого вновь созданного DAO к БД проверит таблицу заново
+     */
+    public static void invalidateTables(){
+        TABLES.clear();
+    }
+
+    /**
+     * Создаёт таблицу и вторичные индексы, если их нет в БД
+     * @param pool пул соединений с БД
+     * @param metadata данные об отображаемом классе
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException таблицу не удалось проверить или создать
+     */
+    private static void createTable(ConnectionPool pool, EntityMetadata<?> metadata) throws ClassNotFoundException, SQLException {
+        Connection connection = pool.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                if(!tableExists(connection, metadata.tableName)){
+                    try {
+                        statement.executeUpdate(metadata.createTableQuery);
+                    } catch (SQLException e) {
+                        // таблицу могли создать одновременно из другого процесса
+                        if(!tableExists(connection, metadata.tableName)) throw e;
+                    }
+                }
+                if(metadata.indexQueries.isEmpty()) return;
+                Set<String> existing = indexNames(connection, metadata.tableName);
+                for(Map.Entry<String, String> index: metadata.indexQueries.entrySet()){
+                    if(existing.contains(index.getKey().toLowerCase())) continue;
+                    try {
+                        statement.executeUpdate(index.getValue());
+                    } catch (SQLException e) {
+                        if(!indexNames(connection, metadata.tableName).contains(index.getKey().toLowerCase())) throw e;
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Возвращает имена индексов таблицы по метаданным БД
+     * @param connection соединение
+     * @param tableName имя таблицы
+     * @return имена индексов в нижнем регистре
+     * @throws SQLException метаданные не удалось получить
+     */
+    private static Set<String> indexNames(Connection connection, String tableName) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Set<String> names = new HashSet<String>();
+        ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), null, storedName(metaData, tableName), false, true);
+        try {
+            while(indexes.next()){
+                String name = indexes.getString("INDEX_NAME");
+                if(name != null) names.add(name.toLowerCase());
+            }
+        } finally {
+            indexes.close();
+        }
+        return names;
+    }
+
+    /**
+     * @param metaData метаданные БД
+     * @param name имя таблицы в запросах
+     * @return имя таблицы в регистре, в котором СУБД хранит идентификаторы
+     * @throws SQLException метаданные не удалось получить
+     */
+    private static String storedName(DatabaseMetaData metaData, String name) throws SQLException {
+        if(metaData.storesUpperCaseIdentifiers()){
+            return name.toUpperCase();
+        }
+        if(metaData.storesLowerCaseIdentifiers()){
+            return name.toLowerCase();
+        }
+        return name;
+    }
+
+    /**
+     * Проверяет наличие таблицы в текущей схеме соединения по метаданным БД
+     * @param connection соединение
+     * @param tableName имя таблицы
+     * @return true, если таблица существует
+     * @throws SQLException метаданные не удалось получить
+     */
+    private static boolean tableExists(Connection connection, String tableName) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String name = storedName(metaData, tableName);
+        String escape = metaData.getSearchStringEscape();
+        if(escape != null){
+            name = name.replace("_", escape+"_").replace("%", escape+"%");
+        }
+        ResultSet tables = metaData.getTables(connection.getCatalog(), null, name, new String[]{"TABLE"});
+        try {
+            return tables.next();
+        } finally {
+            tables.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Распределение записей по шардам по хэшу ключа.
+ * Хэш ключа вычисляется EntityKey.stableHash() и не зависит от JVM, поэтому запись всегда попадает в один и тот же шард.
+ */
+public interface ShardStrategy {
+
+    /**
+     * @return число шардов
+     */
+    public int getShardCount();
+
+    /**
+     * Определяет шард записи
+     * @param keyHash стабильный хэш ключа записи
+     * @return номер шарда от 0 до getShardCount()-1
+     */
+    public int shardFor(long keyHash);
+}
@@ -0,0 +1,417 @@
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * DAO, распределяющий записи таблицы по нескольким БД (шардам).
+ * Каждый шард обслуживается своим DaoRealisation со своим сервером и схемой.
+ * Операции над одним объектом направляются в шард, выбранный стратегией по стабильному хэшу ключевых полей;
+ * пакетные операции разбиваются по шардам, а выборки всех записей выполняются на всех шардах параллельно
+ * и объединяются.
+ * Внутри TransactionContext операции над шардами выполняются по очереди в вызывающем потоке:
+ * транзакция привязана к потоку, и в потоках пула запросы выполнялись бы вне её и фиксировались сразу.
+ * @param <T> Отображаемый класс.
+ */
+public class ShardedDao<T> implements ReflectionJdbcDao<T>, Closeable {
+    /**
+     * DAO шардов в порядке номеров шардов
+     */
+    private final List<DaoRealisation<T>> shards;
+    /**
+     * Стратегия распределения записей
+     */
+    private final ShardStrategy strategy;
+    /**
+     * Пул потоков для параллельных операций
+     */
+    private final ExecutorService executor;
+    /**
+     * Создан ли пул потоков этим DAO
+     */
+    private final boolean ownsExecutor;
+
+    /**
+     * Создаёт DAO с собственным пулом потоков, по одному потоку на шард
+     * @param shards DAO шардов в порядке номеров шардов
+     * @param strategy стратегия распределения записей
+     */
+    public ShardedDao(List<DaoRealisation<T>> shards, ShardStrategy strategy){
+        this(shards, strategy, Executors.newFixedThreadPool(shards.size(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ShardedDao");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true);
+    }
+
+    /**
+     * Создаёт DAO, выполняющий параллельные операции в заданном пуле потоков.
+     * Пул не останавливается при закрытии DAO
+     * @param shards DAO шардов в порядке номеров шардов
+     * @param strategy стратегия распределения записей
+     * @param executor пул потоков
+     */
+    public ShardedDao(List<DaoRealisation<T>> shards, ShardStrategy strategy, ExecutorService executor){
+        this(shards, strategy, executor, false);
+    }
+
+    private ShardedDao(List<DaoRealisation<T>> shards, ShardStrategy strategy, ExecutorService executor, boolean ownsExecutor){
+        if(shards.isEmpty() || strategy.getShardCount() != shards.size()){
+            if(ownsExecutor) executor.shutdown();
+            throw new IllegalArgumentException("Strategy expects "+strategy.getShardCount()+" shards, got "+shards.size());
+        }
+        this.shards = new ArrayList<DaoRealisation<T>>(shards);
+        this.strategy = strategy;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    @Override
+    public void insert(T object) {
+        shardOf(object).insert(object);
+    }
+
+    @Override
+    public void update(T object) {
+        shardOf(object).update(object);
+    }
+
+    @Override
+    public void deleteByKey(T key) {
+        shardOf(key).deleteByKey(key);
+    }
+
+    @Override
+    public T selectByKey(T key) {
+        return shardOf(key).selectByKey(key);
+    }
+
+    @Override
+    public void upsert(T object) {
+        shardOf(object).upsert(object);
+    }
+
+    /**
+     * Выборка всех записей со всех шардов. Шарды опрашиваются параллельно, результаты следуют в порядке номеров шардов
+     * @return список объектов
+     */
+    @Override
+    public List<T> selectAll() {
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>();
+        for(final DaoRealisation<T> shard: shards){
+            tasks.add(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    return shard.selectAll();
+                }
+            });
+        }
+        List<T> results = new ArrayList<T>();
+        for(List<T> part: scatter(tasks)){
+            results.addAll(part);
+        }
+        return results;
+    }
+
+    @Override
+    public BatchResult<T> insertAll(Collection<T> objects) {
+        List<List<Integer>> positions = new ArrayList<List<Integer>>(shards.size());
+        List<List<T>> parts = split(objects, positions);
+        List<Callable<BatchResult<T>>> tasks = new ArrayList<Callable<BatchResult<T>>>();
+        for(int i = 0; i < shards.size(); i++){
+            final DaoRealisation<T> shard = shards.get(i);
+            final List<T> part = parts.get(i);
+            tasks.add(new Callable<BatchResult<T>>() {
+                @Override
+                public BatchResult<T> call() {
+                    return part.isEmpty() ? new BatchResult<T>() : shard.insertAll(part);
+                }
+            });
+        }
+        List<BatchResult<T>> shardResults = scatter(tasks);
+        BatchResult<T> result = new BatchResult<T>();
+        for(int i = 0; i < shardResults.size(); i++){
+            BatchResult<T> shardResult = shardResults.get(i);
+            result.addSucceeded(shardResult.getSucceeded());
+            for(BatchResult.Failure<T> failure: shardResult.getFailures()){
+                result.addFailure(positions.get(i).get(failure.getIndex()), failure.getObject(), failure.getCause());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Пакетная вставка объектов из итератора. Объекты считываются порциями размера пакета первого шарда,
+     * каждая порция распределяется по шардам и вставляется параллельно
+     * @param objects итератор вставляемых объектов
+     * @return число вставленных объектов и ошибки по объектам, которые вставить не удалось
+     */
+    @Override
+    public BatchResult<T> insertAll(Iterator<T> objects) {
+        BatchResult<T> result = new BatchResult<T>();
+        int chunkSize = shards.get(0).getBatchSize() * shards.size();
+        List<T> chunk = new ArrayList<T>();
+        int offset = 0;
+        while(objects.hasNext()){
+            chunk.add(objects.next());
+            if(chunk.size() == chunkSize || !objects.hasNext()){
+                BatchResult<T> chunkResult = insertAll(chunk);
+                result.addSucceeded(chunkResult.getSucceeded());
+                for(BatchResult.Failure<T> failure: chunkResult.getFailures()){
+                    result.addFailure(offset + failure.getIndex(), failure.getObject(), failure.getCause());
+                }
+                offset += chunk.size();
+                chunk = new ArrayList<T>();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int updateAll(Collection<T> objects) {
+        return sum(objects, new ShardOperation<T>() {
+            @Override
+            public int apply(DaoRealisation<T> shard, List<T> part) {
+                return shard.updateAll(part);
+            }
+        });
+    }
+
+    @Override
+    public int upsertAll(Collection<T> objects) {
+        return sum(objects, new ShardOperation<T>() {
+            @Override
+            public int apply(DaoRealisation<T> shard, List<T> part) {
+                return shard.upsertAll(part);
+            }
+        });
+    }
+
+    @Override
+    public int deleteByKeys(Collection<T> keys) {
+        return sum(keys, new ShardOperation<T>() {
+            @Override
+            public int apply(DaoRealisation<T> shard, List<T> part) {
+                return shard.deleteByKeys(part);
+            }
+        });
+    }
+
+    /**
+     * Выборка объектов по набору ключей. Ключи разбиваются по шардам, шарды опрашиваются параллельно
+     * @param keys объекты с заполненными ключевыми полями
+     * @return отображение ключ->выбранный объект в порядке переданных ключей
+     */
+    @Override
+    public Map<EntityKey, T> selectByKeys(Collection<T> keys) {
+        List<List<T>> parts = split(keys);
+        List<Callable<Map<EntityKey, T>>> tasks = new ArrayList<Callable<Map<EntityKey, T>>>();
+        for(int i = 0; i < shards.size(); i++){
+            final DaoRealisation<T> shard = shards.get(i);
+            final List<T> part = parts.get(i);
+            tasks.add(new Callable<Map<EntityKey, T>>() {
+                @Override
+                public Map<EntityKey, T> call() {
+                    return part.isEmpty() ? new LinkedHashMap<EntityKey, T>() : shard.selectByKeys(part);
+                }
+            });
+        }
+        Map<EntityKey, T> found = new LinkedHashMap<EntityKey, T>();
+        for(Map<EntityKey, T> part: scatter(tasks)){
+            found.putAll(part);
+        }
+        Map<EntityKey, T> results = new LinkedHashMap<EntityKey, T>();
+        for(T key: keys){
+            EntityKey entityKey = keyOf(key);
+            T object = found.get(entityKey);
+            if(object != null) results.put(entityKey, object);
+        }
+        return results;
+    }
+
+    /**
+     * @param key объект с заполненными ключевыми полями
+     * @return номер шарда, в котором хранится запись
+     */
+    public int shardIndexOf(T key){
+        return strategy.shardFor(keyOf(key).stableHash());
+    }
+
+    /**
+     * @return DAO шардов в порядке номеров шардов
+     */
+    public List<DaoRealisation<T>> getShards() {
+        return new ArrayList<DaoRealisation<T>>(shards);
+    }
+
+    /**
+     * Останавливает собственный пул потоков DAO. Пул, переданный в конструкторе, не останавливается
+     */
+    @Override
+    public void close() {
+        if(ownsExecutor){
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Операция над частью набора объектов, относящейся к одному шарду
+     * @param <T> Отображаемый класс.
+     */
+    private interface ShardOperation<T> {
+        /**
+         * @param shard DAO шарда
+         * @param part объекты шарда
+         * @return число обработанных записей
+         */
+        int apply(DaoRealisation<T> shard, List<T> part);
+    }
+
+    /**
+     * Разбивает объекты по шардам, выполняет операцию на шардах параллельно и суммирует результаты
+     * @param objects объекты
+     * @param operation операция
+     * @return общее число обработанных записей
+     */
+    private int sum(Collection<T> objects, final ShardOperation<T> operation){
+        List<List<T>> parts = split(objects);
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for(int i = 0; i < shards.size(); i++){
+            final DaoRealisation<T> shard = shards.get(i);
+            final List<T> part = parts.get(i);
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return part.isEmpty() ? 0 : operation.apply(shard, part);
+                }
+            });
+        }
+        int total = 0;
+        for(Integer count: scatter(tasks)){
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Выполняет задачи параллельно и ждёт их завершения; внутри TransactionContext выполняет их по очереди в текущем потоке.
+     * Если одна из задач выбросила исключение, оно пробрасывается после завершения остальных
+     * @param tasks задачи, по одной на шард
+     * @param <R> тип результата
+     * @return результаты в порядке задач
+     */
+    private <R> List<R> scatter(List<Callable<R>> tasks){
+        if(TransactionContext.current() != null){
+            return runInCurrentThread(tasks);
+        }
+        List<Future<R>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shards", e);
+        }
+        List<R> results = new ArrayList<R>(futures.size());
+        for(Future<R> future: futures){
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shards", e);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                if(e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new IllegalStateException("Shard operation failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Выполняет задачи по очереди в текущем потоке, чтобы они остались в его транзакции.
+     * Если одна из задач выбросила исключение, оно пробрасывается после завершения остальных
+     * @param tasks задачи, по одной на шард
+     * @param <R> тип результата
+     * @return результаты в порядке задач
+     */
+    private <R> List<R> runInCurrentThread(List<Callable<R>> tasks){
+        List<R> results = new ArrayList<R>(tasks.size());
+        RuntimeException failure = null;
+        for(Callable<R> task: tasks){
+            try {
+                results.add(task.call());
+            } catch (RuntimeException e) {
+                if(failure == null) failure = e;
+            } catch (Exception e) {
+                if(failure == null) failure = new IllegalStateException("Shard operation failed", e);
+            }
+        }
+        if(failure != null) throw failure;
+        return results;
+    }
+
+    /**
+     * Разбивает объекты по шардам
+     * @param objects объекты
+     * @return списки объектов в порядке номеров шардов
+     */
+    private List<List<T>> split(Collection<T> objects){
+        return split(objects, null);
+    }
+
+    /**
+     * Разбивает объекты по шардам и запоминает, на каких местах входного набора стоят объекты каждого шарда
+     * @param objects объекты
+     * @param positions пустой список, в который записываются номера объектов во входном наборе
+     *                  в порядке номеров шардов; null, если номера не нужны
+     * @return списки объектов в порядке номеров шардов
+     */
+    private List<List<T>> split(Collection<T> objects, List<List<Integer>> positions){
+        List<List<T>> parts = new ArrayList<List<T>>(shards.size());
+        for(int i = 0; i < shards.size(); i++){
+            parts.add(new ArrayList<T>());
+            if(positions != null) positions.add(new ArrayList<Integer>());
+        }
+        int index = 0;
+        for(T object: objects){
+            int shard = shardIndexOf(object);
+            parts.get(shard).add(object);
+            if(positions != null) positions.get(shard).add(index);
+            index++;
+        }
+        return parts;
+    }
+
+    /**
+     * @param key объект с заполненными ключевыми полями
+     * @return DAO шарда, в котором хранится запись
+     */
+    private DaoRealisation<T> shardOf(T key){
+        return shards.get(shardIndexOf(key));
+    }
+
+    /**
+     * @param object объект с заполненными ключевыми полями
+     * @return ключ объекта
+     */
+    private EntityKey keyOf(T object){
+        try {
+            return shards.get(0).keyOf(object);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to read key of "+object, e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ShardedDaoTest {
+    List<ConnectionPool> pools;
+    ShardedDao<SampleClass> testSubject;
+
+    @Before
+    public void setUp() throws Exception {
+        pools = new ArrayList<ConnectionPool>();
+        List<DaoRealisation<SampleClass>> shards = new ArrayList<DaoRealisation<SampleClass>>();
+        for(int i = 0; i < 3; i++){
+            ConnectionPool pool = H2TestSupport.pool("shard");
+            pools.add(pool);
+            shards.add(new DaoRealisation<SampleClass>(pool, SampleClass.class));
+        }
+        testSubject = new ShardedDao<SampleClass>(shards, new ConsistentHashShardStrategy(3));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testSubject.close();
+        for(ConnectionPool pool: pools){
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        for(int i = 0; i < 30; i++){
+            testSubject.insert(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        for(int i = 0; i < 30; i++){
+            SampleClass key = new SampleClass("","",i);
+            DaoRealisation<SampleClass> shard = testSubject.getShards().get(testSubject.shardIndexOf(key));
+            Assert.assertTrue("Object should be stored in its shard", shard.selectByKey(key) != null);
+            Assert.assertTrue(testSubject.selectByKey(key).GetName().equals("Name"+i));
+        }
+        for(DaoRealisation<SampleClass> shard: testSubject.getShards()){
+            Assert.assertTrue("Every shard should receive objects", !shard.selectAll().isEmpty());
+        }
+    }
+
+    @Test
+    public void testScatterGather() throws Exception {
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 30; i++){
+            objects.add(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        objects.add(new SampleClass("Duplicate","Duplicate",5));
+        BatchResult<SampleClass> result = testSubject.insertAll(objects);
+        Assert.assertTrue(result.getSucceeded() == 30);
+        Assert.assertTrue(result.getFailures().size() == 1 && result.getFailures().get(0).getIndex() == 30);
+        Assert.assertTrue(testSubject.selectAll().size() == 30);
+        List<SampleClass> keys = new ArrayList<SampleClass>();
+        keys.add(new SampleClass("","",7));
+        keys.add(new SampleClass("","",3));
+        Map<EntityKey, SampleClass> selected = testSubject.selectByKeys(keys);
+        Assert.assertTrue(selected.size() == 2 && selected.keySet().iterator().next().equals(new EntityKey(7)));
+        Assert.assertTrue(testSubject.deleteByKeys(keys) == 2);
+        Assert.assertTrue(testSubject.selectAll().size() == 28);
+    }
+
+    @Test
+    public void testBulkOperationsJoinTransaction() throws Exception {
+        final List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 10; i++){
+            objects.add(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        try {
+            new TransactionContext().execute(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    Assert.assertTrue(testSubject.insertAll(objects).getSucceeded() == 10);
+                    Assert.assertTrue("Rows should be visible inside the transaction", testSubject.selectAll().size() == 10);
+                    transaction.setRollbackOnly();
+                    return null;
+                }
+            });
+            Assert.fail("Transaction should be rolled back");
+        } catch (IllegalStateException e) {
+            // транзакция откачена
+        }
+        Assert.assertTrue("Rolled back rows should not be stored", testSubject.selectAll().isEmpty());
+    }
+
+    @Test
+    public void testStableHash() throws Exception {
+        Assert.assertTrue(new EntityKey(1).stableHash() == new EntityKey(1L).stableHash());
+        Assert.assertTrue(new EntityKey("ab","c").stableHash() != new EntityKey("a","bc").stableHash());
+        Assert.assertTrue(new ModuloShardStrategy(3).shardFor(new EntityKey(42).stableHash())
+                == new ModuloShardStrategy(3).shardFor(new EntityKey(42).stableHash()));
+    }
+}
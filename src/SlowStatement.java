@@ -0,0 +1,93 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись журнала медленных запросов: текст запроса, сводка параметров, время выполнения, число строк и план.
+ */
+public class SlowStatement {
+    /**
+     * Имя таблицы DAO
+     */
+    private final String tableName;
+    /**
+     * Текст запроса
+     */
+    private final String sql;
+    /**
+     * Сводка значений параметров
+     */
+    private final String parameters;
+    /**
+     * Время выполнения, нс
+     */
+    private final long elapsedNanos;
+    /**
+     * Число прочитанных или изменённых строк
+     */
+    private final int rows;
+    /**
+     * План выполнения; null, если план не строился
+     */
+    private final String plan;
+
+    /**
+     * @param tableName имя таблицы DAO
+     * @param sql текст запроса
+     * @param parameters сводка значений параметров
+     * @param elapsedNanos время выполнения, нс
+     * @param rows число прочитанных или изменённых строк
+     * @param plan план выполнения; null, если план не строился
+     */
+    public SlowStatement(String tableName, String sql, String parameters, long elapsedNanos, int rows, String plan) {
+        this.tableName = tableName;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.elapsedNanos = elapsedNanos;
+        this.rows = rows;
+        this.plan = plan;
+    }
+
+    /**
+     * @param plan план выполнения
+     * @return копия записи с планом выполнения
+     */
+    SlowStatement withPlan(String plan){
+        return new SlowStatement(tableName, sql, parameters, elapsedNanos, rows, plan);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return время выполнения, мс
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+
+    @Override
+    public String toString() {
+        return "Slow statement on "+tableName+": "+getElapsedMillis()+" ms, "+rows+" rows: "+sql
+                +" "+parameters+(plan == null ? "" : "\n"+plan);
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Получатель записей журнала медленных запросов.
+ */
+public interface SlowStatementHandler {
+
+    /**
+     * Обрабатывает запись о медленном запросе. Если для запроса строится план, вызывается в потоке построения плана
+     * @param statement запись о запросе
+     */
+    public void handle(SlowStatement statement);
+}
@@ -0,0 +1,342 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал медленных запросов DAO.
+ * Запрос, выполнявшийся дольше порога, записывается вместе со сводкой параметров, временем и числом строк.
+ * Чтобы журнал сам не создавал нагрузку, записывается лишь доля sampleRate медленных запросов
+ * и не более maxPerMinute записей в минуту; остальные только подсчитываются.
+ * Если включено построение плана, EXPLAIN выполняется в отдельном фоновом потоке на отдельном соединении из пула,
+ * вне транзакции вызывающего потока; при переполнении очереди планов запись делается без плана.
+ */
+public class SlowStatementLog {
+    /**
+     * Максимальная длина строкового значения параметра в сводке
+     */
+    private static final int MAX_VALUE_LENGTH = 32;
+    /**
+     * Максимальное число параметров в сводке
+     */
+    private static final int MAX_VALUES = 20;
+    /**
+     * Длина окна ограничения частоты записей, нс
+     */
+    private static final long WINDOW = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * Получатель записей по умолчанию: печать в System.err
+     */
+    private static final SlowStatementHandler PRINTER = new SlowStatementHandler() {
+        @Override
+        public void handle(SlowStatement statement) {
+            System.err.println(statement);
+        }
+    };
+
+    /**
+     * Порог времени выполнения, нс
+     */
+    private final long thresholdNanos;
+    /**
+     * Доля медленных запросов, которые записываются
+     */
+    private volatile double sampleRate = 1.0;
+    /**
+     * Максимальное число записей в минуту
+     */
+    private volatile int maxPerMinute = 60;
+    /**
+     * Строить ли план выполнения
+     */
+    private volatile boolean explain = false;
+    /**
+     * Таймаут запроса плана, с
+     */
+    private volatile int explainTimeout = 5;
+    /**
+     * Получатель записей
+     */
+    private volatile SlowStatementHandler handler = PRINTER;
+    /**
+     * Начало текущего окна ограничения частоты, нс
+     */
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    /**
+     * Число записей в текущем окне
+     */
+    private final AtomicInteger inWindow = new AtomicInteger();
+    /**
+     * Число записанных медленных запросов
+     */
+    private final AtomicLong captured = new AtomicLong();
+    /**
+     * Число медленных запросов, не записанных из-за выборки или ограничения частоты
+     */
+    private final AtomicLong skipped = new AtomicLong();
+    /**
+     * Фоновый поток построения планов, создаётся при первом запросе плана
+     */
+    private ThreadPoolExecutor explainer;
+
+    /**
+     * @param threshold порог времени выполнения запроса
+     * @param unit единица измерения порога
+     */
+    public SlowStatementLog(long threshold, TimeUnit unit) {
+        if(threshold < 0){
+            throw new IllegalArgumentException("Threshold should not be negative");
+        }
+        this.thresholdNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * @return порог времени выполнения, нс
+     */
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * @return доля медленных запросов, которые записываются
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param sampleRate доля медленных запросов, которые записываются, от 0 до 1
+     */
+    public void setSampleRate(double sampleRate) {
+        if(sampleRate < 0 || sampleRate > 1){
+            throw new IllegalArgumentException("Sample rate should be between 0 and 1");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @return максимальное число записей в минуту
+     */
+    public int getMaxPerMinute() {
+        return maxPerMinute;
+    }
+
+    /**
+     * @param maxPerMinute максимальное число записей в минуту
+     */
+    public void setMaxPerMinute(int maxPerMinute) {
+        if(maxPerMinute < 1){
+            throw new IllegalArgumentException("Rate limit should be positive");
+        }
+        this.maxPerMinute = maxPerMinute;
+    }
+
+    /**
+     * @return true, если для медленных запросов строится план выполнения
+     */
+    public boolean isExplain() {
+        return explain;
+    }
+
+    /**
+     * @param explain строить ли план выполнения медленных запросов
+     */
+    public void setExplain(boolean explain) {
+        this.explain = explain;
+    }
+
+    /**
+     * @param explainTimeout таймаут запроса плана, с
+     */
+    public void setExplainTimeout(int explainTimeout) {
+        this.explainTimeout = explainTimeout;
+    }
+
+    /**
+     * @param handler получатель записей; по умолчанию записи печатаются в System.err
+     */
+    public void setHandler(SlowStatementHandler handler) {
+        this.handler = handler == null ? PRINTER : handler;
+    }
+
+    /**
+     * @return число записанных медленных запросов
+     */
+    public long getCapturedCount() {
+        return captured.get();
+    }
+
+    /**
+     * @return число медленных запросов, не записанных из-за выборки или ограничения частоты
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Решает, записывать ли запрос: он должен превысить порог, попасть в выборку и уложиться в ограничение частоты
+     * @param elapsedNanos время выполнения запроса, нс
+     * @return true, если запрос нужно записать
+     */
+    boolean shouldCapture(long elapsedNanos){
+        if(elapsedNanos < thresholdNanos) return false;
+        double rate = sampleRate;
+        if(rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate){
+            skipped.incrementAndGet();
+            return false;
+        }
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if(now - start >= WINDOW && windowStart.compareAndSet(start, now)){
+            inWindow.set(0);
+        }
+        if(inWindow.incrementAndGet() > maxPerMinute){
+            skipped.incrementAndGet();
+            return false;
+        }
+        captured.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Записывает медленный запрос; если включено построение плана, строит его в фоновом потоке
+     * @param pool пул соединений, на котором выполнялся запрос
+     * @param statement запись о запросе
+     * @param values значения параметров запроса; null, если план для запроса не строится
+     */
+    void capture(final ConnectionPool pool, final SlowStatement statement, final Object[] values){
+        final String explainQuery = pool.getDialect().explainQuery(statement.getSql());
+        if(!explain || values == null || explainQuery == null){
+            handler.handle(statement);
+            return;
+        }
+        try {
+            explainer().execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.handle(statement.withPlan(explain(pool, explainQuery, values)));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            handler.handle(statement);
+        }
+    }
+
+    /**
+     * Останавливает фоновый поток построения планов
+     */
+    public synchronized void close(){
+        if(explainer != null){
+            explainer.shutdown();
+            explainer = null;
+        }
+    }
+
+    /**
+     * @return фоновый поток построения планов с ограниченной очередью
+     */
+    private synchronized ThreadPoolExecutor explainer(){
+        if(explainer == null){
+            explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(16),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "SlowStatementLog-explain");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return explainer;
+    }
+
+    /**
+     * Выполняет запрос плана на отдельном соединении
+     * @param pool пул соединений
+     * @param explainQuery текст запроса плана
+     * @param values значения параметров
+     * @return план выполнения, по строке результата на строку текста; описание ошибки, если план получить не удалось
+     */
+    private String explain(ConnectionPool pool, String explainQuery, Object[] values){
+        Connection connection = null;
+        try {
+            connection = pool.getConnection();
+            PreparedStatement statement = connection.prepareStatement(explainQuery);
+            try {
+                statement.setQueryTimeout(explainTimeout);
+                for(int i = 0; i < values.length; i++){
+                    statement.setObject(i+1, values[i]);
+                }
+                ResultSet set = statement.executeQuery();
+                ResultSetMetaData metaData = set.getMetaData();
+                StringBuilder plan = new StringBuilder();
+                while(set.next()){
+                    if(plan.length() > 0) plan.append('\n');
+                    for(int i = 1; i <= metaData.getColumnCount(); i++){
+                        if(metaData.getColumnCount() > 1){
+                            if(i > 1) plan.append(", ");
+                            plan.append(metaData.getColumnLabel(i)).append('=');
+                        }
+                        plan.append(set.getString(i));
+                    }
+                }
+                set.close();
+                return plan.toString();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            return "EXPLAIN failed: "+e.getMessage();
+        } catch (ClassNotFoundException e) {
+            return "EXPLAIN failed: "+e.getMessage();
+        } finally {
+            if(connection != null){
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Строит сводку значений параметров: длинные строки обрезаются, список ограничивается MAX_VALUES значениями
+     * @param values значения параметров
+     * @return сводка вида [1, 'abc', NULL]
+     */
+    static String describe(Object[] values){
+        StringBuilder summary = new StringBuilder("[");
+        for(int i = 0; i < values.length && i < MAX_VALUES; i++){
+            if(i > 0) summary.append(", ");
+            Object value = values[i];
+            if(value == null){
+                summary.append("NULL");
+            } else if(value instanceof String){
+                String string = (String) value;
+                summary.append('\'');
+                if(string.length() > MAX_VALUE_LENGTH){
+                    summary.append(string, 0, MAX_VALUE_LENGTH).append("...(").append(string.length()).append(" chars)");
+                } else {
+                    summary.append(string);
+                }
+                summary.append('\'');
+            } else {
+                summary.append(value);
+            }
+        }
+        if(values.length > MAX_VALUES){
+            summary.append(", ... ").append(values.length).append(" values");
+        }
+        return summary.append(']').toString();
+    }
+}
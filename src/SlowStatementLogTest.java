@@ -0,0 +1,100 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SlowStatementLogTest {
+    ConnectionPool pool;
+    DaoRealisation<SampleClass> testSubject;
+    SlowStatementLog log;
+    List<SlowStatement> logged;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("slow");
+        testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        for(int i = 0; i < 5; i++){
+            testSubject.insert(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        logged = new CopyOnWriteArrayList<SlowStatement>();
+        log = new SlowStatementLog(0, TimeUnit.MILLISECONDS);
+        log.setHandler(new SlowStatementHandler() {
+            @Override
+            public void handle(SlowStatement statement) {
+                logged.add(statement);
+            }
+        });
+        testSubject.setSlowStatementLog(log);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        log.close();
+        pool.close();
+    }
+
+    @Test
+    public void testCapture() throws Exception {
+        Assert.assertTrue(testSubject.selectByKey(new SampleClass("","",3)) != null);
+        Assert.assertTrue(testSubject.selectAll().size() == 5);
+        Assert.assertTrue(logged.size() == 2);
+        SlowStatement byKey = logged.get(0);
+        Assert.assertTrue(byKey.getSql().equals(testSubject.selectByKeyQuery));
+        Assert.assertTrue(byKey.getParameters().equals("[3]"));
+        Assert.assertTrue(byKey.getRows() == 1 && byKey.getPlan() == null);
+        Assert.assertTrue(logged.get(1).getRows() == 5);
+    }
+
+    @Test
+    public void testThreshold() throws Exception {
+        SlowStatementLog strict = new SlowStatementLog(1, TimeUnit.HOURS);
+        testSubject.setSlowStatementLog(strict);
+        testSubject.selectAll();
+        Assert.assertTrue(strict.getCapturedCount() == 0 && strict.getSkippedCount() == 0);
+    }
+
+    @Test
+    public void testSamplingAndRateLimit() throws Exception {
+        log.setMaxPerMinute(2);
+        for(int i = 0; i < 5; i++){
+            testSubject.selectAll();
+        }
+        Assert.assertTrue(logged.size() == 2);
+        Assert.assertTrue(log.getCapturedCount() == 2 && log.getSkippedCount() == 3);
+        log.setSampleRate(0);
+        testSubject.selectAll();
+        Assert.assertTrue(logged.size() == 2 && log.getSkippedCount() == 4);
+    }
+
+    @Test
+    public void testExplain() throws Exception {
+        final CountDownLatch explained = new CountDownLatch(1);
+        log.setHandler(new SlowStatementHandler() {
+            @Override
+            public void handle(SlowStatement statement) {
+                logged.add(statement);
+                explained.countDown();
+            }
+        });
+        log.setExplain(true);
+        testSubject.selectBy("id", 2);
+        Assert.assertTrue(explained.await(10, TimeUnit.SECONDS));
+        String plan = logged.get(0).getPlan();
+        Assert.assertTrue(plan != null && !plan.startsWith("EXPLAIN failed"));
+    }
+
+    @Test
+    public void testDescribe() throws Exception {
+        StringBuilder longValue = new StringBuilder();
+        for(int i = 0; i < 40; i++){
+            longValue.append('x');
+        }
+        String summary = SlowStatementLog.describe(new Object[]{1, null, longValue.toString()});
+        Assert.assertTrue(summary.startsWith("[1, NULL, 'xxx") && summary.endsWith("...(40 chars)']"));
+    }
+}
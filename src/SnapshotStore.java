@@ -0,0 +1,155 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Снимки значений неключевых полей объектов, загруженных или записанных DAO.
+ * Объекты сравниваются по ссылке, а не по equals, и удерживаются слабыми ссылками:
+ * снимок удаляется, когда объект становится недостижим.
+ * Внутри TransactionContext снимок запоминается только после фиксации транзакции, а при откате
+ * снимки затронутых объектов удаляются: иначе следующий update счёл бы неизменённым объект, запись которого откачена.
+ */
+final class SnapshotStore {
+    /**
+     * Преобразователи неключевых полей
+     */
+    private final ColumnCodec[] fieldCodecs;
+    /**
+     * Снимки в формате объект->значения полей в порядке fieldCodecs
+     */
+    private final Map<IdentityKey, Object[]> snapshots = new HashMap<IdentityKey, Object[]>();
+    /**
+     * Очередь ссылок на собранные объекты
+     */
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+
+    /**
+     * @param fieldCodecs преобразователи неключевых полей
+     */
+    SnapshotStore(ColumnCodec[] fieldCodecs) {
+        this.fieldCodecs = fieldCodecs;
+    }
+
+    /**
+     * Запоминает текущие значения полей объекта. Внутри транзакции значения запоминаются при её фиксации
+     * @param object объект
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    void remember(final Object object) throws InvocationTargetException {
+        final Object[] values = new Object[fieldCodecs.length];
+        for(int i = 0; i < fieldCodecs.length; i++){
+            values[i] = fieldCodecs[i].get(object);
+        }
+        TransactionContext transaction = TransactionContext.current();
+        if(transaction == null){
+            put(object, values);
+            return;
+        }
+        transaction.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                put(object, values);
+            }
+        });
+        transaction.afterRollback(new Runnable() {
+            @Override
+            public void run() {
+                forget(object);
+            }
+        });
+    }
+
+    /**
+     * @param object объект
+     * @param values значения полей объекта в порядке fieldCodecs
+     */
+    private void put(Object object, Object[] values){
+        synchronized (snapshots){
+            purge();
+            snapshots.put(new IdentityKey(object, collected), values);
+        }
+    }
+
+    /**
+     * Удаляет снимок объекта; следующий update запишет объект целиком
+     * @param object объект
+     */
+    void forget(Object object){
+        synchronized (snapshots){
+            snapshots.remove(new IdentityKey(object, null));
+        }
+    }
+
+    /**
+     * Сравнивает значения полей объекта с запомненными
+     * @param object объект
+     * @return номера изменённых полей в порядке fieldCodecs; null, если снимка объекта нет
+     * @throws InvocationTargetException Get-аксессор выбросил исключение
+     */
+    BitSet changedFields(Object object) throws InvocationTargetException {
+        Object[] values;
+        synchronized (snapshots){
+            values = snapshots.get(new IdentityKey(object, null));
+        }
+        if(values == null) return null;
+        BitSet changed = new BitSet(fieldCodecs.length);
+        for(int i = 0; i < fieldCodecs.length; i++){
+            Object value = fieldCodecs[i].get(object);
+            if(value == null ? values[i] != null : !value.equals(values[i])){
+                changed.set(i);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return число запомненных объектов
+     */
+    int size(){
+        synchronized (snapshots){
+            purge();
+            return snapshots.size();
+        }
+    }
+
+    /**
+     * Удаляет снимки собранных объектов
+     */
+    private void purge(){
+        Object reference;
+        while((reference = collected.poll()) != null){
+            snapshots.remove(reference);
+        }
+    }
+
+    /**
+     * Слабая ссылка на объект, сравниваемая по идентичности объекта
+     */
+    private static final class IdentityKey extends WeakReference<Object> {
+        /**
+         * Хэш-код объекта по идентичности
+         */
+        private final int hash;
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(this == other) return true;
+            if(!(other instanceof IdentityKey)) return false;
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey) other).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
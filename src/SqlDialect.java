@@ -0,0 +1,275 @@
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Диалект СУБД, определяемый по URL базы данных.
+ * Задаёт специфичные для драйвера параметры соединения и чтения результатов, а также синтаксис запросов,
+ * не входящих в общую часть SQL.
+ */
+public enum SqlDialect {
+    /**
+     * MySQL: подготовленные запросы компилируются и кэшируются на стороне сервера,
+     * пакеты вставок переписываются в многострочные INSERT ... VALUES
+     */
+    MYSQL {
+        @Override
+        void configure(Properties properties) {
+            setDefault(properties, "useServerPrepStmts", "true");
+            setDefault(properties, "cachePrepStmts", "true");
+            setDefault(properties, "rewriteBatchedStatements", "true");
+        }
+
+        @Override
+        int getStreamingFetchSize() {
+            return Integer.MIN_VALUE;
+        }
+
+        @Override
+        boolean isStreamingExclusive(int fetchSize) {
+            return fetchSize == Integer.MIN_VALUE;
+        }
+
+        @Override
+        String upsertQuery(String table, List<String> columns, List<String> keyColumns) {
+            StringBuilder assignments = new StringBuilder();
+            for(String column: columns){
+                if(keyColumns.contains(column)) continue;
+                if(assignments.length() > 0) assignments.append(',');
+                assignments.append(column).append("=VALUES(").append(column).append(')');
+            }
+            if(assignments.length() == 0){
+                String key = keyColumns.get(0);
+                assignments.append(key).append('=').append(key);
+            }
+            return "INSERT INTO "+table+" ("+join(columns, "")+") VALUES ("+placeholders(columns.size())+")"
+                    +" ON DUPLICATE KEY UPDATE "+assignments;
+        }
+
+        @Override
+        String explainQuery(String sql) {
+            return "EXPLAIN "+sql;
+        }
+
+        @Override
+        String bulkLoadQuery(String table, List<String> columns) {
+            return "LOAD DATA LOCAL INFILE 'stream' INTO TABLE "+table+" CHARACTER SET utf8mb4"
+                    +" FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+                    +" ("+join(columns, "")+")";
+        }
+
+        @Override
+        void setBulkLoadStream(Statement statement, InputStream stream) throws SQLException {
+            statement.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(stream);
+        }
+
+        @Override
+        String dropIndexQuery(String table, String index) {
+            return "ALTER TABLE "+table+" DROP INDEX "+index;
+        }
+
+        @Override
+        String relaxChecksQuery(boolean relaxed) {
+            return relaxed ? "SET unique_checks=0, foreign_key_checks=0" : "SET unique_checks=1, foreign_key_checks=1";
+        }
+    },
+    /**
+     * H2: запрос MERGE с явным перечислением ключевых столбцов
+     */
+    H2 {
+        @Override
+        void configure(Properties properties) {
+        }
+
+        @Override
+        int getStreamingFetchSize() {
+            return 1000;
+        }
+
+        @Override
+        String upsertQuery(String table, List<String> columns, List<String> keyColumns) {
+            return "MERGE INTO "+table+" ("+join(columns, "")+") KEY ("+join(keyColumns, "")+")"
+                    +" VALUES ("+placeholders(columns.size())+")";
+        }
+
+        @Override
+        String explainQuery(String sql) {
+            return "EXPLAIN "+sql;
+        }
+    },
+    /**
+     * Прочие СУБД, параметры драйвера не меняются, используется MERGE из стандарта SQL
+     */
+    GENERIC {
+        @Override
+        void configure(Properties properties) {
+        }
+
+        @Override
+        int getStreamingFetchSize() {
+            return 1000;
+        }
+
+        @Override
+        String upsertQuery(String table, List<String> columns, List<String> keyColumns) {
+            StringBuilder condition = new StringBuilder();
+            StringBuilder assignments = new StringBuilder();
+            for(String column: columns){
+                if(keyColumns.contains(column)){
+                    if(condition.length() > 0) condition.append(" AND ");
+                    condition.append("t.").append(column).append("=s.").append(column);
+                } else {
+                    if(assignments.length() > 0) assignments.append(',');
+                    assignments.append(column).append("=s.").append(column);
+                }
+            }
+            String list = join(columns, "");
+            return "MERGE INTO "+table+" t USING (VALUES ("+placeholders(columns.size())+")) s ("+list+")"
+                    +" ON ("+condition+")"
+                    +(assignments.length() > 0 ? " WHEN MATCHED THEN UPDATE SET "+assignments : "")
+                    +" WHEN NOT MATCHED THEN INSERT ("+list+") VALUES ("+join(columns, "s.")+")";
+        }
+
+        @Override
+        String explainQuery(String sql) {
+            return null;
+        }
+    };
+
+    /**
+     * Определяет диалект по URL базы данных
+     * @param url URL в формате jdbc:префикс...
+     * @return диалект СУБД
+     */
+    public static SqlDialect forUrl(String url){
+        if(url != null && url.startsWith("jdbc:mysql:")){
+            return MYSQL;
+        }
+        if(url != null && url.startsWith("jdbc:h2:")){
+            return H2;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Дополняет параметры соединения настройками, специфичными для драйвера.
+     * Параметры, заданные явно, не перезаписываются.
+     * @param properties параметры соединения
+     */
+    abstract void configure(Properties properties);
+
+    /**
+     * Возвращает размер выборки, при котором драйвер читает результат запроса порциями, не загружая его целиком.
+     * Драйвер MySQL переходит в режим построчного чтения при размере выборки Integer.MIN_VALUE
+     * @return размер выборки для потокового чтения
+     */
+    abstract int getStreamingFetchSize();
+
+    /**
+     * Сообщает, занимает ли потоковое чтение соединение целиком: пока результат не прочитан до конца,
+     * драйвер MySQL при размере выборки Integer.MIN_VALUE не выполняет на этом соединении других запросов
+     * @param fetchSize размер выборки
+     * @return true, если другие запросы на соединении невозможны до закрытия результата
+     */
+    boolean isStreamingExclusive(int fetchSize){
+        return false;
+    }
+
+    /**
+     * Строит запрос, который вставляет запись или, если запись с таким ключом уже существует, обновляет её.
+     * Параметры запроса - значения столбцов в порядке columns
+     * @param table имя таблицы
+     * @param columns все столбцы таблицы
+     * @param keyColumns ключевые столбцы
+     * @return текст запроса
+     */
+    abstract String upsertQuery(String table, List<String> columns, List<String> keyColumns);
+
+    /**
+     * Строит запрос, возвращающий план выполнения запроса. Параметры запроса плана те же, что у исходного запроса
+     * @param sql текст исходного запроса
+     * @return текст запроса плана; null, если СУБД не поддерживает общий синтаксис плана
+     */
+    abstract String explainQuery(String sql);
+
+    /**
+     * Строит запрос потоковой загрузки строк в формате: поля через табуляцию, строки через перевод строки,
+     * спецсимволы экранируются обратной косой чертой, пустое значение - \N.
+     * Данные передаются запросу через setBulkLoadStream
+     * @param table имя таблицы
+     * @param columns столбцы в порядке полей строки
+     * @return текст запроса; null, если СУБД не поддерживает потоковую загрузку
+     */
+    String bulkLoadQuery(String table, List<String> columns){
+        return null;
+    }
+
+    /**
+     * Передаёт запросу поток данных для загрузки
+     * @param statement запрос, которым выполняется bulkLoadQuery
+     * @param stream данные для загрузки
+     * @throws SQLException драйвер не поддерживает передачу потока
+     */
+    void setBulkLoadStream(Statement statement, InputStream stream) throws SQLException {
+        throw new SQLException("Bulk load is not supported by "+this);
+    }
+
+    /**
+     * @param table имя таблицы
+     * @param index имя индекса
+     * @return текст запроса удаления индекса
+     */
+    String dropIndexQuery(String table, String index){
+        return "DROP INDEX "+index;
+    }
+
+    /**
+     * Строит запрос, отключающий или включающий проверки уникальности и внешних ключей в текущем сеансе
+     * @param relaxed true - отключить проверки
+     * @return текст запроса; null, если СУБД не позволяет отключить проверки в сеансе
+     */
+    String relaxChecksQuery(boolean relaxed){
+        return null;
+    }
+
+    /**
+     * Задаёт параметр, если он ещё не задан
+     * @param properties параметры соединения
+     * @param name имя параметра
+     * @param value значение параметра
+     */
+    private static void setDefault(Properties properties, String name, String value){
+        if(properties.getProperty(name) == null){
+            properties.setProperty(name, value);
+        }
+    }
+
+    /**
+     * @param columns столбцы
+     * @param prefix префикс каждого столбца
+     * @return список столбцов через запятую
+     */
+    private static String join(List<String> columns, String prefix){
+        StringBuilder list = new StringBuilder();
+        for(String column: columns){
+            if(list.length() > 0) list.append(',');
+            list.append(prefix).append(column);
+        }
+        return list.toString();
+    }
+
+    /**
+     * @param count число параметров
+     * @return список вида ?,?,?
+     */
+    private static String placeholders(int count){
+        StringBuilder list = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            if(i > 0) list.append(',');
+            list.append('?');
+        }
+        return list.toString();
+    }
+}
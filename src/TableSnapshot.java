@@ -0,0 +1,313 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Снимок таблицы в двоичном файле для быстрого заполнения кэшей после перезапуска.
+ * Файл хранит схему таблицы (имена, типы и признак ключа столбцов, полученные из DbProjectable и KeyField)
+ * и значения столбцов отдельными блоками: значения одного столбца идут подряд.
+ * Снимок читается через отображение файла в память (FileChannel.map) без обращения к БД;
+ * снимок, схема которого не совпадает с текущим классом, не загружается.
+ *
+ * Формат, все числа big-endian:
+ * <pre>
+ * int      MAGIC
+ * short    VERSION
+ * long     время создания, мс
+ * string   имя таблицы
+ * short    число столбцов
+ *          для каждого столбца: string имя, string тип поля, byte 1 - ключевой
+ * int      число строк
+ *          для каждого столбца: long смещение блока от начала файла, long длина блока
+ *          блоки столбцов
+ * </pre>
+ * string - short длина и байты UTF-8. В блоке столбца ссылочного типа перед каждым значением записан байт 0 для null и 1 иначе;
+ * строка записывается как int длина и байты UTF-8, логическое значение - как байт.
+ */
+public final class TableSnapshot {
+    /**
+     * Признак файла снимка, "DAOS"
+     */
+    static final int MAGIC = 0x44414F53;
+    /**
+     * Версия формата
+     */
+    static final short VERSION = 1;
+    /**
+     * Кодировка строк
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TableSnapshot() {
+    }
+
+    /**
+     * Записывает все записи таблицы в файл снимка. Записи читаются потоково через iterateAll,
+     * файл сначала пишется во временный файл рядом и затем заменяет прежний снимок
+     * @param dao DAO таблицы
+     * @param file файл снимка
+     * @param <T> отображаемый класс
+     * @return число записанных строк
+     * @throws IOException файл не удалось записать
+     */
+    public static <T> int export(DaoRealisation<T> dao, File file) throws IOException {
+        ColumnCodec[] codecs = dao.metadata.codecs;
+        ByteArrayOutputStream[] blocks = new ByteArrayOutputStream[codecs.length];
+        DataOutputStream[] columns = new DataOutputStream[codecs.length];
+        for(int i = 0; i < codecs.length; i++){
+            blocks[i] = new ByteArrayOutputStream();
+            columns[i] = new DataOutputStream(blocks[i]);
+        }
+        int rows = 0;
+        CloseableIterator<T> iterator = dao.iterateAll();
+        try {
+            while(iterator.hasNext()){
+                T object = iterator.next();
+                for(int i = 0; i < codecs.length; i++){
+                    writeValue(columns[i], codecs[i], codecs[i].get(object));
+                }
+                rows++;
+            }
+        } catch (InvocationTargetException e) {
+            throw new IOException("Unable to read fields of "+dao.tableClass.getName(), e);
+        } finally {
+            iterator.close();
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeLong(System.currentTimeMillis());
+        writeString(header, dao.tableName);
+        header.writeShort(codecs.length);
+        for(int i = 0; i < codecs.length; i++){
+            writeString(header, codecs[i].column);
+            writeString(header, codecs[i].type.getName());
+            header.writeByte(isKey(dao.metadata, codecs[i]) ? 1 : 0);
+        }
+        header.writeInt(rows);
+        long offset = headerBytes.size() + 16L * codecs.length;
+        for(ByteArrayOutputStream block: blocks){
+            header.writeLong(offset);
+            header.writeLong(block.size());
+            offset += block.size();
+        }
+
+        File temporary = new File(file.getPath()+".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            headerBytes.writeTo(output);
+            for(ByteArrayOutputStream block: blocks){
+                block.writeTo(output);
+            }
+        } finally {
+            output.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    /**
+     * Загружает объекты из файла снимка
+     * @param tableClass отображаемый класс
+     * @param file файл снимка
+     * @param <T> отображаемый класс
+     * @return объекты в порядке их записи в снимок
+     * @throws IOException файл не удалось прочитать или он не является снимком поддерживаемой версии
+     * @throws IllegalStateException схема снимка не совпадает со схемой класса
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> load(Class<T> tableClass, File file) throws IOException {
+        EntityMetadata<T> metadata = SchemaRegistry.metadata(tableClass);
+        ColumnCodec[] codecs = metadata.codecs;
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if(buffer.getInt() != MAGIC){
+                    throw new IOException(file+" is not a table snapshot");
+                }
+                short version = buffer.getShort();
+                if(version != VERSION){
+                    throw new IOException("Unsupported snapshot version "+version+" in "+file);
+                }
+                buffer.getLong();
+                checkSchema(metadata, file, buffer);
+                int rows = buffer.getInt();
+                ByteBuffer[] columns = new ByteBuffer[codecs.length];
+                for(int i = 0; i < codecs.length; i++){
+                    long offset = buffer.getLong();
+                    long length = buffer.getLong();
+                    if(offset < 0 || length < 0 || offset + length > buffer.capacity()){
+                        throw new IOException("Snapshot "+file+" is truncated");
+                    }
+                    ByteBuffer column = buffer.duplicate();
+                    column.position((int) offset);
+                    column.limit((int) (offset + length));
+                    columns[i] = column;
+                }
+                MethodHandle constructor = metadata.constructor;
+                List<T> objects = new ArrayList<T>(rows);
+                for(int row = 0; row < rows; row++){
+                    T object;
+                    try {
+                        object = (T) constructor.invokeExact();
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("Unable to create "+tableClass.getName(), e);
+                    }
+                    for(int i = 0; i < codecs.length; i++){
+                        codecs[i].set(object, readValue(columns[i], codecs[i]));
+                    }
+                    objects.add(object);
+                }
+                return objects;
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Snapshot "+file+" is truncated", e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Unable to set fields of "+tableClass.getName(), e);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Сверяет схему снимка со схемой отображаемого класса
+     * @param metadata данные об отображаемом классе
+     * @param file файл снимка
+     * @param buffer содержимое файла, установленное на имя таблицы
+     * @throws IllegalStateException схемы различаются
+     */
+    private static void checkSchema(EntityMetadata<?> metadata, File file, ByteBuffer buffer){
+        String tableName = readString(buffer);
+        if(!tableName.equals(metadata.tableName)){
+            throw new IllegalStateException("Snapshot "+file+" is for table "+tableName+", not "+metadata.tableName);
+        }
+        ColumnCodec[] codecs = metadata.codecs;
+        int count = buffer.getShort();
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        for(ColumnCodec codec: codecs){
+            expected.append(codec.column).append(' ').append(codec.type.getName())
+                    .append(isKey(metadata, codec) ? " key" : "").append("; ");
+        }
+        for(int i = 0; i < count; i++){
+            String column = readString(buffer);
+            String type = readString(buffer);
+            boolean key = buffer.get() != 0;
+            actual.append(column).append(' ').append(type).append(key ? " key" : "").append("; ");
+        }
+        if(!expected.toString().equals(actual.toString())){
+            throw new IllegalStateException("Schema of snapshot "+file+" ("+actual+") does not match "
+                    +metadata.tableClass.getName()+" ("+expected+")");
+        }
+    }
+
+    /**
+     * @param metadata данные об отображаемом классе
+     * @param codec преобразователь поля
+     * @return true, если поле ключевое
+     */
+    private static boolean isKey(EntityMetadata<?> metadata, ColumnCodec codec){
+        for(ColumnCodec key: metadata.keyCodecs){
+            if(key == codec) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Записывает значение поля в блок столбца
+     * @param column блок столбца
+     * @param codec преобразователь поля
+     * @param value значение поля
+     * @throws IOException ошибка записи
+     */
+    private static void writeValue(DataOutputStream column, ColumnCodec codec, Object value) throws IOException {
+        if(!codec.primitive){
+            column.writeByte(value == null ? 0 : 1);
+            if(value == null) return;
+        }
+        if(value instanceof String){
+            byte[] bytes = ((String) value).getBytes(UTF8);
+            column.writeInt(bytes.length);
+            column.write(bytes);
+        } else if(value instanceof Integer){
+            column.writeInt((Integer) value);
+        } else if(value instanceof Long){
+            column.writeLong((Long) value);
+        } else if(value instanceof Double){
+            column.writeDouble((Double) value);
+        } else if(value instanceof Float){
+            column.writeFloat((Float) value);
+        } else if(value instanceof Byte){
+            column.writeByte((Byte) value);
+        } else if(value instanceof Boolean){
+            column.writeBoolean((Boolean) value);
+        } else {
+            throw new IllegalArgumentException("Type "+codec.type.getName()+" is not supported");
+        }
+    }
+
+    /**
+     * Читает следующее значение поля из блока столбца
+     * @param column блок столбца
+     * @param codec преобразователь поля
+     * @return значение поля, для примитивных типов - в обёртке
+     */
+    private static Object readValue(ByteBuffer column, ColumnCodec codec){
+        if(!codec.primitive && column.get() == 0){
+            return null;
+        }
+        Class<?> type = codec.type;
+        if(type == String.class){
+            byte[] bytes = new byte[column.getInt()];
+            column.get(bytes);
+            return new String(bytes, UTF8);
+        }
+        if(type == int.class || type == Integer.class) return column.getInt();
+        if(type == long.class || type == Long.class) return column.getLong();
+        if(type == double.class || type == Double.class) return column.getDouble();
+        if(type == float.class || type == Float.class) return column.getFloat();
+        if(type == byte.class || type == Byte.class) return column.get();
+        if(type == boolean.class || type == Boolean.class) return column.get() != 0;
+        throw new IllegalArgumentException("Type "+type.getName()+" is not supported");
+    }
+
+    /**
+     * @param output поток
+     * @param value строка
+     * @throws IOException ошибка записи
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * @param buffer буфер
+     * @return строка, записанная writeString
+     */
+    private static String readString(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
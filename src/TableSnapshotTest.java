@@ -0,0 +1,122 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableSnapshotTest {
+    ConnectionPool pool;
+    File file;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("snapshot");
+        file = File.createTempFile("snapshot", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DaoRealisation<SampleClass> testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        List<SampleClass> objects = new ArrayList<SampleClass>();
+        for(int i = 0; i < 100; i++){
+            objects.add(new SampleClass("Имя"+i, i % 10 == 0 ? null : "LastName"+i, i));
+        }
+        testSubject.insertAll(objects);
+        Assert.assertTrue(TableSnapshot.export(testSubject, file) == 100);
+        List<SampleClass> loaded = TableSnapshot.load(SampleClass.class, file);
+        Assert.assertTrue(loaded.size() == 100);
+        for(SampleClass object: loaded){
+            int id = object.GetId();
+            Assert.assertTrue(object.GetName().equals("Имя"+id));
+            if(id % 10 == 0){
+                Assert.assertTrue(object.GetLastName() == null);
+            } else {
+                Assert.assertTrue(object.GetLastName().equals("LastName"+id));
+            }
+        }
+    }
+
+    @Test
+    public void testCompositeKey() throws Exception {
+        DaoRealisation<CompositeKeyClass> testSubject = new DaoRealisation<CompositeKeyClass>(pool, CompositeKeyClass.class);
+        testSubject.insert(new CompositeKeyClass("Ivan", 30, true, 1.85));
+        testSubject.insert(new CompositeKeyClass("Maria", 25, false, 1.62));
+        TableSnapshot.export(testSubject, file);
+        List<CompositeKeyClass> loaded = TableSnapshot.load(CompositeKeyClass.class, file);
+        Assert.assertTrue(loaded.size() == 2);
+        for(CompositeKeyClass object: loaded){
+            CompositeKeyClass stored = testSubject.selectByKey(object);
+            Assert.assertTrue(stored != null && stored.GetHeight() == object.GetHeight());
+        }
+    }
+
+    @Test
+    public void testSchemaMismatch() throws Exception {
+        DaoRealisation<SampleClass> testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        testSubject.insert(new SampleClass("Name","LastName",1));
+        TableSnapshot.export(testSubject, file);
+        try {
+            TableSnapshot.load(CompositeKeyClass.class, file);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // снимок другой таблицы
+        }
+    }
+
+    @Test
+    public void testCorruptedFile() throws Exception {
+        DaoRealisation<SampleClass> testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        testSubject.insert(new SampleClass("Name","LastName",1));
+        TableSnapshot.export(testSubject, file);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(4);
+            output.writeShort(TableSnapshot.VERSION + 1);
+        } finally {
+            output.close();
+        }
+        try {
+            TableSnapshot.load(SampleClass.class, file);
+            Assert.fail();
+        } catch (IOException e) {
+            // неподдерживаемая версия
+        }
+        output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(10);
+        } finally {
+            output.close();
+        }
+        try {
+            TableSnapshot.load(SampleClass.class, file);
+            Assert.fail();
+        } catch (IOException e) {
+            // обрезанный файл
+        }
+    }
+
+    @Test
+    public void testCacheWarmUp() throws Exception {
+        DaoRealisation<SampleClass> testSubject = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        for(int i = 0; i < 10; i++){
+            testSubject.insert(new SampleClass("Name"+i,"LastName"+i,i));
+        }
+        TableSnapshot.export(testSubject, file);
+        CachingDao<SampleClass> cache = new CachingDao<SampleClass>(testSubject, 100);
+        Assert.assertTrue(cache.warmUp(file) == 10);
+        Assert.assertTrue(cache.size() == 10);
+        Assert.assertTrue(cache.selectByKey(new SampleClass("","",5)).GetName().equals("Name5"));
+        Assert.assertTrue(cache.getHitCount() == 1 && cache.getMissCount() == 0);
+    }
+}
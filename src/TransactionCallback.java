@@ -0,0 +1,13 @@
+/**
+ * Действия, выполняемые в одной транзакции.
+ * @param <R> тип результата
+ */
+public interface TransactionCallback<R> {
+
+    /**
+     * Выполняет действия. Все вызовы DAO в текущем потоке используют соединения транзакции
+     * @param transaction текущая транзакция
+     * @return результат действий
+     */
+    public R doInTransaction(TransactionContext transaction);
+}
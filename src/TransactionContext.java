@@ -0,0 +1,352 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Транзакция, охватывающая несколько вызовов DAO.
+ * На время execute транзакция привязывается к текущему потоку: все экземпляры DaoRealisation, вызываемые
+ * в этом потоке, берут одно соединение на пул и не фиксируют изменения сами. Транзакция фиксируется один раз
+ * по завершении действий и откатывается, если действия выбросили исключение, если вызван setRollbackOnly()
+ * или если один из запросов DAO завершился ошибкой СУБД.
+ * Вложенный вызов execute в том же потоке присоединяется к уже начатой транзакции.
+ * DAO разных пулов получают разные соединения; их транзакции фиксируются по очереди и не атомарны друг относительно друга.
+ */
+public class TransactionContext {
+    /**
+     * Транзакция, привязанная к текущему потоку
+     */
+    private static final ThreadLocal<TransactionContext> CURRENT = new ThreadLocal<TransactionContext>();
+    /**
+     * Значение уровня изоляции, при котором используется уровень соединения по умолчанию
+     */
+    public static final int DEFAULT_ISOLATION = -1;
+
+    /**
+     * Уровень изоляции транзакции, Connection.TRANSACTION_*
+     */
+    private final int isolation;
+    /**
+     * Выполняет ли транзакция только чтение
+     */
+    private final boolean readOnly;
+    /**
+     * Соединения транзакции в формате пул->соединение, в порядке получения
+     */
+    private final Map<ConnectionPool, Enlisted> connections = new IdentityHashMap<ConnectionPool, Enlisted>();
+    /**
+     * Соединения транзакции в порядке получения
+     */
+    private final List<Enlisted> enlisted = new ArrayList<Enlisted>();
+    /**
+     * Должна ли транзакция быть откачена
+     */
+    private boolean rollbackOnly = false;
+    /**
+     * Действия, выполняемые после фиксации транзакции
+     */
+    private final List<Runnable> afterCommit = new ArrayList<Runnable>();
+    /**
+     * Действия, выполняемые после отката транзакции
+     */
+    private final List<Runnable> afterRollback = new ArrayList<Runnable>();
+
+    /**
+     * Создаёт транзакцию на чтение и запись с уровнем изоляции соединения по умолчанию
+     */
+    public TransactionContext() {
+        this(DEFAULT_ISOLATION, false);
+    }
+
+    /**
+     * @param isolation уровень изоляции, Connection.TRANSACTION_*, или DEFAULT_ISOLATION
+     * @param readOnly true, если транзакция только читает данные; СУБД может не устанавливать блокировки
+     *                 и не выделять идентификатор транзакции
+     */
+    public TransactionContext(int isolation, boolean readOnly) {
+        this.isolation = isolation;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @return транзакция, привязанная к текущему потоку, или null
+     */
+    public static TransactionContext current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * Выполняет действия в транзакции. Если в текущем потоке уже выполняется транзакция, действия присоединяются к ней
+     * @param callback действия
+     * @param <R> тип результата
+     * @return результат действий
+     * @throws IllegalStateException транзакцию не удалось зафиксировать или она откачена из-за ошибки СУБД
+     */
+    public <R> R execute(TransactionCallback<R> callback){
+        TransactionContext outer = CURRENT.get();
+        if(outer != null){
+            try {
+                return callback.doInTransaction(outer);
+            } catch (RuntimeException e) {
+                outer.rollbackOnly = true;
+                throw e;
+            } catch (Error e) {
+                outer.rollbackOnly = true;
+                throw e;
+            }
+        }
+        if(!enlisted.isEmpty()){
+            throw new IllegalStateException("Transaction is already running in another thread");
+        }
+        CURRENT.set(this);
+        boolean completed = false;
+        boolean committed = false;
+        try {
+            R result = callback.doInTransaction(this);
+            completed = true;
+            if(rollbackOnly){
+                rollback();
+                throw new IllegalStateException("Transaction was rolled back");
+            }
+            commit();
+            committed = true;
+            return result;
+        } finally {
+            if(!completed){
+                rollback();
+            }
+            release();
+            CURRENT.remove();
+            rollbackOnly = false;
+            runCompletionActions(committed);
+        }
+    }
+
+    /**
+     * Регистрирует действие, которое выполняется, если транзакция зафиксирована.
+     * Действия выполняются в порядке регистрации после возврата соединений в пул
+     * @param action действие
+     */
+    void afterCommit(Runnable action){
+        afterCommit.add(action);
+    }
+
+    /**
+     * Регистрирует действие, которое выполняется, если транзакция откачена
+     * @param action действие
+     */
+    void afterRollback(Runnable action){
+        afterRollback.add(action);
+    }
+
+    /**
+     * Выполняет действия, зарегистрированные для исхода транзакции, и забывает все зарегистрированные действия
+     * @param committed true, если транзакция зафиксирована
+     */
+    private void runCompletionActions(boolean committed){
+        List<Runnable> actions = new ArrayList<Runnable>(committed ? afterCommit : afterRollback);
+        afterCommit.clear();
+        afterRollback.clear();
+        for(Runnable action: actions){
+            action.run();
+        }
+    }
+
+    /**
+     * Помечает транзакцию для отката по завершении действий
+     */
+    public void setRollbackOnly(){
+        rollbackOnly = true;
+    }
+
+    /**
+     * @return true, если транзакция будет откачена
+     */
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    /**
+     * @return уровень изоляции транзакции
+     */
+    public int getIsolation() {
+        return isolation;
+    }
+
+    /**
+     * @return true, если транзакция только читает данные
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Возвращает соединение транзакции для пула, при первом обращении берёт его из пула и начинает транзакцию.
+     * Вызовы close, commit, rollback, setAutoCommit, setReadOnly и setTransactionIsolation
+     * на возвращаемом соединении ничего не делают
+     * @param pool пул соединений DAO
+     * @return соединение транзакции
+     * @throws ClassNotFoundException отсутствует драйвер
+     * @throws SQLException соединение не удалось получить или настроить
+     */
+    Connection getConnection(ConnectionPool pool) throws ClassNotFoundException, SQLException {
+        Enlisted connection = connections.get(pool);
+        if(connection == null){
+            connection = new Enlisted(pool.getConnection());
+            connections.put(pool, connection);
+            enlisted.add(connection);
+            connection.begin();
+        }
+        return connection;
+    }
+
+    /**
+     * Фиксирует транзакции всех соединений.
+     * Если одну из них зафиксировать не удалось, остальные откатываются
+     */
+    private void commit(){
+        for(int i = 0; i < enlisted.size(); i++){
+            try {
+                enlisted.get(i).physical.commit();
+            } catch (SQLException e) {
+                for(int j = i; j < enlisted.size(); j++){
+                    enlisted.get(j).rollbackQuietly();
+                }
+                throw new IllegalStateException("Unable to commit transaction", e);
+            }
+        }
+    }
+
+    /**
+     * Откатывает транзакции всех соединений, игнорируя ошибки
+     */
+    private void rollback(){
+        for(Enlisted connection: enlisted){
+            connection.rollbackQuietly();
+        }
+    }
+
+    /**
+     * Восстанавливает настройки соединений и возвращает их в пул
+     */
+    private void release(){
+        for(Enlisted connection: enlisted){
+            connection.release();
+        }
+        enlisted.clear();
+        connections.clear();
+    }
+
+    /**
+     * Помечает текущую транзакцию для отката, если она есть. Вызывается DAO при ошибке СУБД
+     */
+    static void markRollbackOnly(){
+        TransactionContext transaction = CURRENT.get();
+        if(transaction != null){
+            transaction.rollbackOnly = true;
+        }
+    }
+
+    /**
+     * Соединение, участвующее в транзакции. Передаётся DAO; вызовы close, commit, rollback, setAutoCommit,
+     * setReadOnly и setTransactionIsolation на нём ничего не делают
+     */
+    private class Enlisted extends DelegatingConnection {
+        /**
+         * Соединение пула
+         */
+        private final Connection physical;
+        /**
+         * Уровень изоляции соединения до начала транзакции
+         */
+        private int previousIsolation;
+        /**
+         * Признак "только чтение" соединения до начала транзакции
+         */
+        private boolean previousReadOnly;
+
+        Enlisted(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        Connection delegate() {
+            return physical;
+        }
+
+        /**
+         * Настраивает соединение и отключает автофиксацию
+         * @throws SQLException соединение не удалось настроить
+         */
+        void begin() throws SQLException {
+            previousIsolation = physical.getTransactionIsolation();
+            previousReadOnly = physical.isReadOnly();
+            if(isolation != DEFAULT_ISOLATION && isolation != previousIsolation){
+                physical.setTransactionIsolation(isolation);
+            }
+            if(readOnly != previousReadOnly){
+                physical.setReadOnly(readOnly);
+            }
+            physical.setAutoCommit(false);
+        }
+
+        /**
+         * Откатывает транзакцию соединения, игнорируя ошибки
+         */
+        void rollbackQuietly(){
+            try {
+                physical.rollback();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Восстанавливает настройки соединения и возвращает его в пул, игнорируя ошибки
+         */
+        void release(){
+            try {
+                physical.setAutoCommit(true);
+                if(physical.isReadOnly() != previousReadOnly){
+                    physical.setReadOnly(previousReadOnly);
+                }
+                if(physical.getTransactionIsolation() != previousIsolation){
+                    physical.setTransactionIsolation(previousIsolation);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void rollback() {
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) {
+        }
+
+        @Override
+        public void setReadOnly(boolean readOnly) {
+        }
+
+        @Override
+        public void setTransactionIsolation(int level) {
+        }
+    }
+}
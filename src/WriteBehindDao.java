@@ -0,0 +1,437 @@
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * DAO с отложенной записью обновлений.
+ * Метод update не обращается к БД, а помещает копию объекта в очередь; повторные обновления
+ * объекта с тем же ключом заменяют его состояние в очереди. Фоновый поток записывает очередь
+ * пакетом через updateAll, когда в ней набирается flushSize объектов или проходит flushInterval.
+ * Если очередь вместе с записываемым пакетом заполнена, update ждёт её освобождения.
+ * Внутри TransactionContext update и updateAll не ставят объекты в очередь, а записывают их сразу в транзакции,
+ * чтобы откат транзакции отменял и их; очередь при этом всегда записывается вне транзакции вызывающего потока.
+ * Если пакет не удалось записать, его объекты возвращаются в очередь (кроме тех, что уже обновлены повторно)
+ * и записываются при следующей попытке; последняя ошибка доступна через getLastError.
+ * Выборки учитывают ещё не записанные обновления. Метод close() записывает очередь и останавливает фоновый поток.
+ * @param <T> Отображаемый класс.
+ */
+public class WriteBehindDao<T> implements ReflectionJdbcDao<T>, Closeable {
+    /**
+     * DAO, через который записываются обновления
+     */
+    private final DaoRealisation<T> dao;
+    /**
+     * Максимальное число объектов в очереди вместе с записываемыми
+     */
+    private final int maxPending;
+    /**
+     * Число объектов в очереди, при котором она записывается, не дожидаясь flushInterval
+     */
+    private final int flushSize;
+    /**
+     * Максимальное время нахождения обновления в очереди, мс
+     */
+    private final long flushInterval;
+
+    /**
+     * Блокировка очереди
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Сигнал об освобождении места в очереди
+     */
+    private final Condition notFull = lock.newCondition();
+    /**
+     * Сигнал о том, что очередь пора записать
+     */
+    private final Condition flushNeeded = lock.newCondition();
+    /**
+     * Блокировка записи очереди: очередь записывается не более чем одним потоком одновременно,
+     * поэтому обновления одного объекта не переупорядочиваются
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * Очередь обновлений в формате ключ->последнее состояние объекта
+     */
+    private Map<EntityKey, T> pending = new LinkedHashMap<EntityKey, T>();
+    /**
+     * Обновления, которые записываются в данный момент
+     */
+    private Map<EntityKey, T> inFlight = Collections.emptyMap();
+    /**
+     * Ошибка последней записи очереди; null, если последняя запись удалась
+     */
+    private volatile Exception lastError;
+    /**
+     * Закрыт ли DAO
+     */
+    private volatile boolean closed = false;
+    /**
+     * Фоновый поток записи
+     */
+    private final Thread flusher;
+
+    /**
+     * Создаёт DAO с отложенной записью и запускает фоновый поток записи
+     * @param dao DAO, через который записываются обновления
+     * @param maxPending максимальное число объектов в очереди вместе с записываемыми
+     * @param flushSize число объектов в очереди, при котором она записывается
+     * @param flushInterval максимальное время нахождения обновления в очереди, мс
+     */
+    public WriteBehindDao(DaoRealisation<T> dao, int maxPending, int flushSize, long flushInterval){
+        if(maxPending < 1 || flushSize < 1 || flushSize > maxPending || flushInterval < 1){
+            throw new IllegalArgumentException("Illegal write-behind settings: maxPending="+maxPending
+                    +", flushSize="+flushSize+", flushInterval="+flushInterval);
+        }
+        this.dao = dao;
+        this.maxPending = maxPending;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "WriteBehindDao-"+dao.tableName);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Помещает обновление объекта в очередь. Если в очереди уже есть объект с тем же ключом, его состояние заменяется.
+     * Если очередь заполнена, ждёт освобождения места.
+     * Внутри TransactionContext записывает ранее поставленное в очередь обновление объекта и обновляет объект в транзакции
+     * @param object объект, поля которого обновляются в записи таблицы
+     */
+    @Override
+    public void update(T object) {
+        EntityKey key = keyOf(object);
+        if(TransactionContext.current() != null){
+            flushIfPending(key);
+            dao.update(object);
+            return;
+        }
+        T copy = copy(object);
+        lock.lock();
+        try {
+            while(!closed && pending.size() + inFlight.size() >= maxPending && !pending.containsKey(key)){
+                flushNeeded.signal();
+                notFull.awaitUninterruptibly();
+            }
+            if(closed){
+                throw new IllegalStateException("Write-behind DAO is closed");
+            }
+            pending.put(key, copy);
+            if(pending.size() >= flushSize){
+                flushNeeded.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Помещает обновления объектов в очередь.
+     * Внутри TransactionContext записывает очередь и обновляет объекты в транзакции
+     * @param objects объекты, поля которых обновляются в записях таблицы
+     * @return число объектов, помещённых в очередь; внутри транзакции - число обновлённых записей
+     */
+    @Override
+    public int updateAll(Collection<T> objects) {
+        if(TransactionContext.current() != null){
+            flush();
+            return dao.updateAll(objects);
+        }
+        for(T object: objects){
+            update(object);
+        }
+        return objects.size();
+    }
+
+    @Override
+    public void insert(T object) {
+        flushIfPending(keyOf(object));
+        dao.insert(object);
+    }
+
+    @Override
+    public BatchResult<T> insertAll(Collection<T> objects) {
+        flush();
+        return dao.insertAll(objects);
+    }
+
+    @Override
+    public BatchResult<T> insertAll(Iterator<T> objects) {
+        flush();
+        return dao.insertAll(objects);
+    }
+
+    @Override
+    public void upsert(T object) {
+        flushIfPending(keyOf(object));
+        dao.upsert(object);
+    }
+
+    @Override
+    public int upsertAll(Collection<T> objects) {
+        flush();
+        return dao.upsertAll(objects);
+    }
+
+    @Override
+    public void deleteByKey(T key) {
+        discard(keyOf(key));
+        dao.deleteByKey(key);
+    }
+
+    @Override
+    public int deleteByKeys(Collection<T> keys) {
+        for(T key: keys){
+            discard(keyOf(key));
+        }
+        return dao.deleteByKeys(keys);
+    }
+
+    @Override
+    public T selectByKey(T key) {
+        EntityKey entityKey = keyOf(key);
+        lock.lock();
+        try {
+            T queued = pending.get(entityKey);
+            if(queued == null) queued = inFlight.get(entityKey);
+            if(queued != null) return copy(queued);
+        } finally {
+            lock.unlock();
+        }
+        return dao.selectByKey(key);
+    }
+
+    @Override
+    public Map<EntityKey, T> selectByKeys(Collection<T> keys) {
+        flush();
+        return dao.selectByKeys(keys);
+    }
+
+    @Override
+    public List<T> selectAll() {
+        flush();
+        return dao.selectAll();
+    }
+
+    /**
+     * Записывает в БД все обновления из очереди в вызывающем потоке.
+     * Внутри TransactionContext очередь записывается отдельным потоком вне транзакции, а вызывающий поток ждёт его:
+     * очередь содержит обновления других потоков, которые не должны откатываться вместе с транзакцией.
+     * Если запись не удалась, обновления остаются в очереди
+     * @throws IllegalStateException обновления не удалось записать
+     */
+    public void flush(){
+        flushLock.lock();
+        try {
+            Map<EntityKey, T> batch;
+            lock.lock();
+            try {
+                if(pending.isEmpty()) return;
+                batch = pending;
+                pending = new LinkedHashMap<EntityKey, T>();
+                inFlight = batch;
+            } finally {
+                lock.unlock();
+            }
+            Exception failure = null;
+            try {
+                write(batch.values());
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                lock.lock();
+                try {
+                    inFlight = Collections.emptyMap();
+                    if(failure != null){
+                        // более новые состояния из очереди заменяют возвращаемые, порядок записи сохраняется
+                        batch.putAll(pending);
+                        pending = batch;
+                    }
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            lastError = failure;
+            if(failure != null){
+                throw new IllegalStateException("Unable to flush "+batch.size()+" updates of "+dao.tableName, failure);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return число объектов в очереди
+     */
+    public int getPendingCount(){
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return ошибка последней записи очереди; null, если последняя запись удалась или записей ещё не было
+     */
+    public Exception getLastError(){
+        return lastError;
+    }
+
+    /**
+     * Останавливает фоновый поток и записывает оставшиеся в очереди обновления.
+     * После закрытия update выбрасывает IllegalStateException.
+     * @throws IllegalStateException часть обновлений не удалось записать; они остаются в очереди,
+     * и их можно записать повторным вызовом flush
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Цикл фонового потока: ждёт, пока очередь наберёт flushSize объектов или пройдёт flushInterval, и записывает её
+     */
+    private void flushLoop(){
+        boolean failed = false;
+        while(true){
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                // после неудачной записи следующая попытка откладывается на flushInterval, даже если очередь полна
+                while(!closed && (failed || pending.size() < flushSize) && remaining > 0){
+                    remaining = flushNeeded.awaitNanos(remaining);
+                }
+                if(closed) return;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+                failed = false;
+            } catch (RuntimeException e) {
+                failed = true;
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Записывает очередь, если в ней или среди записываемых обновлений есть объект с заданным ключом
+     * @param key ключ объекта
+     */
+    private void flushIfPending(EntityKey key){
+        boolean queued;
+        lock.lock();
+        try {
+            queued = pending.containsKey(key) || inFlight.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+        if(queued) flush();
+    }
+
+    /**
+     * Удаляет из очереди обновление объекта с заданным ключом
+     * @param key ключ объекта
+     */
+    private void discard(EntityKey key){
+        lock.lock();
+        try {
+            if(pending.remove(key) != null){
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Записывает пакет обновлений вне транзакции вызывающего потока
+     * @param batch обновляемые объекты
+     * @throws Exception пакет не удалось записать
+     */
+    private void write(final Collection<T> batch) throws Exception {
+        if(TransactionContext.current() == null){
+            dao.updateAllChecked(batch);
+            return;
+        }
+        final Exception[] failure = new Exception[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dao.updateAllChecked(batch);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        }, "WriteBehindDao-"+dao.tableName+"-flush");
+        writer.start();
+        boolean interrupted = false;
+        while(true){
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+        if(failure[0] != null) throw failure[0];
+    }
+
+    /**
+     * @param object объект с заполненными ключевыми полями
+     * @return ключ объекта
+     */
+    private EntityKey keyOf(T object){
+        try {
+            return dao.keyOf(object);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to read key of "+object, e);
+        }
+    }
+
+    /**
+     * @param object копируемый объект
+     * @return копия объекта
+     */
+    private T copy(T object){
+        try {
+            return dao.copy(object);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to copy "+object, e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+
+public class WriteBehindDaoTest {
+    ConnectionPool pool;
+    DaoRealisation<SampleClass> dao;
+    WriteBehindDao<SampleClass> testSubject;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = H2TestSupport.pool("writebehind");
+        dao = new DaoRealisation<SampleClass>(pool, SampleClass.class);
+        testSubject = new WriteBehindDao<SampleClass>(dao,100,50,60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testSubject.close();
+        pool.close();
+    }
+
+    @Test
+    public void testUpdatesAreCoalesced() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.update(new SampleClass("John","Petrov",1));
+        testSubject.update(new SampleClass("John","Sidorov",1));
+        Assert.assertTrue(testSubject.getPendingCount() == 1);
+        Assert.assertTrue("Queued update should be visible",testSubject.selectByKey(new SampleClass("","",1)).GetLastName().equals("Sidorov"));
+        Assert.assertTrue("Update should not be written before flush",dao.selectByKey(new SampleClass("","",1)).GetLastName().equals("Dow"));
+        testSubject.flush();
+        Assert.assertTrue(testSubject.getPendingCount() == 0);
+        Assert.assertTrue(dao.selectByKey(new SampleClass("","",1)).GetLastName().equals("Sidorov"));
+    }
+
+    @Test
+    public void testCloseDrainsQueue() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.update(new SampleClass("John","Petrov",1));
+        testSubject.close();
+        Assert.assertTrue(dao.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+    }
+
+    @Test
+    public void testDeleteDiscardsQueuedUpdate() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.update(new SampleClass("John","Petrov",1));
+        testSubject.deleteByKey(new SampleClass("","",1));
+        testSubject.flush();
+        Assert.assertTrue(dao.selectByKey(new SampleClass("","",1)) == null);
+    }
+
+    @Test
+    public void testUpdateInTransactionRollsBack() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.update(new SampleClass("John","Petrov",1));
+        try {
+            new TransactionContext().execute(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    testSubject.update(new SampleClass("John","Sidorov",1));
+                    Assert.assertTrue("Update should not be queued in a transaction", testSubject.getPendingCount() == 0);
+                    transaction.setRollbackOnly();
+                    return null;
+                }
+            });
+            Assert.fail("Transaction should be rolled back");
+        } catch (IllegalStateException e) {
+            // транзакция откачена
+        }
+        testSubject.close();
+        Assert.assertTrue("Queued update should survive, rolled back one should not",
+                dao.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+        testSubject = new WriteBehindDao<SampleClass>(dao,100,50,60000);
+    }
+
+    @Test
+    public void testFlushInTransactionIsNotRolledBack() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.update(new SampleClass("John","Petrov",1));
+        try {
+            new TransactionContext().execute(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(TransactionContext transaction) {
+                    Assert.assertTrue(testSubject.selectAll().size() == 1);
+                    transaction.setRollbackOnly();
+                    return null;
+                }
+            });
+            Assert.fail("Transaction should be rolled back");
+        } catch (IllegalStateException e) {
+            // транзакция откачена
+        }
+        Assert.assertTrue("Queued update should be written outside the transaction",
+                dao.selectByKey(new SampleClass("","",1)).GetLastName().equals("Petrov"));
+    }
+
+    @Test
+    public void testFailedFlushKeepsUpdates() throws Exception {
+        testSubject.insert(new SampleClass("John","Dow",1));
+        testSubject.update(new SampleClass("John","Petrov",1));
+        Connection connection = pool.getConnection();
+        try {
+            connection.createStatement().execute("DROP TABLE sample");
+        } finally {
+            connection.close();
+        }
+        try {
+            testSubject.flush();
+            Assert.fail("Flush into a dropped table should fail");
+        } catch (IllegalStateException e) {
+            // обновление остаётся в очереди
+        }
+        Assert.assertTrue(testSubject.getPendingCount() == 1);
+        Assert.assertTrue(testSubject.getLastError() != null);
+        try {
+            testSubject.close();
+            Assert.fail("Close should report unwritten updates");
+        } catch (IllegalStateException e) {
+            // обновление не записано
+        }
+        testSubject = new WriteBehindDao<SampleClass>(dao,100,50,60000);
+    }
+}